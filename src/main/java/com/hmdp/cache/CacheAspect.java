@@ -0,0 +1,83 @@
+package com.hmdp.cache;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.utils.CacheClient;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 处理@Cached和@CacheEvict，缓存的具体策略交给CacheClient
+ */
+@Aspect
+@Component
+public class CacheAspect {
+
+    private static final ExpressionParser PARSER = new SpelExpressionParser();
+    private static final ParameterNameDiscoverer NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+    // 解析过的SpEL表达式
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
+    @Around("@annotation(cached)")
+    public Object cached(ProceedingJoinPoint pjp, Cached cached) {
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
+        CacheProperties.Spec spec = cacheProperties.getSpec(cached.value());
+        String key = resolveKey(cached.key(), method, pjp);
+        // 缓存未命中时执行原方法查询数据库
+        return cacheClient.query(spec, key, method.getGenericReturnType(), id -> proceed(pjp));
+    }
+
+    @Around("@annotation(cacheEvict)")
+    public Object cacheEvict(ProceedingJoinPoint pjp, CacheEvict cacheEvict) throws Throwable {
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
+        // 先解析key，避免方法执行过程中参数被修改
+        String key = resolveKey(cacheEvict.key(), method, pjp);
+        Object result = pjp.proceed();
+        // 方法正常返回后删除缓存，在事务中则等到事务提交后再删除
+        cacheInvalidator.invalidate(cacheProperties.getSpec(cacheEvict.value()).getKeyPrefix() + key);
+        return result;
+    }
+
+    private String resolveKey(String keyExpression, Method method, ProceedingJoinPoint pjp) {
+        Object[] args = pjp.getArgs();
+        if (StrUtil.isBlank(keyExpression)) {
+            // 没有指定key，使用参数拼接
+            return StrUtil.join(":", args);
+        }
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, args, NAME_DISCOVERER);
+        Expression expression = expressions.computeIfAbsent(keyExpression, PARSER::parseExpression);
+        return String.valueOf(expression.getValue(context));
+    }
+
+    private static Object proceed(ProceedingJoinPoint pjp) {
+        try {
+            return pjp.proceed();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.hmdp.cache;
+
+import java.lang.annotation.*;
+
+/**
+ * 声明式删除缓存：被标记的方法正常返回后删除对应的缓存，在事务中则在事务提交后删除（见CacheInvalidator）
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheEvict {
+
+    /**
+     * 缓存名称，对应配置中的一组缓存规则
+     */
+    String value();
+
+    /**
+     * 缓存key的后缀，支持SpEL表达式，例如 #id、#shop.id；为空时使用方法参数以":"拼接
+     */
+    String key() default "";
+}
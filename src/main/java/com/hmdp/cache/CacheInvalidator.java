@@ -0,0 +1,124 @@
+package com.hmdp.cache;
+
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 缓存失效：事务中登记的key在事务提交之后才删除，避免并发读在提交前把旧数据重新写入缓存；
+ * 短时间内的删除合并为一次redis调用，并在一段时间后再删除一次（延迟双删）
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    private final CacheClient cacheClient;
+
+    private final CacheProperties.Invalidation config;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 等待删除的key
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 是否已经安排了一次删除
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    public CacheInvalidator(CacheClient cacheClient, CacheProperties cacheProperties) {
+        this.cacheClient = cacheClient;
+        this.config = cacheProperties.getInvalidation();
+    }
+
+    /**
+     * 删除缓存，在事务中调用时等到事务提交后再删除，事务回滚则不删除
+     */
+    @SuppressWarnings("unchecked")
+    public void invalidate(String key) {
+        // 1.不在事务中，直接进入删除队列
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(Collections.singleton(key));
+            return;
+        }
+        // 2.在事务中，登记到当前事务，第一次登记时注册事务回调
+        Set<String> keys = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (keys == null) {
+            Set<String> txKeys = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, txKeys);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    // 3.提交后进入删除队列
+                    enqueue(txKeys);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CacheInvalidator.this);
+                }
+            });
+            keys = txKeys;
+        }
+        keys.add(key);
+    }
+
+    private void enqueue(Collection<String> keys) {
+        pending.addAll(keys);
+        // 窗口内只安排一次删除，之后进来的key一起删
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, config.getWindow().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        scheduled.set(false);
+        List<String> keys = new ArrayList<>(pending);
+        pending.removeAll(keys);
+        if (keys.isEmpty()) {
+            return;
+        }
+        delete(keys);
+        // 延迟双删
+        scheduler.schedule(() -> delete(keys), config.getSecondDeleteDelay().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void delete(List<String> keys) {
+        try {
+            cacheClient.deleteAll(keys);
+        } catch (Exception e) {
+            log.error("删除缓存失败，key：{}", keys, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        // 关闭前把还没删除的key删掉
+        List<String> keys = new ArrayList<>(pending);
+        if (!keys.isEmpty()) {
+            delete(keys);
+        }
+    }
+}
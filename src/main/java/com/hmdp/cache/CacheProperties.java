@@ -0,0 +1,257 @@
+package com.hmdp.cache;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 缓存规则配置，对应application.yaml中的hmdp.cache，每个缓存名称一组规则，可以按key族在线上单独调整
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    /**
+     * 写入缓存时使用的编码：binary（紧凑二进制，不支持的类型退回json）、json
+     */
+    private String codec = "binary";
+
+    /**
+     * 编码后超过该字节数的缓存值使用LZ4压缩，小于等于0表示不压缩
+     */
+    private int compressThreshold = 1024;
+
+    /**
+     * 店铺缓存的存储结构：value（整个Shop编码为一个值）、hash（每个属性一个hash字段，计数器原地自增）
+     */
+    private String shopLayout = "value";
+
+    /**
+     * 配置的缓存规则，启动时补全默认值后不再修改，请求线程只读
+     */
+    private Map<String, Spec> specs = new HashMap<>();
+
+    /**
+     * 未配置的缓存名称使用的默认规则，请求线程第一次使用时创建
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Spec> defaultSpecs = new ConcurrentHashMap<>();
+
+    private HotKey hotKey = new HotKey();
+
+    private WarmUp warmUp = new WarmUp();
+
+    private Invalidation invalidation = new Invalidation();
+
+    private GeoCell geoCell = new GeoCell();
+
+    /**
+     * 绑定配置后补全每个缓存规则的名称和key前缀，之后规则只读
+     */
+    @PostConstruct
+    public void init() {
+        Map<String, Spec> resolved = new HashMap<>(specs.size() * 2);
+        specs.forEach((name, spec) -> resolved.put(name, resolve(name, spec)));
+        specs = Collections.unmodifiableMap(resolved);
+    }
+
+    /**
+     * 获取缓存规则，未配置的缓存名称使用默认规则。请求线程并发调用，不修改配置的规则
+     */
+    public Spec getSpec(String name) {
+        Spec spec = specs.get(name);
+        if (spec != null) {
+            return spec;
+        }
+        return defaultSpecs.computeIfAbsent(name, n -> resolve(n, new Spec()));
+    }
+
+    private static Spec resolve(String name, Spec spec) {
+        if (spec.getName() == null) {
+            spec.setName(name);
+        }
+        if (spec.getKeyPrefix() == null) {
+            spec.setKeyPrefix("cache:" + name + ":");
+        }
+        if (spec.getLockPrefix() == null) {
+            spec.setLockPrefix("lock:" + name + ":");
+        }
+        return spec;
+    }
+
+    @Data
+    public static class Spec {
+        /**
+         * 缓存名称，即配置中的key
+         */
+        private String name;
+        /**
+         * 缓存key前缀，默认为 cache:{name}:
+         */
+        private String keyPrefix;
+        /**
+         * 缓存策略
+         */
+        private CacheStrategy strategy = CacheStrategy.PASS_THROUGH;
+        /**
+         * 缓存有效期，逻辑过期策略下为逻辑过期时间
+         */
+        private Duration ttl = Duration.ofMinutes(30);
+        /**
+         * 缓存重建互斥锁的key前缀，默认为 lock:{name}:
+         */
+        private String lockPrefix;
+        /**
+         * 是否缓存空值，用于解决缓存穿透
+         */
+        private boolean cacheNull = true;
+        /**
+         * 是否启用本地缓存（L1），本地缓存只在当前节点失效，因此有效期要短
+         */
+        private boolean l1 = false;
+        /**
+         * 本地缓存有效期
+         */
+        private Duration l1Ttl = Duration.ofSeconds(5);
+        /**
+         * 本地缓存最大条目数
+         */
+        private int l1MaxSize = 10000;
+        /**
+         * 缓存未命中时同时查询数据库的最大并发数（舱壁），超出的请求等待dbTimeout后降级
+         */
+        private int dbMaxConcurrency = 20;
+        /**
+         * 查询数据库的超时时间，超时后返回宽限副本中的旧数据
+         */
+        private Duration dbTimeout = Duration.ofSeconds(3);
+        /**
+         * 宽限副本比缓存多保留的时间，数据库不可用时返回其中的旧数据；默认为0，不保留宽限副本，
+         * 只有能接受返回旧数据的缓存才单独配置
+         */
+        private Duration staleGrace = Duration.ZERO;
+    }
+
+    /**
+     * 热点key探测配置，探测到的热点key在所有节点上自动使用本地缓存
+     */
+    @Data
+    public static class HotKey {
+        /**
+         * 是否开启热点key探测
+         */
+        private boolean enabled = true;
+        /**
+         * 访问的采样比例，只有被采样的访问才计数，降低统计开销
+         */
+        private double sampleRate = 0.1;
+        /**
+         * 统计窗口
+         */
+        private Duration window = Duration.ofSeconds(10);
+        /**
+         * 窗口切分的子窗口个数，越多滑动越平滑
+         */
+        private int windowSlots = 5;
+        /**
+         * 窗口内访问次数（按采样比例折算后）达到该值即认为是热点key
+         */
+        private int threshold = 1000;
+        /**
+         * Count-Min Sketch每一行的宽度
+         */
+        private int sketchWidth = 4096;
+        /**
+         * 热点状态的保持时间，期间访问量仍然达标会续期，否则到期后自动降级
+         */
+        private Duration holdTime = Duration.ofSeconds(30);
+        /**
+         * 热点key在本地缓存中的有效期，本地缓存不会被其它节点的更新删除，因此要短
+         */
+        private Duration localTtl = Duration.ofSeconds(1);
+        /**
+         * 热点key本地缓存的最大条目数
+         */
+        private int localMaxSize = 1000;
+    }
+
+    /**
+     * 启动预热配置，预热完成前节点不接收流量（readiness为REFUSING_TRAFFIC）
+     */
+    @Data
+    public static class WarmUp {
+        /**
+         * 是否在启动时预热
+         */
+        private boolean enabled = true;
+        /**
+         * 每批从数据库读取的店铺数量
+         */
+        private int chunkSize = 1000;
+        /**
+         * 并行写入redis的线程数
+         */
+        private int threads = 4;
+        /**
+         * 一批写入失败时的重试次数，重试后仍然失败则启动失败
+         */
+        private int retries = 3;
+        /**
+         * 重试间隔，第n次重试等待n倍的间隔
+         */
+        private Duration retryBackoff = Duration.ofMillis(500);
+    }
+
+    /**
+     * 缓存失效配置，@CacheEvict的缓存在事务提交后批量删除
+     */
+    @Data
+    public static class Invalidation {
+        /**
+         * 合并窗口，窗口内的删除合并为一次redis调用
+         */
+        private Duration window = Duration.ofMillis(50);
+        /**
+         * 延迟双删的间隔，删除之后再删一次，清除并发读在提交前读到旧数据后写回的缓存
+         */
+        private Duration secondDeleteDelay = Duration.ofSeconds(1);
+    }
+
+    /**
+     * 附近查询的位置格子缓存配置，同一个格子内的用户共用一份按距离排序的候选店铺
+     */
+    @Data
+    public static class GeoCell {
+        /**
+         * 是否开启
+         */
+        private boolean enabled = true;
+        /**
+         * 格子的geohash字符数，7位约150米x150米
+         */
+        private int precision = 7;
+        /**
+         * 每个格子缓存的候选店铺数量，查询的位置超出这个数量时直接查询
+         */
+        private int topN = 100;
+        /**
+         * 缓存有效期，格子中候选店铺的变化（新增店铺、位置变化）最多延迟这么久；
+         * 店铺详情在店铺变化后通过广播删除，广播失败时也最多延迟这么久
+         */
+        private Duration ttl = Duration.ofSeconds(5);
+        /**
+         * 最多缓存的格子数
+         */
+        private int maxSize = 10000;
+    }
+}
@@ -0,0 +1,192 @@
+package com.hmdp.cache;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.index.ShopIndexManager;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 启动预热：按id顺序分批读取tb_shop，多线程写入店铺缓存和shop:geo:{typeId}，同时加载店铺类型列表。
+ * 店铺缓存通过CacheClient（带宽限副本）或者ShopHashCache（shop-layout为hash时）写入，和查询时写回的缓存完全相同。
+ * 同一次扫描的每一批也交给ShopIndexManager全量加载店铺内存索引，关闭预热时只加载索引
+ * <p>
+ * ApplicationRunner执行完之后Spring Boot才会发布ReadinessState.ACCEPTING_TRAFFIC，
+ * 因此预热在这里同步等待完成，预热期间readiness探针返回未就绪，流量不会进来。
+ * 写入失败的批次按配置重试，仍然失败时启动失败，节点不会以不完整的缓存就绪
+ */
+@Slf4j
+@Component
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopHashCache shopHashCache;
+
+    @Resource
+    private ShopIndexManager shopIndexManager;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        CacheProperties.WarmUp config = cacheProperties.getWarmUp();
+        long start = System.currentTimeMillis();
+        try {
+            // 1.店铺类型列表，通过代理调用走@Cached写入缓存
+            if (config.isEnabled()) {
+                shopTypeService.listShopTypes();
+            }
+            // 2.店铺缓存、地理位置和内存索引
+            loadShops(config);
+            log.info("缓存预热完成，耗时{}ms", System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("缓存预热失败，耗时{}ms", System.currentTimeMillis() - start, e);
+            // 只加载索引时失败不影响启动，查询会退回到redis或数据库
+            if (config.isEnabled()) {
+                throw e;
+            }
+        }
+    }
+
+    private void loadShops(CacheProperties.WarmUp config) throws InterruptedException {
+        CacheProperties.Spec spec = cacheProperties.getSpec("shop");
+        long total = shopService.count();
+        AtomicLong done = new AtomicLong();
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = config.isEnabled() ? Executors.newFixedThreadPool(config.getThreads()) : null;
+        // 限制排队中的批次，避免读库远快于写redis时把所有数据都堆在内存里
+        Semaphore permits = new Semaphore(config.getThreads() * 2);
+        boolean finished = true;
+        try {
+            long lastId = 0;
+            while (true) {
+                // 1.按id顺序读取下一批，不使用offset，读取到的店铺同时写入内存索引
+                long afterId = lastId;
+                List<Shop> shops = shopIndexManager.load(() -> shopService.query()
+                        .gt("id", afterId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + config.getChunkSize())
+                        .list());
+                if (shops.isEmpty()) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+                // 2.提交给线程池写入redis
+                if (executor != null) {
+                    permits.acquire();
+                    executor.execute(() -> {
+                        try {
+                            writeShopsWithRetry(config, spec, shops);
+                            long count = done.addAndGet(shops.size());
+                            log.info("店铺缓存预热进度：{}/{}", count, total);
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                            log.error("店铺缓存预热失败，id范围：{}~{}", shops.get(0).getId(), shops.get(shops.size() - 1).getId(), e);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+                if (shops.size() < config.getChunkSize()) {
+                    break;
+                }
+            }
+            shopIndexManager.loaded();
+        } catch (RuntimeException | InterruptedException e) {
+            shopIndexManager.loadFailed();
+            throw e;
+        } finally {
+            // 3.等待所有批次写完
+            if (executor != null) {
+                executor.shutdown();
+                finished = executor.awaitTermination(10, TimeUnit.MINUTES);
+            }
+        }
+        // 4.有批次重试后仍然失败或者没有在时限内写完，预热失败
+        if (!finished || failed.get() > 0) {
+            executor.shutdownNow();
+            throw new IllegalStateException("店铺缓存预热失败，失败批次：" + failed.get() + "，已完成：" + done.get() + "/" + total);
+        }
+    }
+
+    /**
+     * 写入一批店铺，失败时间隔递增地重试
+     */
+    private void writeShopsWithRetry(CacheProperties.WarmUp config, CacheProperties.Spec spec, List<Shop> shops)
+            throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                writeShops(spec, shops);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt > config.getRetries()) {
+                    throw e;
+                }
+                log.warn("店铺缓存预热写入失败，第{}次重试，id范围：{}~{}，原因：{}",
+                        attempt, shops.get(0).getId(), shops.get(shops.size() - 1).getId(), e.toString());
+                Thread.sleep(config.getRetryBackoff().toMillis() * attempt);
+            }
+        }
+    }
+
+    /**
+     * 写入一批店铺的缓存，再用一个pipeline写入地理位置
+     */
+    private void writeShops(CacheProperties.Spec spec, List<Shop> shops) {
+        // 1.店铺缓存
+        if (shopHashCache.isEnabled()) {
+            shopHashCache.putAll(shops);
+        } else {
+            Map<Long, Shop> values = new LinkedHashMap<>(shops.size() * 2);
+            for (Shop shop : shops) {
+                values.put(shop.getId(), shop);
+            }
+            cacheClient.setAll(spec, values);
+        }
+        // 2.地理位置 GEOADD shop:geo:{typeId} 经度 纬度 id
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Shop shop : shops) {
+                if (shop.getX() != null && shop.getY() != null) {
+                    connection.geoAdd((SHOP_GEO_KEY + shop.getTypeId()).getBytes(StandardCharsets.UTF_8),
+                            new Point(shop.getX(), shop.getY()),
+                            shop.getId().toString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return null;
+        });
+    }
+}
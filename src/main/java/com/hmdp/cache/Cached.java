@@ -0,0 +1,23 @@
+package com.hmdp.cache;
+
+import java.lang.annotation.*;
+
+/**
+ * 声明式缓存：被标记的方法的返回值会按照application.yaml中hmdp.cache.specs.{value}的配置进行缓存
+ * 方法的返回值就是缓存的数据，返回null表示数据不存在
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cached {
+
+    /**
+     * 缓存名称，对应配置中的一组缓存规则
+     */
+    String value();
+
+    /**
+     * 缓存key的后缀，支持SpEL表达式，例如 #id、#shop.id；为空时使用方法参数以":"拼接
+     */
+    String key() default "";
+}
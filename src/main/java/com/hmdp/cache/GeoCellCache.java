@@ -0,0 +1,261 @@
+package com.hmdp.cache;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.entity.Shop;
+import com.hmdp.event.ShopChangedEvent;
+import com.hmdp.index.GeoHit;
+import com.hmdp.index.GeoShopIndex;
+import com.hmdp.utils.GeoHashUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.CACHE_GEO_CELL_EVICT_CHANNEL;
+
+/**
+ * 附近查询的位置格子缓存：把用户坐标量化到geohash格子，同一个格子内的用户共用一份以格子中心查询的候选店铺（带坐标），
+ * 每个用户再按自己的坐标重新计算精确距离、过滤、排序，结果与直接查询完全一致。
+ * <p>
+ * 候选店铺以格子中心查询，半径多加半个对角线，格子内任意位置半径内的店铺都在其中；
+ * 候选被topN截断时，只有离用户足够近、不可能被截断掉的店铺挤到前面的部分才是准确的，不够时直接查询。
+ * <p>
+ * 结果中的店铺详情也在本地短期缓存，同一个格子的用户看到的基本是同一批店铺，不用每次查询数据库；
+ * 店铺变化后通过redis发布订阅通知所有节点删除店铺详情
+ */
+@Slf4j
+@Component
+public class GeoCellCache implements MessageListener {
+
+    private static final Comparator<GeoHit> BY_DISTANCE =
+            Comparator.comparingDouble(GeoHit::getDistance).thenComparingLong(GeoHit::getId);
+
+    private final CacheProperties.GeoCell config;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final LocalCache<Cell> cells;
+
+    /**
+     * 附近查询结果中的店铺详情，多个请求共享，返回前复制
+     */
+    private final LocalCache<Shop> shops;
+
+    /**
+     * 正在加载的格子，同一个格子同时只加载一次
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Cell>> loading = new ConcurrentHashMap<>();
+
+    public GeoCellCache(CacheProperties cacheProperties, StringRedisTemplate stringRedisTemplate) {
+        this.config = cacheProperties.getGeoCell();
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cells = new LocalCache<>(config.getMaxSize());
+        this.shops = new LocalCache<>(config.getMaxSize() * 10);
+    }
+
+    /**
+     * 查询附近的店铺，按(距离, id)升序
+     * @param scope  查询范围，例如店铺类型，不同范围的格子分开缓存
+     * @param radius 半径（米）
+     * @param limit  最多返回的数量
+     * @param loader 以指定坐标查询附近的店铺，结果按距离升序并且带店铺坐标
+     */
+    public List<GeoHit> nearby(String scope, double x, double y, double radius, int limit, Loader loader) {
+        // 1.没有开启或者超出缓存的数量，直接查询
+        if (!config.isEnabled() || limit > config.getTopN()) {
+            return loader.load(x, y, radius, limit);
+        }
+        // 2.查询所在格子的候选店铺
+        String hash = GeoHashUtils.encode(x, y, config.getPrecision());
+        Cell cell = getCell(scope + ":" + (long) radius + ":" + hash, hash, radius, loader);
+        // 3.按用户坐标重新计算距离
+        List<GeoHit> hits = cell.rank(x, y, radius);
+        if (hits.size() >= limit) {
+            return hits.subList(0, limit);
+        }
+        // 4.候选完整时结果就是全部，否则准确的部分不够，直接查询
+        return cell.complete ? hits : loader.load(x, y, radius, limit);
+    }
+
+    private Cell getCell(String key, String hash, double radius, Loader loader) {
+        Cell cell = cells.get(key);
+        if (cell != null) {
+            return cell;
+        }
+        CompletableFuture<Cell> future = new CompletableFuture<>();
+        CompletableFuture<Cell> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            // 其他线程正在加载，等待结果
+            return existing.join();
+        }
+        try {
+            // 1.以格子中心查询，半径加上中心到角的距离
+            double[] bounds = GeoHashUtils.bounds(hash);
+            double cx = (bounds[0] + bounds[2]) / 2;
+            double cy = (bounds[1] + bounds[3]) / 2;
+            // 离赤道远的一边更窄，取两个角中更远的
+            double halfDiagonal = Math.max(
+                    GeoShopIndex.distance(cx, cy, bounds[0], bounds[1]),
+                    GeoShopIndex.distance(cx, cy, bounds[0], bounds[3]));
+            List<GeoHit> hits = loader.load(cx, cy, radius + halfDiagonal, config.getTopN());
+            cell = new Cell(cx, cy, hits, hits.size() < config.getTopN());
+            // 2.写入缓存
+            cells.put(key, cell, config.getTtl().toMillis());
+            future.complete(cell);
+            return cell;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 按给定的顺序查询店铺详情，先查本地缓存，未命中的一次从loader中查询，不存在的店铺跳过
+     * @param loader 根据id批量查询店铺
+     */
+    public List<Shop> getShops(List<Long> ids, Function<List<Long>, List<Shop>> loader) {
+        if (!config.isEnabled()) {
+            return loader.apply(ids);
+        }
+        // 1.查询本地缓存
+        Map<Long, Shop> found = new HashMap<>(ids.size() * 2);
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            Shop shop = shops.get(id.toString());
+            if (shop != null) {
+                found.put(id, shop);
+            } else {
+                missing.add(id);
+            }
+        }
+        // 2.未命中的查询后写入缓存
+        if (!missing.isEmpty()) {
+            long ttl = config.getTtl().toMillis();
+            for (Shop shop : loader.apply(missing)) {
+                shops.put(shop.getId().toString(), shop, ttl);
+                found.put(shop.getId(), shop);
+            }
+        }
+        // 3.按顺序返回副本，调用方可以修改（例如填充距离）
+        List<Shop> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Shop shop = found.get(id);
+            if (shop != null) {
+                result.add(BeanUtil.copyProperties(shop, Shop.class));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 店铺变化的事务提交后删除本节点缓存的店铺详情，再广播给其它节点；格子中的候选店铺等待过期，
+     * 已经删除的店铺查不到详情，不会出现在结果中
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        Shop shop = event.getAfter() != null ? event.getAfter() : event.getBefore();
+        if (shop == null || shop.getId() == null) {
+            return;
+        }
+        String id = shop.getId().toString();
+        shops.remove(id);
+        try {
+            stringRedisTemplate.convertAndSend(CACHE_GEO_CELL_EVICT_CHANNEL, id);
+        } catch (Exception e) {
+            // 广播失败时其它节点的店铺详情最多在ttl之后过期
+            log.error("广播店铺详情失效失败，id：{}", id, e);
+        }
+    }
+
+    /**
+     * 收到其它节点（包括自己）广播的店铺id，删除本节点缓存的店铺详情
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        shops.remove(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    public void clear() {
+        cells.clear();
+        shops.clear();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        List<GeoHit> load(double x, double y, double radius, int limit);
+    }
+
+    /**
+     * 一个格子的候选店铺，不可变
+     */
+    private static class Cell {
+        private final double cx;
+        private final double cy;
+        private final long[] ids;
+        private final double[] xs;
+        private final double[] ys;
+        /**
+         * 最后一个候选店铺到格子中心的距离，没有被截断的店铺都不比它近
+         */
+        private final double maxDistance;
+        /**
+         * 候选店铺没有被topN截断
+         */
+        private final boolean complete;
+
+        private Cell(double cx, double cy, List<GeoHit> hits, boolean complete) {
+            this.cx = cx;
+            this.cy = cy;
+            this.ids = new long[hits.size()];
+            this.xs = new double[hits.size()];
+            this.ys = new double[hits.size()];
+            for (int i = 0; i < hits.size(); i++) {
+                GeoHit hit = hits.get(i);
+                ids[i] = hit.getId();
+                xs[i] = hit.getX();
+                ys[i] = hit.getY();
+            }
+            this.maxDistance = hits.isEmpty() ? 0 : hits.get(hits.size() - 1).getDistance();
+            this.complete = complete;
+        }
+
+        /**
+         * 按用户坐标计算距离并排序，只返回准确的部分
+         */
+        private List<GeoHit> rank(double x, double y, double radius) {
+            List<GeoHit> hits = new ArrayList<>(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                double d = GeoShopIndex.distance(x, y, xs[i], ys[i]);
+                if (d <= radius) {
+                    hits.add(new GeoHit(ids[i], d, xs[i], ys[i]));
+                }
+            }
+            hits.sort(BY_DISTANCE);
+            if (complete) {
+                return hits;
+            }
+            // 被截断的店铺到格子中心至少maxDistance，到用户至少maxDistance减去用户到中心的距离，比这更近的部分才准确，
+            // 再减去1米抵消redis返回的距离和坐标的精度误差
+            double bound = maxDistance - GeoShopIndex.distance(x, y, cx, cy) - 1;
+            int n = 0;
+            while (n < hits.size() && hits.get(n).getDistance() < bound) {
+                n++;
+            }
+            return hits.subList(0, n);
+        }
+    }
+}
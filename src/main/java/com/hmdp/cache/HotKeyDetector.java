@@ -0,0 +1,165 @@
+package com.hmdp.cache;
+
+import com.hmdp.dto.HotKeyDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.hmdp.utils.RedisConstants.CACHE_HOT_KEY_CHANNEL;
+
+/**
+ * 热点key探测：对缓存访问采样计数，窗口内访问量超过阈值的key升级为热点key，并通过redis发布订阅通知所有节点，
+ * 各节点对热点key使用短有效期的本地缓存，降低单个redis分片的压力；访问量下降后不再续期，到期自动降级
+ */
+@Slf4j
+@Component
+public class HotKeyDetector implements MessageListener {
+
+    private final CacheProperties.HotKey config;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final WindowedCountMinSketch sketch;
+
+    /**
+     * 采样后的计数阈值
+     */
+    private final int sampledThreshold;
+
+    /**
+     * 当前的热点key，value为热点状态的到期时间
+     */
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 热点key的本地缓存
+     */
+    private final LocalCache<byte[]> localCache;
+
+    public HotKeyDetector(CacheProperties cacheProperties, StringRedisTemplate stringRedisTemplate) {
+        this.config = cacheProperties.getHotKey();
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.sketch = new WindowedCountMinSketch(config.getSketchWidth(), config.getWindow().toMillis(), config.getWindowSlots());
+        this.sampledThreshold = Math.max((int) (config.getThreshold() * config.getSampleRate()), 1);
+        this.localCache = new LocalCache<>(config.getLocalMaxSize());
+    }
+
+    /**
+     * 记录一次访问，返回该key当前是否为热点key
+     */
+    public boolean record(String key) {
+        if (!config.isEnabled()) {
+            return false;
+        }
+        // 1.按比例采样计数
+        if (ThreadLocalRandom.current().nextDouble() < config.getSampleRate()) {
+            int count = sketch.add(key);
+            // 2.超过阈值，升级为热点key
+            if (count >= sampledThreshold) {
+                promote(key);
+            }
+        }
+        return isHot(key);
+    }
+
+    public boolean isHot(String key) {
+        Long hotUntil = hotKeys.get(key);
+        if (hotUntil == null) {
+            return false;
+        }
+        if (hotUntil < System.currentTimeMillis()) {
+            // 没有续期，降级
+            demote(key, hotUntil);
+            return false;
+        }
+        return true;
+    }
+
+    public byte[] getLocal(String key) {
+        return localCache.get(key);
+    }
+
+    public void putLocal(String key, byte[] value) {
+        localCache.put(key, value, config.getLocalTtl().toMillis());
+    }
+
+    public void removeLocal(String key) {
+        localCache.remove(key);
+    }
+
+    /**
+     * 当前的热点key，按窗口内的估算访问量倒序
+     */
+    public List<HotKeyDTO> listHotKeys() {
+        long now = System.currentTimeMillis();
+        List<HotKeyDTO> list = new ArrayList<>(hotKeys.size());
+        for (Map.Entry<String, Long> entry : hotKeys.entrySet()) {
+            if (entry.getValue() < now) {
+                demote(entry.getKey(), entry.getValue());
+                continue;
+            }
+            HotKeyDTO dto = new HotKeyDTO();
+            dto.setKey(entry.getKey());
+            dto.setCount((long) (sketch.estimate(entry.getKey()) / config.getSampleRate()));
+            dto.setTtl(entry.getValue() - now);
+            list.add(dto);
+        }
+        list.sort(Comparator.comparing(HotKeyDTO::getCount).reversed());
+        return list;
+    }
+
+    /**
+     * 收到其它节点（包括自己）广播的热点key
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        mark(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void promote(String key) {
+        Long hotUntil = hotKeys.get(key);
+        long now = System.currentTimeMillis();
+        // 保持时间还剩一半以上，不用重复续期和广播
+        if (hotUntil != null && hotUntil - now > config.getHoldTime().toMillis() / 2) {
+            return;
+        }
+        mark(key);
+        // 广播给所有节点
+        stringRedisTemplate.convertAndSend(CACHE_HOT_KEY_CHANNEL, key);
+    }
+
+    private void mark(String key) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (!hotKeys.containsKey(key) && hotKeys.size() >= config.getLocalMaxSize()) {
+            // 热点key数量达到上限，先清理过期的
+            long now = System.currentTimeMillis();
+            hotKeys.entrySet().removeIf(e -> e.getValue() < now);
+            if (hotKeys.size() >= config.getLocalMaxSize()) {
+                return;
+            }
+        }
+        Long previous = hotKeys.put(key, System.currentTimeMillis() + config.getHoldTime().toMillis());
+        if (previous == null) {
+            log.info("发现热点key：{}", key);
+        }
+    }
+
+    private void demote(String key, Long hotUntil) {
+        if (hotKeys.remove(key, hotUntil)) {
+            localCache.remove(key);
+            log.info("热点key降级：{}", key);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.hmdp.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 简单的本地缓存（L1），多个请求共享同一个值，因此只能保存不可变的值：
+ * CacheClient保存的是缓存的原始字节而不是对象，每次命中都会反序列化出新对象
+ */
+public class LocalCache<V> {
+
+    private final ConcurrentHashMap<String, Entry<V>> map = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    public LocalCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public V get(String key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt < System.currentTimeMillis()) {
+            // 已过期，删除
+            map.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(String key, V value, long ttlMillis) {
+        if (map.size() >= maxSize) {
+            evict();
+        }
+        map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public void remove(String key) {
+        map.remove(key);
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 容量已满时先清理过期的条目，仍然不够则随意淘汰四分之一
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        map.entrySet().removeIf(e -> e.getValue().expireAt < now);
+        int toRemove = map.size() - maxSize * 3 / 4;
+        Iterator<Map.Entry<String, Entry<V>>> it = map.entrySet().iterator();
+        while (toRemove-- > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.hmdp.cache;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import com.hmdp.dto.ShopCounter;
+import com.hmdp.entity.Shop;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_UNIT;
+
+/**
+ * 以redis hash保存的店铺缓存（hmdp.cache.shop-layout=hash时启用），每个属性一个字段：
+ * 销量、评论数、评分等计数器用HINCRBY原地更新，不用删除整个缓存再从数据库重新加载，只有真正修改店铺信息时才删除缓存
+ * <p>
+ * 计数器的增量只能加在提交之前的数据上：每次计数器变化在事务中把计数器版本（{key}:ver）的pending加一，
+ * 事务结束后减一并把ver加一，提交时再HINCRBY。未命中时查询数据库之前先读取ver，
+ * 写入时有计数器正在变化或者ver变化过就不写入，避免查询到的旧数据覆盖自增，或者已经包含增量的数据再被自增一次
+ */
+@Component
+public class ShopHashCache {
+
+    private static final String CACHE_NAME = "shop-hash";
+    /**
+     * 店铺不存在时缓存的空值标记字段
+     */
+    private static final String NULL_FIELD = "_null";
+    /**
+     * 计数器版本的key后缀
+     */
+    private static final String VERSION_SUFFIX = ":ver";
+    /**
+     * 计数器版本只需要覆盖正在进行的事务和查询
+     */
+    private static final long VERSION_TTL = TimeUnit.MINUTES.toMillis(1);
+
+    private static final DefaultRedisScript<Long> PUT_SCRIPT;
+    private static final DefaultRedisScript<Long> INCREMENT_SCRIPT;
+    static {
+        PUT_SCRIPT = new DefaultRedisScript<>();
+        PUT_SCRIPT.setLocation(new ClassPathResource("shop_hash_put.lua"));
+        PUT_SCRIPT.setResultType(Long.class);
+        INCREMENT_SCRIPT = new DefaultRedisScript<>();
+        INCREMENT_SCRIPT.setLocation(new ClassPathResource("shop_hash_increment.lua"));
+        INCREMENT_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
+    public boolean isEnabled() {
+        return "hash".equals(cacheProperties.getShopLayout());
+    }
+
+    /**
+     * 一次HGETALL查询店铺缓存，未命中时查询数据库并写入缓存
+     */
+    public Shop get(Long id, Function<Long, Shop> dbFallback) {
+        CacheProperties.Spec spec = cacheProperties.getSpec(CACHE_NAME);
+        String key = spec.getKeyPrefix() + id;
+        // 1.从redis查询店铺的所有字段
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+        // 2.命中
+        if (!entries.isEmpty()) {
+            // 2.1.命中空值
+            if (entries.containsKey(NULL_FIELD)) {
+                return null;
+            }
+            // 2.2.组装店铺
+            return BeanUtil.fillBeanWithMap(entries, new Shop(), false);
+        }
+        // 3.未命中，先读取计数器版本，再查询数据库
+        Object version = stringRedisTemplate.opsForHash().get(key + VERSION_SUFFIX, "ver");
+        Shop shop = dbFallback.apply(id);
+        if (shop == null) {
+            // 4.不存在，缓存空值
+            stringRedisTemplate.opsForHash().put(key, NULL_FIELD, "");
+            stringRedisTemplate.expire(key, CACHE_NULL_TTL, CACHE_NULL_UNIT);
+            return null;
+        }
+        // 5.存在，计数器没有变化过时写入redis
+        stringRedisTemplate.execute(PUT_SCRIPT, Arrays.asList(key, key + VERSION_SUFFIX),
+                (Object[]) putArgs(spec, shop, version == null ? "" : version.toString()));
+        return shop;
+    }
+
+    /**
+     * 计数器自增，需要在修改数据库的事务中调用：立即标记计数器正在变化，等到事务提交后再更新缓存，回滚时只结束标记；
+     * 缓存不存在时不处理，下次查询时从数据库加载
+     */
+    public void increment(Long id, ShopCounter counter, long delta) {
+        String key = cacheProperties.getSpec(CACHE_NAME).getKeyPrefix() + id;
+        String versionKey = key + VERSION_SUFFIX;
+        // 1.标记计数器正在变化
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] rawKey = versionKey.getBytes(StandardCharsets.UTF_8);
+            connection.hIncrBy(rawKey, "pending".getBytes(StandardCharsets.UTF_8), 1);
+            connection.pExpire(rawKey, VERSION_TTL);
+            return null;
+        });
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            finishIncrement(key, versionKey, counter, delta);
+            return;
+        }
+        // 2.事务结束后结束标记，提交时自增
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                finishIncrement(key, versionKey, counter, status == TransactionSynchronization.STATUS_COMMITTED ? delta : 0);
+            }
+        });
+    }
+
+    /**
+     * 店铺信息被修改，删除整个缓存
+     */
+    public void invalidate(Long id) {
+        cacheInvalidator.invalidate(cacheProperties.getSpec(CACHE_NAME).getKeyPrefix() + id);
+    }
+
+    /**
+     * 批量写入店铺缓存，用于启动预热，一个pipeline完成；和查询时写回的一样，计数器最近变化过的店铺不写入
+     */
+    public void putAll(List<Shop> shops) {
+        CacheProperties.Spec spec = cacheProperties.getSpec(CACHE_NAME);
+        byte[] script = PUT_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Shop shop : shops) {
+                String key = spec.getKeyPrefix() + shop.getId();
+                // 预热读取数据库之前没有读取版本，只在版本不存在时写入
+                String[] args = putArgs(spec, shop, "");
+                byte[][] keysAndArgs = new byte[args.length + 2][];
+                keysAndArgs[0] = key.getBytes(StandardCharsets.UTF_8);
+                keysAndArgs[1] = (key + VERSION_SUFFIX).getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i < args.length; i++) {
+                    keysAndArgs[i + 2] = args[i].getBytes(StandardCharsets.UTF_8);
+                }
+                connection.eval(script, ReturnType.INTEGER, 2, keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    private void finishIncrement(String key, String versionKey, ShopCounter counter, long delta) {
+        stringRedisTemplate.execute(INCREMENT_SCRIPT, Arrays.asList(key, versionKey),
+                counter.getField(), String.valueOf(delta), String.valueOf(VERSION_TTL));
+    }
+
+    /**
+     * 写入脚本的参数：读到的版本、有效期、字段和值
+     */
+    private static String[] putArgs(CacheProperties.Spec spec, Shop shop, String version) {
+        // 属性值都转为字符串保存，null值不保存；distance是查询时计算的，不保存
+        Map<String, Object> fields = BeanUtil.beanToMap(shop, new HashMap<>(),
+                CopyOptions.create()
+                        .setIgnoreNullValue(true)
+                        .setIgnoreProperties("distance")
+                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue == null ? null : fieldValue.toString()));
+        List<String> args = new ArrayList<>(fields.size() * 2 + 2);
+        args.add(version);
+        args.add(String.valueOf(spec.getTtl().toMillis()));
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value.toString());
+        });
+        return args.toArray(new String[0]);
+    }
+}
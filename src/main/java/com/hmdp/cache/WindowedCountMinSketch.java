@@ -0,0 +1,106 @@
+package com.hmdp.cache;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 滑动窗口的Count-Min Sketch，用固定内存估算每个key在最近一段时间内的访问次数（只会高估，不会低估）
+ * <p>
+ * 窗口被切分为若干个子窗口，每个子窗口一个sketch，循环使用，过期的子窗口在下次写入时清零。
+ * 各行的位置由key的64位murmur3哈希的高低两半组合得到，String.hashCode相同的key不会在每一行都冲突
+ */
+public class WindowedCountMinSketch {
+
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final int mask;
+    private final long slotMillis;
+    private final Slot[] slots;
+
+    /**
+     * @param width       每一行的计数器个数，会向上取整为2的幂
+     * @param windowMillis 窗口长度
+     * @param slotCount   子窗口个数
+     */
+    public WindowedCountMinSketch(int width, long windowMillis, int slotCount) {
+        this.width = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.mask = this.width - 1;
+        this.slotMillis = Math.max(windowMillis / slotCount, 1);
+        this.slots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new Slot(DEPTH * this.width);
+        }
+    }
+
+    /**
+     * 记录一次访问，返回记录后该key在窗口内的估算次数
+     */
+    public int add(String key) {
+        long epoch = System.currentTimeMillis() / slotMillis;
+        Slot slot = slots[(int) (epoch % slots.length)];
+        // 1.子窗口已经过期，清零后重新使用
+        if (slot.epoch != epoch) {
+            slot.reset(epoch);
+        }
+        // 2.每一行对应的计数器加一
+        long h = MurmurHash.hash64(key);
+        for (int i = 0; i < DEPTH; i++) {
+            slot.counters.incrementAndGet(index(h, i));
+        }
+        return estimate(h, epoch);
+    }
+
+    /**
+     * 估算key在窗口内的访问次数
+     */
+    public int estimate(String key) {
+        return estimate(MurmurHash.hash64(key), System.currentTimeMillis() / slotMillis);
+    }
+
+    private int estimate(long h, long epoch) {
+        int total = 0;
+        for (Slot slot : slots) {
+            // 只统计仍在窗口内的子窗口
+            if (epoch - slot.epoch >= slots.length) {
+                continue;
+            }
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, slot.counters.get(index(h, i)));
+            }
+            total += min;
+        }
+        return total;
+    }
+
+    /**
+     * Kirsch–Mitzenmacher：第row行的哈希 = h1 + row * h2，h1、h2是64位哈希的低、高32位，
+     * 和每一行独立计算哈希的误差界相同；h2取奇数，同一个key在各行的位置互不相同
+     */
+    private int index(long h, int row) {
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & mask);
+    }
+
+    private static class Slot {
+        private final AtomicIntegerArray counters;
+        private volatile long epoch = -1;
+
+        private Slot(int size) {
+            this.counters = new AtomicIntegerArray(size);
+        }
+
+        private synchronized void reset(long epoch) {
+            if (this.epoch == epoch) {
+                return;
+            }
+            for (int i = 0; i < counters.length(); i++) {
+                counters.set(i, 0);
+            }
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.hmdp.cache.codec;
+
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * 紧凑二进制编码，只支持注册了BinarySchema的类型及其List，其余类型由JSON兜底
+ * <p>
+ * 单个对象：[版本号][对象]；列表：[版本号][元素个数][元素1长度][元素1]...，元素带长度是为了读取新版本数据时能跳过不认识的字段
+ */
+@Component
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final int ID = 2;
+
+    private final Map<Class<?>, BinarySchema<?>> schemas = new HashMap<>();
+
+    public BinaryCacheCodec(List<BinarySchema<?>> schemas) {
+        for (BinarySchema<?> schema : schemas) {
+            this.schemas.put(schema.getType(), schema);
+        }
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public boolean canEncode(Object value) {
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (element == null || !schemas.containsKey(element.getClass())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return value != null && schemas.containsKey(value.getClass());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void encode(Object value, BinaryWriter out) {
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            BinarySchema<Object> schema = list.isEmpty() ? null : (BinarySchema<Object>) schemas.get(list.get(0).getClass());
+            out.writeVarLong(schema == null ? 1 : schema.getVersion());
+            out.writeVarLong(list.size());
+            BinaryWriter element = new BinaryWriter();
+            for (Object o : list) {
+                element.reset();
+                ((BinarySchema<Object>) schemas.get(o.getClass())).write(o, element);
+                out.writeVarLong(element.size());
+                element.writeTo(out);
+            }
+            return;
+        }
+        BinarySchema<Object> schema = (BinarySchema<Object>) schemas.get(value.getClass());
+        out.writeVarLong(schema.getVersion());
+        schema.write(value, out);
+    }
+
+    @Override
+    public Object decode(BinaryReader in, Type type) {
+        int version = (int) in.readVarLong();
+        if (type instanceof ParameterizedType && isList(((ParameterizedType) type).getRawType())) {
+            int size = (int) in.readVarLong();
+            List<Object> list = new ArrayList<>(size);
+            if (size == 0) {
+                return list;
+            }
+            BinarySchema<?> schema = schemaOf(((ParameterizedType) type).getActualTypeArguments()[0]);
+            for (int i = 0; i < size; i++) {
+                int length = (int) in.readVarLong();
+                int end = in.position() + length;
+                list.add(schema.read(in, version));
+                // 跳过新版本中本节点不认识的字段
+                in.skip(end - in.position());
+            }
+            return list;
+        }
+        return schemaOf(type).read(in, version);
+    }
+
+    private BinarySchema<?> schemaOf(Type type) {
+        BinarySchema<?> schema = type instanceof Class ? schemas.get(type) : null;
+        if (schema == null) {
+            throw new IllegalStateException("没有注册" + type.getTypeName() + "的BinarySchema");
+        }
+        return schema;
+    }
+
+    private static boolean isList(Type rawType) {
+        return rawType instanceof Class && Collection.class.isAssignableFrom((Class<?>) rawType);
+    }
+}
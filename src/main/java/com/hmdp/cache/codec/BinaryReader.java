@@ -0,0 +1,94 @@
+package com.hmdp.cache.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑二进制读取器，与BinaryWriter对应
+ */
+public class BinaryReader {
+
+    private final byte[] buf;
+    private int pos;
+    private final int limit;
+
+    public BinaryReader(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    public BinaryReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    public int readByte() {
+        check(1);
+        return buf[pos++] & 0xFF;
+    }
+
+    public long readVarLong() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("varint过长，缓存数据已损坏");
+    }
+
+    public long readZigZag() {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public long readFixedLong() {
+        check(8);
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (buf[pos++] & 0xFF);
+        }
+        return v;
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readFixedLong());
+    }
+
+    public String readString() {
+        int length = (int) readVarLong();
+        check(length);
+        String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return s;
+    }
+
+    /**
+     * 读取剩余的全部字节作为字符串
+     */
+    public String readRemainingString() {
+        String s = new String(buf, pos, limit - pos, StandardCharsets.UTF_8);
+        pos = limit;
+        return s;
+    }
+
+    public void skip(int n) {
+        check(n);
+        pos += n;
+    }
+
+    public int position() {
+        return pos;
+    }
+
+    public int remaining() {
+        return limit - pos;
+    }
+
+    private void check(int n) {
+        if (pos + n > limit) {
+            throw new IllegalStateException("缓存数据长度不足，数据已损坏");
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.hmdp.cache.codec;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 实体类的二进制结构定义，字段按声明顺序写入，null字段只在头部的位图中占一位
+ * <p>
+ * 版本兼容规则：字段只能追加不能调整顺序，追加字段前调用since(新版本号)；不再需要的字段用removed占住原来的位置。
+ * 读取旧版本数据时只读取该版本已有的字段，新字段保持为null；读取新版本数据时忽略末尾不认识的字段，
+ * 因此滚动发布期间新旧节点可以互相读取缓存
+ */
+public final class BinarySchema<T> {
+
+    private final Class<T> type;
+    private final Supplier<T> factory;
+    private final List<Field<T, ?>> fields;
+    private final int version;
+
+    private BinarySchema(Class<T> type, Supplier<T> factory, List<Field<T, ?>> fields, int version) {
+        this.type = type;
+        this.factory = factory;
+        this.fields = fields;
+        this.version = version;
+    }
+
+    public static <T> Builder<T> builder(Class<T> type, Supplier<T> factory) {
+        return new Builder<>(type, factory);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * 写入一个对象（不含版本号）
+     */
+    public void write(T value, BinaryWriter out) {
+        // 1.null字段位图
+        long nullMask = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).getter.apply(value) == null) {
+                nullMask |= 1L << i;
+            }
+        }
+        out.writeVarLong(nullMask);
+        // 2.依次写入非null字段
+        for (int i = 0; i < fields.size(); i++) {
+            if ((nullMask & (1L << i)) == 0) {
+                fields.get(i).write(value, out);
+            }
+        }
+    }
+
+    /**
+     * 按指定版本读取一个对象，新版本数据中多出来的字段在末尾，直接忽略
+     */
+    public T read(BinaryReader in, int dataVersion) {
+        T value = factory.get();
+        long nullMask = in.readVarLong();
+        for (int i = 0; i < fields.size(); i++) {
+            Field<T, ?> field = fields.get(i);
+            if (field.since > dataVersion) {
+                // 旧版本数据中没有该字段
+                break;
+            }
+            if ((nullMask & (1L << i)) == 0) {
+                field.read(value, in);
+            }
+        }
+        return value;
+    }
+
+    public static final class Builder<T> {
+        private final Class<T> type;
+        private final Supplier<T> factory;
+        private final List<Field<T, ?>> fields = new ArrayList<>();
+        private int version = 1;
+
+        private Builder(Class<T> type, Supplier<T> factory) {
+            this.type = type;
+            this.factory = factory;
+        }
+
+        /**
+         * 之后追加的字段从该版本开始存在
+         */
+        public Builder<T> since(int version) {
+            if (version < this.version) {
+                throw new IllegalArgumentException("版本号只能递增");
+            }
+            this.version = version;
+            return this;
+        }
+
+        public <V> Builder<T> field(FieldCodec<V> codec, Function<T, V> getter, BiConsumer<T, V> setter) {
+            if (fields.size() >= 64) {
+                throw new IllegalStateException("最多支持64个字段");
+            }
+            fields.add(new Field<>(codec, getter, setter, version));
+            return this;
+        }
+
+        /**
+         * 占住已经删除的字段的位置：写入时总是null，只占位图中的一位；读取旧数据时读出该字段的值后丢弃
+         */
+        public <V> Builder<T> removed(FieldCodec<V> codec) {
+            return field(codec, value -> null, (value, v) -> {
+            });
+        }
+
+        public BinarySchema<T> build() {
+            return new BinarySchema<>(type, factory, new ArrayList<>(fields), version);
+        }
+    }
+
+    private static final class Field<T, V> {
+        private final FieldCodec<V> codec;
+        private final Function<T, V> getter;
+        private final BiConsumer<T, V> setter;
+        private final int since;
+
+        private Field(FieldCodec<V> codec, Function<T, V> getter, BiConsumer<T, V> setter, int since) {
+            this.codec = codec;
+            this.getter = getter;
+            this.setter = setter;
+            this.since = since;
+        }
+
+        private void write(T value, BinaryWriter out) {
+            codec.write(getter.apply(value), out);
+        }
+
+        private void read(T value, BinaryReader in) {
+            setter.accept(value, codec.read(in));
+        }
+    }
+
+    /**
+     * 字段类型的编解码
+     */
+    public interface FieldCodec<V> {
+        void write(V value, BinaryWriter out);
+
+        V read(BinaryReader in);
+    }
+
+    public static final FieldCodec<Long> LONG = new FieldCodec<Long>() {
+        @Override
+        public void write(Long value, BinaryWriter out) {
+            out.writeZigZag(value);
+        }
+
+        @Override
+        public Long read(BinaryReader in) {
+            return in.readZigZag();
+        }
+    };
+
+    public static final FieldCodec<Integer> INT = new FieldCodec<Integer>() {
+        @Override
+        public void write(Integer value, BinaryWriter out) {
+            out.writeZigZag(value);
+        }
+
+        @Override
+        public Integer read(BinaryReader in) {
+            return (int) in.readZigZag();
+        }
+    };
+
+    public static final FieldCodec<Double> DOUBLE = new FieldCodec<Double>() {
+        @Override
+        public void write(Double value, BinaryWriter out) {
+            out.writeDouble(value);
+        }
+
+        @Override
+        public Double read(BinaryReader in) {
+            return in.readDouble();
+        }
+    };
+
+    public static final FieldCodec<Boolean> BOOLEAN = new FieldCodec<Boolean>() {
+        @Override
+        public void write(Boolean value, BinaryWriter out) {
+            out.writeByte(value ? 1 : 0);
+        }
+
+        @Override
+        public Boolean read(BinaryReader in) {
+            return in.readByte() != 0;
+        }
+    };
+
+    public static final FieldCodec<String> STRING = new FieldCodec<String>() {
+        @Override
+        public void write(String value, BinaryWriter out) {
+            out.writeString(value);
+        }
+
+        @Override
+        public String read(BinaryReader in) {
+            return in.readString();
+        }
+    };
+
+    /**
+     * 时间按UTC换算为毫秒值保存，与节点所在时区无关
+     */
+    public static final FieldCodec<LocalDateTime> DATE_TIME = new FieldCodec<LocalDateTime>() {
+        @Override
+        public void write(LocalDateTime value, BinaryWriter out) {
+            out.writeZigZag(value.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+
+        @Override
+        public LocalDateTime read(BinaryReader in) {
+            long millis = in.readZigZag();
+            return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+        }
+    };
+}
@@ -0,0 +1,97 @@
+package com.hmdp.cache.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 紧凑二进制写入器，整数使用变长编码（varint），字符串使用UTF-8
+ */
+public class BinaryWriter {
+
+    private byte[] buf;
+    private int pos;
+
+    public BinaryWriter() {
+        this(128);
+    }
+
+    public BinaryWriter(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    public void writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    public void writeBytes(byte[] bytes) {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buf, pos, length);
+        pos += length;
+    }
+
+    /**
+     * 无符号变长整数，每个字节7位有效
+     */
+    public void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+    /**
+     * 有符号变长整数，先做zigzag编码，让绝对值小的负数也很短
+     */
+    public void writeZigZag(long v) {
+        writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    public void writeFixedLong(long v) {
+        ensure(8);
+        for (int i = 7; i >= 0; i--) {
+            buf[pos++] = (byte) (v >>> (i * 8));
+        }
+    }
+
+    public void writeDouble(double v) {
+        writeFixedLong(Double.doubleToRawLongBits(v));
+    }
+
+    public void writeString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        writeBytes(bytes);
+    }
+
+    public int size() {
+        return pos;
+    }
+
+    public void reset() {
+        pos = 0;
+    }
+
+    /**
+     * 把已写入的内容追加到另一个写入器中
+     */
+    public void writeTo(BinaryWriter out) {
+        out.writeBytes(buf, 0, pos);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.hmdp.cache.codec;
+
+import java.lang.reflect.Type;
+
+/**
+ * 缓存值编解码的扩展点，实现类注册为Spring Bean即可使用，通过hmdp.cache.codec选择写入时使用的编码
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码格式id，写在缓存值的头部，读取时据此选择解码器，取值范围1~7，一经使用不能修改
+     */
+    int id();
+
+    /**
+     * 编码名称，用于配置
+     */
+    String name();
+
+    /**
+     * 是否能编码该值，不能编码时退回JSON
+     */
+    boolean canEncode(Object value);
+
+    void encode(Object value, BinaryWriter out);
+
+    Object decode(BinaryReader in, Type type);
+}
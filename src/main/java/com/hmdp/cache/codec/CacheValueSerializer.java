@@ -0,0 +1,201 @@
+package com.hmdp.cache.codec;
+
+import cn.hutool.json.JSON;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.cache.CacheProperties;
+import com.hmdp.utils.RedisData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存值的序列化，在编码结果前加一个头部字节：
+ * <pre>
+ * bit0~2：编码格式id（CacheCodec.id）
+ * bit3  ：是否带逻辑过期时间，带的话头部后面是8字节的过期时间戳（毫秒）
+ * bit4  ：编码结果是否经过LZ4压缩，压缩的话数据为[原始长度][压缩后的数据]
+ * </pre>
+ * 只有超过阈值的值才压缩，小的值保持原样，省去压缩的CPU开销
+ * 头部字节小于0x20，旧版本直接写入的JSON字符串首字节一定是可见字符，据此兼容读取旧数据
+ */
+@Component
+public class CacheValueSerializer {
+
+    private static final int FORMAT_MASK = 0x07;
+    private static final int FLAG_LOGICAL_EXPIRE = 0x08;
+    private static final int FLAG_COMPRESSED = 0x10;
+    private static final int LEGACY_MIN = 0x20;
+
+    private final CacheCodec[] codecs = new CacheCodec[FORMAT_MASK + 1];
+    private final CacheCodec writeCodec;
+    private final CacheCodec fallbackCodec;
+
+    private final int compressThreshold;
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+
+    // 压缩相关的监控指标
+    private final Counter rawBytes;
+    private final Counter compressedBytes;
+    private final Counter skippedCompressions;
+    private final Timer compressTimer;
+    private final Timer decompressTimer;
+
+    public CacheValueSerializer(List<CacheCodec> codecs, CacheProperties cacheProperties, MeterRegistry meterRegistry) {
+        CacheCodec writeCodec = null;
+        for (CacheCodec codec : codecs) {
+            if (codec.id() < 1 || codec.id() > FORMAT_MASK || this.codecs[codec.id()] != null) {
+                throw new IllegalStateException("CacheCodec的id非法或重复：" + codec.name());
+            }
+            this.codecs[codec.id()] = codec;
+            if (codec.name().equals(cacheProperties.getCodec())) {
+                writeCodec = codec;
+            }
+        }
+        if (writeCodec == null) {
+            throw new IllegalStateException("未知的缓存编码：" + cacheProperties.getCodec());
+        }
+        this.writeCodec = writeCodec;
+        this.fallbackCodec = this.codecs[JsonCacheCodec.ID];
+        this.compressThreshold = cacheProperties.getCompressThreshold();
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+        this.rawBytes = meterRegistry.counter("cache.compression.raw.bytes");
+        this.compressedBytes = meterRegistry.counter("cache.compression.compressed.bytes");
+        this.skippedCompressions = meterRegistry.counter("cache.compression.skipped");
+        this.compressTimer = meterRegistry.timer("cache.compression.compress");
+        this.decompressTimer = meterRegistry.timer("cache.compression.decompress");
+        // 压缩率 = 压缩后字节数 / 压缩前字节数
+        Gauge.builder("cache.compression.ratio", this,
+                        s -> s.rawBytes.count() == 0 ? 1.0 : s.compressedBytes.count() / s.rawBytes.count())
+                .register(meterRegistry);
+    }
+
+    public byte[] serialize(Object value) {
+        return serialize(value, 0, false);
+    }
+
+    /**
+     * 序列化并带上逻辑过期时间，读取时只需解析一次
+     */
+    public byte[] serializeWithExpire(Object value, long expireAtMillis) {
+        return serialize(value, expireAtMillis, true);
+    }
+
+    private byte[] serialize(Object value, long expireAtMillis, boolean logicalExpire) {
+        CacheCodec codec = writeCodec.canEncode(value) ? writeCodec : fallbackCodec;
+        BinaryWriter payload = new BinaryWriter();
+        codec.encode(value, payload);
+        int header = codec.id() | (logicalExpire ? FLAG_LOGICAL_EXPIRE : 0);
+        // 超过阈值的值尝试压缩
+        byte[] compressed = compressThreshold > 0 && payload.size() > compressThreshold ? compress(payload) : null;
+        BinaryWriter out = new BinaryWriter((compressed != null ? compressed.length : payload.size()) + 16);
+        out.writeByte(compressed != null ? header | FLAG_COMPRESSED : header);
+        if (logicalExpire) {
+            out.writeFixedLong(expireAtMillis);
+        }
+        if (compressed != null) {
+            out.writeVarLong(payload.size());
+            out.writeBytes(compressed);
+        } else {
+            payload.writeTo(out);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * LZ4压缩，压缩后没有变小则返回null，保持原样
+     */
+    private byte[] compress(BinaryWriter payload) {
+        long start = System.nanoTime();
+        byte[] raw = payload.toByteArray();
+        byte[] compressed = compressor.compress(raw);
+        compressTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (compressed.length >= raw.length) {
+            skippedCompressions.increment();
+            return null;
+        }
+        rawBytes.increment(raw.length);
+        compressedBytes.increment(compressed.length);
+        return compressed;
+    }
+
+    /**
+     * 反序列化，bytes不能为空数组（空数组表示缓存的空值，由调用方处理）
+     * @param logicalExpire 调用方是否按逻辑过期读取，仅用于解析旧格式的数据
+     */
+    public CacheValue deserialize(byte[] bytes, Type type, boolean logicalExpire) {
+        int header = bytes[0] & 0xFF;
+        if (header >= LEGACY_MIN) {
+            return deserializeLegacy(bytes, type, logicalExpire);
+        }
+        CacheCodec codec = codecs[header & FORMAT_MASK];
+        if (codec == null) {
+            throw new IllegalStateException("未知的缓存编码格式：" + (header & FORMAT_MASK));
+        }
+        BinaryReader in = new BinaryReader(bytes, 1, bytes.length - 1);
+        long expireAt = (header & FLAG_LOGICAL_EXPIRE) != 0 ? in.readFixedLong() : -1;
+        if ((header & FLAG_COMPRESSED) != 0) {
+            in = decompress(bytes, in);
+        }
+        return new CacheValue(codec.decode(in, type), expireAt);
+    }
+
+    private BinaryReader decompress(byte[] bytes, BinaryReader in) {
+        long start = System.nanoTime();
+        int rawLength = (int) in.readVarLong();
+        byte[] raw = new byte[rawLength];
+        decompressor.decompress(bytes, in.position(), raw, 0, rawLength);
+        decompressTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new BinaryReader(raw);
+    }
+
+    /**
+     * 旧版本使用StringRedisTemplate写入的JSON，逻辑过期的数据外面包了一层RedisData
+     */
+    private CacheValue deserializeLegacy(byte[] bytes, Type type, boolean logicalExpire) {
+        String json = new String(bytes, StandardCharsets.UTF_8);
+        if (!logicalExpire) {
+            return new CacheValue(JSONUtil.toBean(json, type, false), -1);
+        }
+        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
+        LocalDateTime expireTime = redisData.getExpireTime();
+        long expireAt = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new CacheValue(((JSON) redisData.getData()).toBean(type), expireAt);
+    }
+
+    public static class CacheValue {
+        private final Object value;
+        private final long expireAt;
+
+        public CacheValue(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <R> R getValue() {
+            return (R) value;
+        }
+
+        /**
+         * 逻辑过期时间戳（毫秒），没有逻辑过期时间时为-1
+         */
+        public long getExpireAt() {
+            return expireAt;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.hmdp.cache.codec;
+
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 使用Hutool JSON编码，支持任意类型，也是其他编码不支持时的兜底
+ */
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final int ID = 1;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public boolean canEncode(Object value) {
+        return true;
+    }
+
+    @Override
+    public void encode(Object value, BinaryWriter out) {
+        out.writeBytes(JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Object decode(BinaryReader in, Type type) {
+        return JSONUtil.toBean(in.readRemainingString(), type, false);
+    }
+}
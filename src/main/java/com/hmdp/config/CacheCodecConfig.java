@@ -0,0 +1,83 @@
+package com.hmdp.config;
+
+import com.hmdp.cache.codec.BinarySchema;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import static com.hmdp.cache.codec.BinarySchema.*;
+
+/**
+ * 缓存二进制编码的实体结构，字段只能在末尾追加，追加前先调用since(新版本号)
+ */
+@Configuration
+public class CacheCodecConfig {
+
+    @Bean
+    public BinarySchema<Shop> shopSchema() {
+        return BinarySchema.builder(Shop.class, Shop::new)
+                .field(LONG, Shop::getId, Shop::setId)
+                .field(STRING, Shop::getName, Shop::setName)
+                .field(LONG, Shop::getTypeId, Shop::setTypeId)
+                .field(STRING, Shop::getImages, Shop::setImages)
+                .field(STRING, Shop::getArea, Shop::setArea)
+                .field(STRING, Shop::getAddress, Shop::setAddress)
+                .field(DOUBLE, Shop::getX, Shop::setX)
+                .field(DOUBLE, Shop::getY, Shop::setY)
+                .field(LONG, Shop::getAvgPrice, Shop::setAvgPrice)
+                .field(INT, Shop::getSold, Shop::setSold)
+                .field(INT, Shop::getComments, Shop::setComments)
+                .field(INT, Shop::getScore, Shop::setScore)
+                .field(STRING, Shop::getOpenHours, Shop::setOpenHours)
+                .field(DATE_TIME, Shop::getCreateTime, Shop::setCreateTime)
+                .field(DATE_TIME, Shop::getUpdateTime, Shop::setUpdateTime)
+                .build();
+    }
+
+    @Bean
+    public BinarySchema<ShopType> shopTypeSchema() {
+        return BinarySchema.builder(ShopType.class, ShopType::new)
+                .field(LONG, ShopType::getId, ShopType::setId)
+                .field(STRING, ShopType::getName, ShopType::setName)
+                .field(STRING, ShopType::getIcon, ShopType::setIcon)
+                .field(INT, ShopType::getSort, ShopType::setSort)
+                .field(DATE_TIME, ShopType::getCreateTime, ShopType::setCreateTime)
+                .field(DATE_TIME, ShopType::getUpdateTime, ShopType::setUpdateTime)
+                .build();
+    }
+
+    /**
+     * 缓存中只保存笔记自己的列，作者的头像、昵称和当前用户是否点赞每次读取时由BlogHydrator填充
+     */
+    @Bean
+    public BinarySchema<Blog> blogSchema() {
+        return BinarySchema.builder(Blog.class, Blog::new)
+                .field(LONG, Blog::getId, Blog::setId)
+                .field(LONG, Blog::getShopId, Blog::setShopId)
+                .field(LONG, Blog::getUserId, Blog::setUserId)
+                // 原来的icon、name、isLike
+                .removed(STRING)
+                .removed(STRING)
+                .removed(BOOLEAN)
+                .field(STRING, Blog::getTitle, Blog::setTitle)
+                .field(STRING, Blog::getImages, Blog::setImages)
+                .field(STRING, Blog::getContent, Blog::setContent)
+                .field(INT, Blog::getLiked, Blog::setLiked)
+                .field(INT, Blog::getComments, Blog::setComments)
+                .field(DATE_TIME, Blog::getCreateTime, Blog::setCreateTime)
+                .field(DATE_TIME, Blog::getUpdateTime, Blog::setUpdateTime)
+                .build();
+    }
+
+    @Bean
+    public BinarySchema<UserDTO> userDTOSchema() {
+        return BinarySchema.builder(UserDTO.class, UserDTO::new)
+                .field(LONG, UserDTO::getId, UserDTO::setId)
+                .field(STRING, UserDTO::getNickName, UserDTO::setNickName)
+                .field(STRING, UserDTO::getIcon, UserDTO::setIcon)
+                .build();
+    }
+}
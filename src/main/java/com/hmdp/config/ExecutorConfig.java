@@ -0,0 +1,33 @@
+package com.hmdp.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 业务线程池，和tomcat的请求线程、缓存的线程池分开，一个依赖变慢不会拖垮其他接口
+ */
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * 店铺详情并行查询各部分的线程池，队列有界，满了直接拒绝
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService shopDetailExecutor(ShopDetailProperties properties) {
+        AtomicInteger index = new AtomicInteger();
+        return new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(properties.getQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "shop-detail-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
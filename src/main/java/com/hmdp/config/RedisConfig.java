@@ -0,0 +1,46 @@
+package com.hmdp.config;
+
+import com.hmdp.cache.GeoCellCache;
+import com.hmdp.cache.HotKeyDetector;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import static com.hmdp.utils.RedisConstants.CACHE_GEO_CELL_EVICT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_HOT_KEY_CHANNEL;
+
+@Configuration
+public class RedisConfig {
+
+    /**
+     * key为字符串、value为原始字节的RedisTemplate，用于保存二进制编码的缓存
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> bytesRedisTemplate(RedisConnectionFactory redisConnectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(redisConnectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    /**
+     * redis发布订阅的监听容器，订阅热点key和附近店铺详情失效的广播
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       HotKeyDetector hotKeyDetector,
+                                                                       GeoCellCache geoCellCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(hotKeyDetector, new ChannelTopic(CACHE_HOT_KEY_CHANNEL));
+        container.addMessageListener(geoCellCache, new ChannelTopic(CACHE_GEO_CELL_EVICT_CHANNEL));
+        return container;
+    }
+}
@@ -0,0 +1,32 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 店铺详情聚合接口的配置，对应application.yaml中的hmdp.shop-detail
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.shop-detail")
+public class ShopDetailProperties {
+    /**
+     * 并行查询各部分的线程数
+     */
+    private int threads = 16;
+    /**
+     * 线程池的队列长度，队列满时新的查询直接失败，对应的部分返回空
+     */
+    private int queueCapacity = 1000;
+    /**
+     * 等待各部分的超时时间，从请求开始计算，超时的部分不再等待
+     */
+    private Duration timeout = Duration.ofMillis(500);
+    /**
+     * 返回的热门笔记数量
+     */
+    private int blogSize = 5;
+}
@@ -1,6 +1,7 @@
 package com.hmdp.controller;
 
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
@@ -8,6 +9,7 @@ import com.hmdp.entity.Blog;
 import com.hmdp.entity.User;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IUserService;
+import com.hmdp.service.SeekOrder;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.web.bind.annotation.*;
@@ -41,9 +43,15 @@ public class BlogController {
     }
 
     @GetMapping("/of/me")
-    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                              @RequestParam(value = "cursor", required = false) String cursor) {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
+        if (cursor != null) {
+            // 按游标分页，第一页传空字符串
+            QueryWrapper<Blog> wrapper = new QueryWrapper<Blog>().eq("user_id", user.getId());
+            return Result.ok(blogService.seekPage(wrapper, SeekOrder.byId(Blog::getId, false), cursor, SystemConstants.MAX_PAGE_SIZE));
+        }
         // 根据用户查询
         Page<Blog> page = blogService.query()
                 .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
@@ -53,10 +61,20 @@ public class BlogController {
     }
 
     @GetMapping("/hot")
-    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                               @RequestParam(value = "cursor", required = false) String cursor) {
+        if (cursor != null) {
+            return blogService.queryHotBlogCursor(cursor);
+        }
         return blogService.queryHotBlog(current);
     }
 
+    @GetMapping("/trending/{window}")
+    public Result queryTrendingBlog(@PathVariable("window") String window,
+                                    @RequestParam(value = "current", defaultValue = "1") Integer current) {
+        return blogService.queryTrendingBlog(window, current);
+    }
+
     @GetMapping("/{id}")
     public Result queryBlogById(@PathVariable("id") Long id) {
         return blogService.queryBlogById(id);
@@ -70,7 +88,13 @@ public class BlogController {
     @GetMapping("/of/user")
     public Result queryBlogByUserId(
             @RequestParam(value = "current", defaultValue = "1") Integer current,
-            @RequestParam("id") Long id) {
+            @RequestParam("id") Long id,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        if (cursor != null) {
+            // 按游标分页，第一页传空字符串
+            QueryWrapper<Blog> wrapper = new QueryWrapper<Blog>().eq("user_id", id);
+            return Result.ok(blogService.seekPage(wrapper, SeekOrder.byId(Blog::getId, false), cursor, SystemConstants.MAX_PAGE_SIZE));
+        }
         // 根据用户查询
         Page<Blog> page = blogService.query()
                 .eq("user_id", id).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
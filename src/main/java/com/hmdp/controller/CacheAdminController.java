@@ -0,0 +1,28 @@
+package com.hmdp.controller;
+
+import com.hmdp.cache.HotKeyDetector;
+import com.hmdp.dto.Result;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * 缓存运维接口
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 当前节点上的热点key
+     */
+    @GetMapping("/hot-keys")
+    public Result queryHotKeys() {
+        return Result.ok(hotKeyDetector.listHotKeys());
+    }
+}
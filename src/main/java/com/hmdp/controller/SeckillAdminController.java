@@ -0,0 +1,42 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.stats.SeckillStatsAggregator;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.Resource;
+
+/**
+ * 秒杀运维接口，统计数据来自redis中的实时计数，不查询数据库
+ */
+@RestController
+@RequestMapping("/admin/seckill")
+public class SeckillAdminController {
+
+    @Resource
+    private SeckillStatsAggregator seckillStatsAggregator;
+
+    /**
+     * 秒杀券最近各个窗口的请求数、库存不足、重复下单、抢到的次数
+     * @param voucherId 优惠券id
+     * @return SeckillStatsDTO
+     */
+    @GetMapping("/stats/{id}")
+    public Result queryStats(@PathVariable("id") Long voucherId) {
+        return Result.ok(seckillStatsAggregator.snapshot(voucherId));
+    }
+
+    /**
+     * 订阅秒杀券的实时统计（SSE），每秒推送一次stats事件
+     * @param voucherId 优惠券id
+     */
+    @GetMapping(value = "/stats/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStats(@PathVariable("id") Long voucherId) {
+        return seckillStatsAggregator.subscribe(voucherId);
+    }
+}
@@ -1,12 +1,10 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilter;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
@@ -36,6 +34,16 @@ public class ShopController {
         return shopService.queryById(id);
     }
 
+    /**
+     * 店铺详情页的聚合数据：店铺、优惠券、热门笔记，各部分并行查询，超时的部分返回空
+     * @param id 商铺id
+     * @return ShopDetailDTO
+     */
+    @GetMapping("/{id}/detail")
+    public Result queryShopDetail(@PathVariable("id") Long id) {
+        return shopService.queryShopDetail(id);
+    }
+
     /**
      * 新增商铺信息
      * @param shop 商铺数据
@@ -43,10 +51,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，返回店铺id
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -64,6 +70,7 @@ public class ShopController {
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
      * @param current 页码
+     * @param cursor 游标，传了游标时按游标分页（第一页传空字符串），返回CursorResult，下一页传入上一页返回的cursor
      * @return 商铺列表
      */
     @GetMapping("/of/type")
@@ -71,27 +78,68 @@ public class ShopController {
             @RequestParam("typeId") Integer typeId,
             @RequestParam(value = "current", defaultValue = "1") Integer current,
             @RequestParam(value = "x", required = false) Double x,
-            @RequestParam(value = "y", required = false) Double y
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
+        if (cursor != null) {
+            return shopService.queryShopByTypeCursor(typeId, x, y, cursor);
+        }
         return shopService.queryShopByType(typeId, current, x, y);
     }
 
+    /**
+     * 查询附近所有类型的商铺，按距离排序分页，用于首页的"附近"
+     * @param x 经度
+     * @param y 纬度
+     * @param current 页码
+     * @return 商铺列表，带距离
+     */
+    @GetMapping("/of/nearby")
+    public Result queryNearbyShops(
+            @RequestParam("x") Double x,
+            @RequestParam("y") Double y,
+            @RequestParam(value = "current", defaultValue = "1") Integer current
+    ) {
+        return shopService.queryNearbyShops(x, y, current);
+    }
+
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
      * @param current 页码
+     * @param cursor 游标，传了游标时按游标分页（第一页传空字符串），不查询总数
      * @return 商铺列表
      */
     @GetMapping("/of/name")
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByName(name, current, cursor);
+    }
+
+    /**
+     * 多条件筛选店铺：类型、距离、均价、评分、正在营业，可以按评分、距离、均价、销量排序
+     * @param filter 筛选条件，见ShopFilter
+     * @return 店铺列表，传了坐标时带距离
+     */
+    @GetMapping("/search")
+    public Result searchShops(ShopFilter filter) {
+        return shopService.searchShops(filter);
+    }
+
+    /**
+     * 搜索框的输入提示：以输入内容开头的店铺名称和商圈，按销量和评分排序
+     * @param prefix 已经输入的内容
+     * @param size 返回的数量
+     * @return 提示列表
+     */
+    @GetMapping("/suggest")
+    public Result suggest(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "size", defaultValue = "10") Integer size
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.suggest(prefix, size);
     }
 }
@@ -7,6 +7,7 @@ import com.hmdp.service.IVoucherService;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import java.util.List;
 
 /**
  * <p>
@@ -30,7 +31,7 @@ public class VoucherController {
      */
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
-        voucherService.save(voucher);
+        voucherService.addVoucher(voucher);
         return Result.ok(voucher.getId());
     }
 
@@ -45,6 +46,16 @@ public class VoucherController {
         return Result.ok(voucher.getId());
     }
 
+    /**
+     * 批量新增秒杀券，整批在一个事务中用多行INSERT写入，提交后用一个pipeline写入redis库存
+     * @param vouchers 优惠券信息，包含秒杀信息
+     * @return 按请求顺序的优惠券id
+     */
+    @PostMapping("seckill/batch")
+    public Result addSeckillVouchers(@RequestBody List<Voucher> vouchers) {
+        return voucherService.addSeckillVouchers(vouchers);
+    }
+
     /**
      * 查询店铺的优惠券列表
      * @param shopId 店铺id
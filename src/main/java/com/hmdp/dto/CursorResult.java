@@ -0,0 +1,14 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页的结果，cursor为下一页的游标，没有下一页时为null
+ */
+@Data
+public class CursorResult {
+    private List<?> list;
+    private String cursor;
+}
@@ -0,0 +1,16 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class HotKeyDTO {
+    private String key;
+    /**
+     * 统计窗口内的估算访问次数
+     */
+    private Long count;
+    /**
+     * 热点状态的剩余时间（毫秒）
+     */
+    private Long ttl;
+}
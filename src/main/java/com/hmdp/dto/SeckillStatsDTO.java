@@ -0,0 +1,46 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 秒杀券的实时统计，每个滑动窗口一组计数
+ */
+@Data
+public class SeckillStatsDTO {
+    private Long voucherId;
+    /**
+     * 统计截止的时间（秒级时间戳，包含这一秒）
+     */
+    private Long second;
+    private List<Window> windows;
+
+    @Data
+    public static class Window {
+        /**
+         * 窗口长度（秒）
+         */
+        private Integer seconds;
+        /**
+         * 秒杀请求数
+         */
+        private Long attempts;
+        /**
+         * 库存不足被拒绝的次数
+         */
+        private Long soldOut;
+        /**
+         * 重复下单被拒绝的次数
+         */
+        private Long duplicate;
+        /**
+         * 抢到的次数
+         */
+        private Long success;
+        /**
+         * 每秒的秒杀请求数
+         */
+        private Double attemptsPerSecond;
+    }
+}
@@ -0,0 +1,45 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.Shop;
+
+import java.util.function.Function;
+
+/**
+ * 店铺中频繁变化的计数器字段
+ */
+public enum ShopCounter {
+    SOLD("sold", "sold", Shop::getSold),
+    COMMENTS("comments", "comments", Shop::getComments),
+    SCORE("score", "score", Shop::getScore);
+
+    /**
+     * Shop中的属性名，也是缓存hash中的字段名
+     */
+    private final String field;
+    /**
+     * tb_shop中的列名
+     */
+    private final String column;
+    private final Function<Shop, Integer> getter;
+
+    ShopCounter(String field, String column, Function<Shop, Integer> getter) {
+        this.field = field;
+        this.column = column;
+        this.getter = getter;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * 读取店铺中的计数器值
+     */
+    public Integer valueOf(Shop shop) {
+        return getter.apply(shop);
+    }
+}
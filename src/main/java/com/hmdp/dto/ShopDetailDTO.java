@@ -0,0 +1,23 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 店铺详情页的聚合数据：店铺、优惠券、热门笔记，各部分并行查询，超时或失败的部分为null并记录在missing中
+ */
+@Data
+public class ShopDetailDTO {
+    private Shop shop;
+    private List<Voucher> vouchers;
+    private List<Blog> blogs;
+    /**
+     * 没有查询到的部分：shop、vouchers、blogs
+     */
+    private List<String> missing = new ArrayList<>();
+}
@@ -0,0 +1,36 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 店铺多条件筛选的查询参数，为null的条件不筛选
+ */
+@Data
+public class ShopFilter {
+    private Long typeId;
+    /**
+     * 用户的经纬度，按距离筛选或排序时必须传
+     */
+    private Double x;
+    private Double y;
+    /**
+     * 距离上限（米），传了坐标时默认5000
+     */
+    private Double radius;
+    private Long minPrice;
+    private Long maxPrice;
+    /**
+     * 最低评分，10倍的整数，例如4.5分传45
+     */
+    private Integer minScore;
+    /**
+     * 只返回当前正在营业的店铺
+     */
+    private Boolean openNow;
+    /**
+     * 排序方式：score评分降序、distance距离升序、price均价升序、price_desc均价降序、sold销量降序，
+     * 默认传了坐标时按距离，否则按评分
+     */
+    private String sortBy;
+    private Integer current = 1;
+}
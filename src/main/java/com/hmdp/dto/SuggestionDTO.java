@@ -0,0 +1,26 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 搜索框的输入提示
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionDTO {
+    public static final String TYPE_NAME = "name";
+    public static final String TYPE_AREA = "area";
+
+    private String text;
+    /**
+     * 提示的来源：店铺名称name或商圈area
+     */
+    private String type;
+    /**
+     * 权重，由销量和评分计算，同一个名称或商圈的所有店铺累加
+     */
+    private Long weight;
+}
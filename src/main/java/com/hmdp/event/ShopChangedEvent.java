@@ -0,0 +1,30 @@
+package com.hmdp.event;
+
+import com.hmdp.entity.Shop;
+
+/**
+ * 店铺新增或修改的事件，在事务提交后处理
+ */
+public class ShopChangedEvent {
+    /**
+     * 变化前的店铺，新增时为null
+     */
+    private final Shop before;
+    /**
+     * 变化后的店铺，删除时为null
+     */
+    private final Shop after;
+
+    public ShopChangedEvent(Shop before, Shop after) {
+        this.before = before;
+        this.after = after;
+    }
+
+    public Shop getBefore() {
+        return before;
+    }
+
+    public Shop getAfter() {
+        return after;
+    }
+}
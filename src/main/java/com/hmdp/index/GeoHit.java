@@ -0,0 +1,45 @@
+package com.hmdp.index;
+
+/**
+ * 附近查询的结果：店铺id和距离（米），需要时带上店铺的经纬度
+ */
+public class GeoHit {
+    private final long id;
+    private final double distance;
+    private final double x;
+    private final double y;
+
+    public GeoHit(long id, double distance) {
+        this(id, distance, Double.NaN, Double.NaN);
+    }
+
+    public GeoHit(long id, double distance, double x, double y) {
+        this.id = id;
+        this.distance = distance;
+        this.x = x;
+        this.y = y;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * 店铺经度，查询时没有返回坐标则为NaN
+     */
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public boolean hasLocation() {
+        return !Double.isNaN(x) && !Double.isNaN(y);
+    }
+}
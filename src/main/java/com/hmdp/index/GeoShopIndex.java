@@ -0,0 +1,434 @@
+package com.hmdp.index;
+
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 店铺地理位置的内存索引，每个店铺类型一个网格，坐标保存在double数组中，
+ * 附近查询从用户所在的格子开始一圈一圈向外扫描，找到足够的店铺并且更外圈不可能更近时停止
+ */
+@Component
+public class GeoShopIndex implements ShopIndex {
+
+    /**
+     * 网格边长（度），约1公里
+     */
+    private static final double CELL_DEGREES = 0.01;
+    /**
+     * 地球半径，和redis GEO使用的一致，保证距离相同
+     */
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS;
+    /**
+     * 经度方向的格子数，180度和-180度经线是同一条，列号首尾相接
+     */
+    private static final int COLUMNS = (int) Math.round(360 / CELL_DEGREES);
+    /**
+     * 按圈估算距离的余量（米），覆盖浮点计算的误差，避免正好在格子边线上的店铺被提前排除
+     */
+    private static final double SLACK_METERS = 1;
+
+    private final Map<Long, TypeGrid> grids = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    @Override
+    public void update(Shop before, Shop after) {
+        // 1.从旧类型的网格中删除（类型变化或者店铺被删除）
+        if (before != null && before.getTypeId() != null
+                && (after == null || !before.getTypeId().equals(after.getTypeId()))) {
+            TypeGrid grid = grids.get(before.getTypeId());
+            if (grid != null) {
+                grid.remove(before.getId());
+            }
+        }
+        if (after == null || after.getTypeId() == null) {
+            return;
+        }
+        // 2.没有坐标的店铺不参与附近查询
+        if (after.getX() == null || after.getY() == null) {
+            TypeGrid grid = grids.get(after.getTypeId());
+            if (grid != null) {
+                grid.remove(after.getId());
+            }
+            return;
+        }
+        // 3.写入新类型的网格，已存在则更新坐标
+        grids.computeIfAbsent(after.getTypeId(), typeId -> new TypeGrid())
+                .put(after.getId(), after.getX(), after.getY());
+    }
+
+    @Override
+    public void ready() {
+        ready = true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 查询附近的店铺，按距离升序（距离相同按id升序），结果带店铺的坐标
+     * @param radius 半径（米）
+     * @param limit  最多返回的数量
+     */
+    public List<GeoHit> nearby(long typeId, double x, double y, double radius, int limit) {
+        return nearby(typeId, x, y, radius, limit, -1, Long.MIN_VALUE);
+    }
+
+    /**
+     * 从上一页的最后一个结果之后继续查询附近的店铺，只返回(距离, id)大于(afterDistance, afterId)的店铺，
+     * 比上一页更近的格子不再扫描，每一页的开销与页码无关
+     */
+    public List<GeoHit> nearby(long typeId, double x, double y, double radius, int limit, double afterDistance, long afterId) {
+        TypeGrid grid = grids.get(typeId);
+        if (grid == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return grid.nearby(new Query(x, y, radius, limit, afterDistance, afterId));
+    }
+
+    /**
+     * 两点之间的球面距离（米），与redis GEODIST的算法相同
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2.0 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private static int cellIndex(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    /**
+     * 经度所在的列，列号在[-COLUMNS/2, COLUMNS/2)之间
+     */
+    private static int columnIndex(double x) {
+        return wrapColumn(cellIndex(x));
+    }
+
+    private static int wrapColumn(int cx) {
+        return Math.floorMod(cx + COLUMNS / 2, COLUMNS) - COLUMNS / 2;
+    }
+
+    /**
+     * 经度差（度），跨过180度经线时取较短的一边
+     */
+    private static double longitudeDelta(double x1, double x2) {
+        double delta = x2 - x1;
+        if (delta > 180) {
+            return delta - 360;
+        }
+        return delta < -180 ? delta + 360 : delta;
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 一个店铺类型的网格，读写锁保护
+     */
+    private static class TypeGrid {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        // 按槽位保存的店铺数据
+        private long[] ids = new long[64];
+        private double[] xs = new double[64];
+        private double[] ys = new double[64];
+        private long[] cells = new long[64];
+        private int slotCount;
+        // 删除后空出的槽位
+        private final IntList freeSlots = new IntList();
+        // 店铺id -> 槽位
+        private final LongIntHashMap slots = new LongIntHashMap();
+        // 格子 -> 格子中的槽位
+        private final Map<Long, IntList> cellSlots = new HashMap<>();
+
+        private void put(long id, double x, double y) {
+            lock.writeLock().lock();
+            try {
+                int slot = slots.get(id, -1);
+                if (slot >= 0) {
+                    removeFromCell(slot);
+                } else {
+                    slot = allocate();
+                    slots.put(id, slot);
+                }
+                long cell = cellKey(columnIndex(x), cellIndex(y));
+                ids[slot] = id;
+                xs[slot] = x;
+                ys[slot] = y;
+                cells[slot] = cell;
+                cellSlots.computeIfAbsent(cell, k -> new IntList()).add(slot);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(long id) {
+            lock.writeLock().lock();
+            try {
+                int slot = slots.remove(id, -1);
+                if (slot < 0) {
+                    return;
+                }
+                removeFromCell(slot);
+                freeSlots.add(slot);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private List<GeoHit> nearby(Query query) {
+            lock.readLock().lock();
+            try {
+                int cx = columnIndex(query.x);
+                int cy = cellIndex(query.y);
+                // 用格子较宽的一边估算每圈的最大距离
+                double cellMaxMeters = CELL_DEGREES * METERS_PER_DEGREE * Math.sqrt(2);
+                // 格子在经度方向更窄，按较窄的一边估算最多扫描的圈数，超过半圈经度之后没有新的格子
+                double cellMeters = CELL_DEGREES * query.metersPerDegreeX;
+                int maxRing = (int) Math.min(COLUMNS / 2, Math.ceil(query.radius / cellMeters) + 2);
+                for (int ring = 0; ring <= maxRing; ring++) {
+                    double minDistance = minDistance(ring, query) - SLACK_METERS;
+                    if (minDistance > query.radius || (query.topK.isFull() && query.topK.maxDistance() <= minDistance)) {
+                        break;
+                    }
+                    // 整圈都比上一页的最后一个结果近，跳过
+                    if ((ring + 1) * cellMaxMeters + SLACK_METERS < query.afterDistance) {
+                        continue;
+                    }
+                    scanRing(cx, cy, ring, query);
+                }
+                return query.topK.toSortedList();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * 第ring圈中的点到用户的最小距离：纬度至少相差(ring - 1)个格子，或者经度至少相差(ring - 1)个格子，
+         * 经度方向取到那条经线所在大圆的距离，比沿纬线的距离短
+         */
+        private static double minDistance(int ring, Query query) {
+            if (ring <= 1) {
+                return 0;
+            }
+            double degrees = (ring - 1) * CELL_DEGREES;
+            double yMeters = degrees * METERS_PER_DEGREE;
+            double xMeters = EARTH_RADIUS * Math.asin(Math.cos(Math.toRadians(query.y))
+                    * Math.sin(Math.toRadians(Math.min(degrees, 90))));
+            return Math.min(xMeters, yMeters);
+        }
+
+        private void scanRing(int cx, int cy, int ring, Query query) {
+            if (ring == 0) {
+                scanCell(cx, cy, query);
+                return;
+            }
+            // 经度方向只扫描(-COLUMNS/2, COLUMNS/2]，绕过180度经线的列不重复扫描
+            int minDx = Math.max(-ring, -COLUMNS / 2 + 1);
+            int maxDx = Math.min(ring, COLUMNS / 2);
+            // 上下两行
+            for (int dx = minDx; dx <= maxDx; dx++) {
+                scanCell(cx + dx, cy - ring, query);
+                scanCell(cx + dx, cy + ring, query);
+            }
+            // 左右两列（不含四个角）
+            for (int dy = -ring + 1; dy < ring; dy++) {
+                if (-ring >= minDx) {
+                    scanCell(cx - ring, cy + dy, query);
+                }
+                if (ring <= maxDx) {
+                    scanCell(cx + ring, cy + dy, query);
+                }
+            }
+        }
+
+        private void scanCell(int cx, int cy, Query query) {
+            IntList list = cellSlots.get(cellKey(wrapColumn(cx), cy));
+            if (list == null) {
+                return;
+            }
+            TopK topK = query.topK;
+            for (int i = 0; i < list.size(); i++) {
+                int slot = list.get(i);
+                // 先用平面近似距离过滤，明显更远的点不用计算球面距离
+                double bound = topK.isFull() ? Math.min(query.radius, topK.maxDistance()) : query.radius;
+                double dx = longitudeDelta(query.x, xs[slot]) * query.metersPerDegreeX;
+                double dy = (ys[slot] - query.y) * METERS_PER_DEGREE;
+                double margin = bound * 1.01 + 1;
+                if (dx * dx + dy * dy > margin * margin) {
+                    continue;
+                }
+                double d = distance(query.x, query.y, xs[slot], ys[slot]);
+                if (d <= query.radius && TopK.less(query.afterId, query.afterDistance, ids[slot], d)) {
+                    topK.offer(ids[slot], d, xs[slot], ys[slot]);
+                }
+            }
+        }
+
+        private int allocate() {
+            if (!freeSlots.isEmpty()) {
+                return freeSlots.removeLast();
+            }
+            if (slotCount == ids.length) {
+                int capacity = slotCount * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                cells = Arrays.copyOf(cells, capacity);
+            }
+            return slotCount++;
+        }
+
+        private void removeFromCell(int slot) {
+            IntList list = cellSlots.get(cells[slot]);
+            if (list != null) {
+                list.removeValue(slot);
+                if (list.isEmpty()) {
+                    cellSlots.remove(cells[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一次附近查询的参数和结果
+     */
+    private static class Query {
+        private final double x;
+        private final double y;
+        private final double radius;
+        // 上一页最后一个结果的距离和id
+        private final double afterDistance;
+        private final long afterId;
+        // 用户所在纬度上每度经度的长度（米）
+        private final double metersPerDegreeX;
+        private final TopK topK;
+
+        private Query(double x, double y, double radius, int limit, double afterDistance, long afterId) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.afterDistance = afterDistance;
+            this.afterId = afterId;
+            this.metersPerDegreeX = METERS_PER_DEGREE * Math.cos(Math.toRadians(y));
+            this.topK = new TopK(limit);
+        }
+    }
+
+    /**
+     * 保留距离最近的k个结果的大顶堆
+     */
+    private static class TopK {
+        private final long[] ids;
+        private final double[] distances;
+        private final double[] xs;
+        private final double[] ys;
+        private int size;
+
+        private TopK(int k) {
+            this.ids = new long[k];
+            this.distances = new double[k];
+            this.xs = new double[k];
+            this.ys = new double[k];
+        }
+
+        private boolean isFull() {
+            return size == ids.length;
+        }
+
+        private double maxDistance() {
+            return distances[0];
+        }
+
+        private void offer(long id, double distance, double x, double y) {
+            if (size < ids.length) {
+                ids[size] = id;
+                distances[size] = distance;
+                xs[size] = x;
+                ys[size] = y;
+                siftUp(size++);
+            } else if (less(id, distance, ids[0], distances[0])) {
+                ids[0] = id;
+                distances[0] = distance;
+                xs[0] = x;
+                ys[0] = y;
+                siftDown(0);
+            }
+        }
+
+        private List<GeoHit> toSortedList() {
+            List<GeoHit> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(new GeoHit(ids[i], distances[i], xs[i], ys[i]));
+            }
+            list.sort((a, b) -> less(a.getId(), a.getDistance(), b.getId(), b.getDistance()) ? -1 : 1);
+            return list;
+        }
+
+        private static boolean less(long id1, double d1, long id2, double d2) {
+            return d1 < d2 || (d1 == d2 && id1 < id2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(ids[parent], distances[parent], ids[i], distances[i])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int largest = left;
+                int right = left + 1;
+                if (right < size && less(ids[left], distances[left], ids[right], distances[right])) {
+                    largest = right;
+                }
+                if (!less(ids[i], distances[i], ids[largest], distances[largest])) {
+                    break;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double d = distances[i];
+            distances[i] = distances[j];
+            distances[j] = d;
+            double x = xs[i];
+            xs[i] = xs[j];
+            xs[j] = x;
+            double y = ys[i];
+            ys[i] = ys[j];
+            ys[j] = y;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.hmdp.index;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 店铺地理位置同步到redis GEO的配置，对应application.yaml中的hmdp.geo-sync
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.geo-sync")
+public class GeoSyncProperties {
+    /**
+     * 是否定期按tb_shop.update_time增量同步，店铺变化事件的同步不受影响
+     */
+    private boolean enabled = true;
+    /**
+     * 增量同步的间隔
+     */
+    private Duration interval = Duration.ofMinutes(1);
+    /**
+     * 每次往前多查的时间，覆盖修改时间早于上次同步位置、但当时还没提交的事务
+     */
+    private Duration overlap = Duration.ofSeconds(30);
+    /**
+     * 每批从数据库读取、用一个pipeline写入的店铺数量
+     */
+    private int batchSize = 1000;
+}
@@ -0,0 +1,60 @@
+package com.hmdp.index;
+
+import java.util.Arrays;
+
+/**
+ * 可增长的int数组，不装箱
+ */
+public class IntList {
+
+    private int[] data;
+    private int size;
+
+    public IntList() {
+        this(4);
+    }
+
+    public IntList(int capacity) {
+        this.data = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    /**
+     * 删除第一个等于value的元素，用最后一个元素填补，不保持顺序
+     */
+    public boolean removeValue(int value) {
+        for (int i = 0; i < size; i++) {
+            if (data[i] == value) {
+                data[i] = data[--size];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int removeLast() {
+        return data[--size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,22 @@
+package com.hmdp.index;
+
+/**
+ * 店铺名称查询的结果：店铺id和排序值（越小越靠前）
+ */
+public class NameHit {
+    private final long id;
+    private final long rank;
+
+    public NameHit(long id, long rank) {
+        this.id = id;
+        this.rank = rank;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getRank() {
+        return rank;
+    }
+}
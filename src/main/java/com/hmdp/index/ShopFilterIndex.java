@@ -0,0 +1,583 @@
+package com.hmdp.index;
+
+import com.hmdp.dto.ShopFilter;
+import com.hmdp.entity.Shop;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 店铺的列式内存存储，用于多条件筛选和排序：均价、评分、销量、坐标保存在按槽位的基本类型数组中，
+ * 类型、“某个时间段是否营业”、纬度带、评分段、均价段预先计算成BitSet。
+ * <p>
+ * 查询时先用BitSet求交集得到候选槽位，再逐列精确检查范围条件和距离，用大顶堆保留前k个；
+ * 候选很多时按槽位区间分块并行扫描，每块保留自己的前k个再合并
+ */
+@Slf4j
+@Component
+public class ShopFilterIndex implements ShopIndex {
+
+    /**
+     * 排序方式
+     */
+    public enum Sort {
+        SCORE, DISTANCE, PRICE, PRICE_DESC, SOLD;
+
+        public static Sort parse(String value) {
+            for (Sort sort : values()) {
+                if (sort.name().equalsIgnoreCase(value)) {
+                    return sort;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 营业时间按15分钟一段预先计算，营业时间的起止都是15分钟整数倍的店铺，在同一段内营业状态不变
+     */
+    private static final int MINUTES_PER_BUCKET = 15;
+    private static final int BUCKETS = 24 * 60 / MINUTES_PER_BUCKET;
+    /**
+     * 纬度带的宽度（度），约1.1公里
+     */
+    private static final double BAND_DEGREES = 0.01;
+    /**
+     * 评分每5分（0.5星）一段，均价每20元一段，超过500元的都在最后一段
+     */
+    private static final int SCORE_STEP = 5;
+    private static final int SCORE_BUCKETS = 11;
+    private static final int PRICE_STEP = 20;
+    private static final int PRICE_BUCKETS = 26;
+    private static final Pattern OPEN_HOURS_PATTERN = Pattern.compile("(\\d{1,2}):(\\d{2})\\s*[-~至]\\s*(\\d{1,2}):(\\d{2})");
+    /**
+     * 候选超过这个数量时并行扫描
+     */
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    private static final int CHUNK_SLOTS = 1 << 16;
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * EARTH_RADIUS;
+
+    /**
+     * 并行扫描的线程数，为1时只在当前线程扫描
+     */
+    private final int searchThreads;
+    private final ExecutorService searchExecutor;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 按槽位保存的店铺数据，没有的值用NaN或-1表示
+    private long[] ids = new long[64];
+    private double[] xs = new double[64];
+    private double[] ys = new double[64];
+    private long[] prices = new long[64];
+    private int[] scores = new int[64];
+    private int[] solds = new int[64];
+    // 营业时间的起止不是15分钟整数倍的店铺，保存解析后的营业区间（分钟，[start, end)），查询时逐个判断
+    private int[][] openIntervals = new int[64][];
+    private int slotCount;
+    private final IntList freeSlots = new IntList();
+    private final LongIntHashMap slots = new LongIntHashMap();
+    // 有效的槽位
+    private final BitSet alive = new BitSet();
+    // 店铺类型 -> 槽位
+    private final Map<Long, BitSet> typeBits = new ConcurrentHashMap<>();
+    // 第i个15分钟整段都在营业的槽位
+    private final BitSet[] openBuckets = new BitSet[BUCKETS];
+    // 需要逐个判断营业时间的槽位
+    private final BitSet irregularOpen = new BitSet();
+    // 纬度带 -> 槽位
+    private final Map<Integer, BitSet> latBands = new ConcurrentHashMap<>();
+    // 评分段、均价段 -> 槽位
+    private final BitSet[] scoreBuckets = new BitSet[SCORE_BUCKETS];
+    private final BitSet[] priceBuckets = new BitSet[PRICE_BUCKETS];
+
+    private volatile boolean ready;
+
+    public ShopFilterIndex() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    ShopFilterIndex(int searchThreads) {
+        this.searchThreads = searchThreads;
+        this.searchExecutor = Executors.newFixedThreadPool(searchThreads, r -> {
+            Thread thread = new Thread(r, "shop-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < BUCKETS; i++) {
+            openBuckets[i] = new BitSet();
+        }
+        for (int i = 0; i < SCORE_BUCKETS; i++) {
+            scoreBuckets[i] = new BitSet();
+        }
+        for (int i = 0; i < PRICE_BUCKETS; i++) {
+            priceBuckets[i] = new BitSet();
+        }
+    }
+
+    @Override
+    public void update(Shop before, Shop after) {
+        lock.writeLock().lock();
+        try {
+            long id = after != null ? after.getId() : before.getId();
+            // 1.先删除旧的槽位
+            int slot = slots.remove(id, -1);
+            if (slot >= 0) {
+                clear(slot);
+                freeSlots.add(slot);
+            }
+            // 2.写入新的数据
+            if (after != null) {
+                put(allocate(), after);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void ready() {
+        ready = true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 按条件筛选店铺，返回排序后的前limit个店铺的id和距离（没有传坐标时距离为-1）
+     * @param minuteOfDay 当前是一天中的第几分钟，用于筛选正在营业的店铺
+     */
+    public List<GeoHit> search(ShopFilter filter, Sort sort, int minuteOfDay, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        Query query = new Query(filter, sort, minuteOfDay);
+        lock.readLock().lock();
+        try {
+            // 1.BitSet求交集：类型、营业时间、纬度带、评分段、均价段，边界所在的段由后面的逐列检查精确过滤
+            BitSet candidates;
+            if (filter.getTypeId() != null) {
+                BitSet type = typeBits.get(filter.getTypeId());
+                if (type == null) {
+                    return Collections.emptyList();
+                }
+                candidates = (BitSet) type.clone();
+            } else {
+                candidates = (BitSet) alive.clone();
+            }
+            if (query.openNow) {
+                BitSet open = (BitSet) openBuckets[minuteOfDay / MINUTES_PER_BUCKET].clone();
+                open.or(irregularOpen);
+                candidates.and(open);
+            }
+            if (query.hasLocation) {
+                BitSet bands = new BitSet();
+                int minBand = band(query.y - query.maxDy);
+                int maxBand = band(query.y + query.maxDy);
+                latBands.forEach((band, bits) -> {
+                    if (band >= minBand && band <= maxBand) {
+                        bands.or(bits);
+                    }
+                });
+                candidates.and(bands);
+            }
+            if (query.minScore != null) {
+                candidates.and(union(scoreBuckets, scoreBucket(query.minScore), SCORE_BUCKETS - 1));
+            }
+            if (query.minPrice != null || query.maxPrice != null) {
+                int from = query.minPrice == null ? 0 : priceBucket(query.minPrice);
+                int to = query.maxPrice == null ? PRICE_BUCKETS - 1 : priceBucket(query.maxPrice);
+                candidates.and(union(priceBuckets, from, to));
+            }
+            // 2.逐列检查其余条件，候选多时分块并行
+            TopK topK;
+            int cardinality = candidates.cardinality();
+            if (searchThreads > 1 && cardinality > PARALLEL_THRESHOLD) {
+                topK = scanParallel(candidates, query, limit);
+            } else {
+                topK = new TopK(limit);
+                scan(candidates, 0, slotCount, query, topK);
+            }
+            return topK.toSortedList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private TopK scanParallel(BitSet candidates, Query query, int limit) {
+        List<Future<TopK>> futures = new ArrayList<>();
+        for (int from = 0; from < slotCount; from += CHUNK_SLOTS) {
+            int start = from;
+            int end = Math.min(from + CHUNK_SLOTS, slotCount);
+            futures.add(searchExecutor.submit(() -> {
+                TopK local = new TopK(limit);
+                scan(candidates, start, end, query, local);
+                return local;
+            }));
+        }
+        // 合并每一块的前k个
+        TopK topK = new TopK(limit);
+        try {
+            for (Future<TopK> future : futures) {
+                future.get().drainTo(topK);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("店铺筛选被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("店铺筛选失败", e.getCause());
+        }
+        return topK;
+    }
+
+    /**
+     * 扫描[from, to)中的候选槽位
+     */
+    private void scan(BitSet candidates, int from, int to, Query query, TopK topK) {
+        for (int slot = candidates.nextSetBit(from); slot >= 0 && slot < to; slot = candidates.nextSetBit(slot + 1)) {
+            // 1.范围条件，没有均价的店铺不满足均价条件
+            if (query.minPrice != null && (prices[slot] < 0 || prices[slot] < query.minPrice)) {
+                continue;
+            }
+            if (query.maxPrice != null && (prices[slot] < 0 || prices[slot] > query.maxPrice)) {
+                continue;
+            }
+            if (query.minScore != null && scores[slot] < query.minScore) {
+                continue;
+            }
+            // 2.营业时间不规则的店铺逐个判断
+            if (query.openNow && irregularOpen.get(slot) && !isOpen(openIntervals[slot], query.minuteOfDay)) {
+                continue;
+            }
+            // 3.距离，先用经纬度范围粗筛
+            double distance = -1;
+            if (query.hasLocation) {
+                if (Double.isNaN(xs[slot]) || Math.abs(ys[slot] - query.y) > query.maxDy || Math.abs(xs[slot] - query.x) > query.maxDx) {
+                    continue;
+                }
+                distance = GeoShopIndex.distance(query.x, query.y, xs[slot], ys[slot]);
+                if (distance > query.radius) {
+                    continue;
+                }
+            }
+            // 4.排序值，越小越靠前
+            double key;
+            switch (query.sort) {
+                case DISTANCE:
+                    key = distance;
+                    break;
+                case PRICE:
+                    key = prices[slot] < 0 ? Double.MAX_VALUE : prices[slot];
+                    break;
+                case PRICE_DESC:
+                    key = -prices[slot];
+                    break;
+                case SOLD:
+                    key = -solds[slot];
+                    break;
+                default:
+                    key = -scores[slot];
+            }
+            topK.offer(ids[slot], key, distance);
+        }
+    }
+
+    private void put(int slot, Shop shop) {
+        ids[slot] = shop.getId();
+        xs[slot] = shop.getX() == null || shop.getY() == null ? Double.NaN : shop.getX();
+        ys[slot] = shop.getX() == null || shop.getY() == null ? Double.NaN : shop.getY();
+        prices[slot] = shop.getAvgPrice() == null ? -1 : shop.getAvgPrice();
+        scores[slot] = shop.getScore() == null ? 0 : shop.getScore();
+        solds[slot] = shop.getSold() == null ? 0 : shop.getSold();
+        slots.put(shop.getId(), slot);
+        alive.set(slot);
+        if (shop.getTypeId() != null) {
+            typeBits.computeIfAbsent(shop.getTypeId(), k -> new BitSet()).set(slot);
+        }
+        if (!Double.isNaN(ys[slot])) {
+            latBands.computeIfAbsent(band(ys[slot]), k -> new BitSet()).set(slot);
+        }
+        scoreBuckets[scoreBucket(scores[slot])].set(slot);
+        if (prices[slot] >= 0) {
+            priceBuckets[priceBucket(prices[slot])].set(slot);
+        }
+        // 营业时间：规则的写入每一段的BitSet，不规则的保存区间
+        int[] intervals = parseOpenHours(shop.getOpenHours());
+        if (intervals == null) {
+            return;
+        }
+        boolean regular = true;
+        for (int interval : intervals) {
+            if ((interval >>> 16) % MINUTES_PER_BUCKET != 0 || (interval & 0xFFFF) % MINUTES_PER_BUCKET != 0) {
+                regular = false;
+                break;
+            }
+        }
+        if (!regular) {
+            openIntervals[slot] = intervals;
+            irregularOpen.set(slot);
+            return;
+        }
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (isOpen(intervals, bucket * MINUTES_PER_BUCKET)) {
+                openBuckets[bucket].set(slot);
+            }
+        }
+    }
+
+    private void clear(int slot) {
+        alive.clear(slot);
+        typeBits.values().forEach(bits -> bits.clear(slot));
+        if (!Double.isNaN(ys[slot])) {
+            BitSet band = latBands.get(band(ys[slot]));
+            if (band != null) {
+                band.clear(slot);
+            }
+        }
+        scoreBuckets[scoreBucket(scores[slot])].clear(slot);
+        if (prices[slot] >= 0) {
+            priceBuckets[priceBucket(prices[slot])].clear(slot);
+        }
+        for (BitSet bucket : openBuckets) {
+            bucket.clear(slot);
+        }
+        irregularOpen.clear(slot);
+        openIntervals[slot] = null;
+    }
+
+    private int allocate() {
+        if (!freeSlots.isEmpty()) {
+            return freeSlots.removeLast();
+        }
+        if (slotCount == ids.length) {
+            int capacity = slotCount * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+            solds = Arrays.copyOf(solds, capacity);
+            openIntervals = Arrays.copyOf(openIntervals, capacity);
+        }
+        return slotCount++;
+    }
+
+    /**
+     * 解析营业时间，例如 10:00-22:00、11:30-03:00（跨过零点拆成两段）、10:00-14:00,17:00-22:00，
+     * 返回的每个int高16位是开始分钟、低16位是结束分钟（不含）；无法解析时返回null
+     */
+    static int[] parseOpenHours(String openHours) {
+        if (openHours == null) {
+            return null;
+        }
+        IntList intervals = new IntList();
+        Matcher matcher = OPEN_HOURS_PATTERN.matcher(openHours);
+        while (matcher.find()) {
+            int start = Integer.parseInt(matcher.group(1)) * 60 + Integer.parseInt(matcher.group(2));
+            int end = Integer.parseInt(matcher.group(3)) * 60 + Integer.parseInt(matcher.group(4));
+            if (start > 24 * 60 || end > 24 * 60) {
+                continue;
+            }
+            if (start < end) {
+                intervals.add(start << 16 | end);
+            } else {
+                // 跨过零点，00:00-00:00表示全天营业
+                intervals.add(start << 16 | 24 * 60);
+                if (end > 0) {
+                    intervals.add(end);
+                }
+            }
+        }
+        if (intervals.isEmpty()) {
+            log.debug("无法解析的营业时间：{}", openHours);
+            return null;
+        }
+        return intervals.toArray();
+    }
+
+    private static BitSet union(BitSet[] buckets, int from, int to) {
+        BitSet union = new BitSet();
+        for (int i = from; i <= to; i++) {
+            union.or(buckets[i]);
+        }
+        return union;
+    }
+
+    private static int band(double y) {
+        return (int) Math.floor(y / BAND_DEGREES);
+    }
+
+    private static int scoreBucket(long score) {
+        return (int) Math.max(0, Math.min(score / SCORE_STEP, SCORE_BUCKETS - 1));
+    }
+
+    private static int priceBucket(long price) {
+        return (int) Math.max(0, Math.min(price / PRICE_STEP, PRICE_BUCKETS - 1));
+    }
+
+    private static boolean isOpen(int[] intervals, int minute) {
+        if (intervals == null) {
+            return false;
+        }
+        for (int interval : intervals) {
+            if (minute >= interval >>> 16 && minute < (interval & 0xFFFF)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchExecutor.shutdownNow();
+    }
+
+    /**
+     * 一次筛选的参数
+     */
+    private static class Query {
+        private final Sort sort;
+        private final Long minPrice;
+        private final Long maxPrice;
+        private final Integer minScore;
+        private final boolean openNow;
+        private final int minuteOfDay;
+        private final boolean hasLocation;
+        private final double x;
+        private final double y;
+        private final double radius;
+        // 距离上限换算成的经纬度范围
+        private final double maxDx;
+        private final double maxDy;
+
+        private Query(ShopFilter filter, Sort sort, int minuteOfDay) {
+            this.sort = sort;
+            this.minPrice = filter.getMinPrice();
+            this.maxPrice = filter.getMaxPrice();
+            this.minScore = filter.getMinScore();
+            this.openNow = Boolean.TRUE.equals(filter.getOpenNow());
+            this.minuteOfDay = minuteOfDay;
+            this.hasLocation = filter.getX() != null && filter.getY() != null;
+            this.x = hasLocation ? filter.getX() : 0;
+            this.y = hasLocation ? filter.getY() : 0;
+            this.radius = filter.getRadius() == null ? Double.MAX_VALUE : filter.getRadius();
+            // 多留1%的余量，避免平面近似把边界上的店铺筛掉
+            this.maxDy = radius * 1.01 / METERS_PER_DEGREE;
+            double cos = Math.cos(Math.toRadians(y));
+            this.maxDx = cos <= 0 ? Double.MAX_VALUE : radius * 1.01 / (METERS_PER_DEGREE * cos);
+        }
+    }
+
+    /**
+     * 保留排序值最小的k个结果的大顶堆，排序值相同时按id升序
+     */
+    private static class TopK {
+        private final long[] ids;
+        private final double[] keys;
+        private final double[] distances;
+        private int size;
+
+        private TopK(int k) {
+            this.ids = new long[k];
+            this.keys = new double[k];
+            this.distances = new double[k];
+        }
+
+        private void offer(long id, double key, double distance) {
+            if (size < ids.length) {
+                ids[size] = id;
+                keys[size] = key;
+                distances[size] = distance;
+                siftUp(size++);
+            } else if (less(key, id, keys[0], ids[0])) {
+                ids[0] = id;
+                keys[0] = key;
+                distances[0] = distance;
+                siftDown(0);
+            }
+        }
+
+        private void drainTo(TopK other) {
+            for (int i = 0; i < size; i++) {
+                other.offer(ids[i], keys[i], distances[i]);
+            }
+        }
+
+        private List<GeoHit> toSortedList() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> less(keys[a], ids[a], keys[b], ids[b]) ? -1 : 1);
+            List<GeoHit> list = new ArrayList<>(size);
+            for (int i : order) {
+                list.add(new GeoHit(ids[i], distances[i]));
+            }
+            return list;
+        }
+
+        private static boolean less(double key1, long id1, double key2, long id2) {
+            return key1 < key2 || (key1 == key2 && id1 < id2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(keys[parent], ids[parent], keys[i], ids[i])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int largest = left;
+                int right = left + 1;
+                if (right < size && less(keys[left], ids[left], keys[right], ids[right])) {
+                    largest = right;
+                }
+                if (!less(keys[i], ids[i], keys[largest], ids[largest])) {
+                    break;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            double distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+        }
+    }
+}
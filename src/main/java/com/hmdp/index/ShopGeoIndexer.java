@@ -0,0 +1,173 @@
+package com.hmdp.index;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.event.ShopChangedEvent;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 把店铺的地理位置同步到redis GEO（shop:geo:{typeId}），所有写入都走pipeline：
+ * 店铺新增、修改的事务提交后立即同步；另外定期按tb_shop.update_time增量检查一遍，补上漏掉的事件（例如直接修改数据库）
+ */
+@Slf4j
+@Component
+public class ShopGeoIndexer implements ApplicationRunner {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private GeoSyncProperties properties;
+
+    /**
+     * 已经增量同步到的修改时间，为null表示从头开始
+     */
+    private volatile LocalDateTime syncedTime;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // 启动前的数据由缓存预热写入，增量同步从数据库中最新的修改时间开始；查询失败时第一次同步从头开始
+        try {
+            Shop latest = shopService.query().select("MAX(update_time) AS update_time").one();
+            syncedTime = latest == null ? null : latest.getUpdateTime();
+        } catch (Exception e) {
+            log.error("查询店铺最新修改时间失败", e);
+        }
+    }
+
+    /**
+     * 店铺变化的事务提交后同步：类型变化时从旧类型的集合中删除，再写入新类型的集合
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        Shop before = event.getBefore();
+        Shop after = event.getAfter();
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                // 1.店铺被删除或者类型变化，ZREM shop:geo:{旧typeId} id
+                if (before != null && before.getTypeId() != null
+                        && (after == null || !before.getTypeId().equals(after.getTypeId()))) {
+                    remove(connection, before.getTypeId(), before.getId());
+                }
+                // 2.写入新的位置
+                if (after != null) {
+                    write(connection, after);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 定期的增量同步会补上
+            log.error("同步店铺地理位置失败，id：{}", after != null ? after.getId() : before.getId(), e);
+        }
+    }
+
+    /**
+     * 增量同步上次同步位置之后修改过的店铺，按(update_time, id)顺序分批读取
+     */
+    @Scheduled(fixedDelayString = "#{@geoSyncProperties.interval.toMillis()}",
+            initialDelayString = "#{@geoSyncProperties.interval.toMillis()}")
+    public void syncChangedShops() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // 不知道店铺原来的类型，从其他所有类型的集合中删除
+        List<Long> typeIds = shopTypeService.list().stream().map(ShopType::getId).collect(Collectors.toList());
+        LocalDateTime lastTime = syncedTime == null ? null : syncedTime.minus(properties.getOverlap());
+        long lastId = 0;
+        int count = 0;
+        try {
+            while (true) {
+                // 1.读取下一批 WHERE update_time > ? OR (update_time = ? AND id > ?) ORDER BY update_time, id
+                LocalDateTime time = lastTime;
+                long id = lastId;
+                List<Shop> shops = shopService.query()
+                        .and(time != null, w -> w.gt("update_time", time).or(o -> o.eq("update_time", time).gt("id", id)))
+                        .orderByAsc("update_time", "id")
+                        .last("LIMIT " + properties.getBatchSize())
+                        .list();
+                if (shops.isEmpty()) {
+                    break;
+                }
+                // 2.一个pipeline写入一批
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Shop shop : shops) {
+                        for (Long typeId : typeIds) {
+                            if (!typeId.equals(shop.getTypeId())) {
+                                remove(connection, typeId, shop.getId());
+                            }
+                        }
+                        write(connection, shop);
+                    }
+                    return null;
+                });
+                count += shops.size();
+                Shop last = shops.get(shops.size() - 1);
+                lastTime = last.getUpdateTime();
+                lastId = last.getId();
+                if (syncedTime == null || lastTime.isAfter(syncedTime)) {
+                    syncedTime = lastTime;
+                }
+                if (shops.size() < properties.getBatchSize()) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            // 同步位置只推进到成功写入的批次，下次从这里继续
+            log.error("增量同步店铺地理位置失败", e);
+        }
+        if (count > 0) {
+            log.debug("增量同步店铺地理位置，店铺数：{}", count);
+        }
+    }
+
+    /**
+     * GEOADD shop:geo:{typeId} 经度 纬度 id，没有坐标的店铺从集合中删除
+     */
+    private static void write(RedisConnection connection, Shop shop) {
+        if (shop.getTypeId() == null) {
+            return;
+        }
+        if (shop.getX() == null || shop.getY() == null) {
+            remove(connection, shop.getTypeId(), shop.getId());
+            return;
+        }
+        connection.geoAdd(key(shop.getTypeId()), new Point(shop.getX(), shop.getY()), member(shop.getId()));
+    }
+
+    private static void remove(RedisConnection connection, Long typeId, Long shopId) {
+        connection.zRem(key(typeId), member(shopId));
+    }
+
+    private static byte[] key(Long typeId) {
+        return (SHOP_GEO_KEY + typeId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] member(Long shopId) {
+        return shopId.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,23 @@
+package com.hmdp.index;
+
+import com.hmdp.entity.Shop;
+
+/**
+ * 店铺的内存索引，启动时由ShopIndexManager全量加载，之后随店铺的新增和修改增量更新
+ */
+public interface ShopIndex {
+
+    /**
+     * 店铺变化
+     * @param before 变化前的店铺，新增时为null
+     * @param after  变化后的店铺，删除时为null
+     */
+    void update(Shop before, Shop after);
+
+    /**
+     * 全量加载完成，之后可以对外提供查询
+     */
+    void ready();
+
+    boolean isReady();
+}
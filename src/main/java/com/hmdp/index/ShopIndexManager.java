@@ -0,0 +1,187 @@
+package com.hmdp.index;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.event.ShopChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 店铺内存索引的加载和同步：启动时由CacheWarmUpRunner按id顺序分批读取tb_shop，和缓存预热共用一次扫描全量加载所有ShopIndex，
+ * 之后在店铺变化的事务提交后增量更新。
+ * <p>
+ * 加载期间到达的事件不能直接更新索引，否则之后读取的旧数据会覆盖事件中的新数据：
+ * <ul>
+ *     <li>还没有读取到的店铺忽略事件，之后的读取会读到不旧于事件的数据；扫描结束后仍然没有读取到的（新增的店铺）在加载完成时写入</li>
+ *     <li>正在读取的一批中是否包含事件的变化无法确定，等这一批写入索引后再处理</li>
+ *     <li>已经写入索引的店铺比较写入时的数据指纹，索引中已经是变化后的数据时跳过，否则按变化前后更新</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class ShopIndexManager {
+
+    /**
+     * 不在索引中的店铺的指纹
+     */
+    private static final int ABSENT = 0;
+
+    @Resource
+    private List<ShopIndex> indexes;
+
+    /**
+     * 是否正在全量加载，加载期间的事件在锁中处理
+     */
+    private volatile boolean loading = true;
+    /**
+     * 是否有一批正在从数据库读取
+     */
+    private boolean reading;
+    /**
+     * 已经写入索引的最大店铺id
+     */
+    private long loadedId;
+    private int loadedCount;
+    private long loadStart = System.currentTimeMillis();
+    // 已经写入索引的店铺id -> 写入时的数据指纹，加载完成后释放
+    private LongIntHashMap fingerprints = new LongIntHashMap();
+    // 正在读取时到达的事件
+    private List<ShopChangedEvent> deferred = new ArrayList<>();
+    // 还没有读取到的店铺id -> 最新的店铺数据，删除时为null
+    private final Map<Long, Shop> pending = new LinkedHashMap<>();
+
+    /**
+     * 全量加载一批店铺：reader从数据库读取下一批（按id升序），读取到的店铺写入所有索引后返回
+     */
+    public List<Shop> load(Supplier<List<Shop>> reader) {
+        synchronized (this) {
+            reading = true;
+        }
+        List<Shop> shops;
+        try {
+            shops = reader.get();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                reading = false;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            // 1.写入所有索引，记录数据指纹
+            for (Shop shop : shops) {
+                apply(null, shop);
+                fingerprints.put(shop.getId(), fingerprint(shop));
+            }
+            if (!shops.isEmpty()) {
+                loadedId = shops.get(shops.size() - 1).getId();
+                loadedCount += shops.size();
+            }
+            // 2.读取之前到达的事件已经包含在这一批中
+            pending.keySet().removeIf(id -> id <= loadedId);
+            // 3.读取期间到达的事件
+            reading = false;
+            List<ShopChangedEvent> events = deferred;
+            deferred = new ArrayList<>();
+            events.forEach(this::onShopChangedDuringLoad);
+        }
+        return shops;
+    }
+
+    /**
+     * 全量加载完成：写入扫描之后新增的店铺，之后索引可以对外提供查询
+     */
+    public synchronized void loaded() {
+        pending.forEach((id, shop) -> {
+            if (shop != null) {
+                apply(null, shop);
+                loadedCount++;
+            }
+        });
+        indexes.forEach(ShopIndex::ready);
+        finishLoading();
+        log.info("店铺索引加载完成，店铺数：{}，耗时{}ms", loadedCount, System.currentTimeMillis() - loadStart);
+    }
+
+    /**
+     * 全量加载失败，索引不对外提供查询，查询会退回到redis或数据库
+     */
+    public synchronized void loadFailed() {
+        finishLoading();
+        log.error("店铺索引加载失败，已加载店铺数：{}", loadedCount);
+    }
+
+    /**
+     * 店铺变化的事务提交后更新索引，不在事务中发布的事件直接处理
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShopChanged(ShopChangedEvent event) {
+        if (loading) {
+            synchronized (this) {
+                if (loading) {
+                    onShopChangedDuringLoad(event);
+                    return;
+                }
+            }
+        }
+        apply(event.getBefore(), event.getAfter());
+    }
+
+    private void onShopChangedDuringLoad(ShopChangedEvent event) {
+        Shop after = event.getAfter();
+        long id = after != null ? after.getId() : event.getBefore().getId();
+        // 1.正在读取的一批可能包含也可能不包含这次变化，写入索引后再判断
+        if (reading) {
+            deferred.add(event);
+            return;
+        }
+        // 2.还没有读取到的店铺，记录最新的数据
+        if (id > loadedId) {
+            pending.put(id, after);
+            return;
+        }
+        // 3.已经写入索引的店铺，索引中已经是变化后的数据时跳过
+        int fingerprint = fingerprint(after);
+        if (fingerprints.get(id, ABSENT) == fingerprint) {
+            return;
+        }
+        apply(event.getBefore(), after);
+        if (after == null) {
+            fingerprints.remove(id, ABSENT);
+        } else {
+            fingerprints.put(id, fingerprint);
+        }
+    }
+
+    private void finishLoading() {
+        loading = false;
+        reading = false;
+        fingerprints = null;
+        deferred = null;
+        pending.clear();
+    }
+
+    private void apply(Shop before, Shop after) {
+        for (ShopIndex index : indexes) {
+            try {
+                index.update(before, after);
+            } catch (Exception e) {
+                log.error("更新店铺索引失败，index：{}", index.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    private static int fingerprint(Shop shop) {
+        if (shop == null) {
+            return ABSENT;
+        }
+        int hash = shop.hashCode();
+        return hash == ABSENT ? 1 : hash;
+    }
+}
@@ -0,0 +1,390 @@
+package com.hmdp.index;
+
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 店铺名称的内存倒排索引，适合中文的字二元组（bigram）分词：每个字和每两个相邻的字都是一个词项，
+ * 词项的倒排表是按槽位升序的int数组。查询时取查询词所有bigram的倒排表求交集，再校验名称确实包含查询词。
+ * <p>
+ * 槽位只追加不复用，倒排表天然有序；店铺修改名称或删除时只把旧槽位标记为删除（墓碑），查询时跳过，
+ * 删除的槽位多于有效槽位时整体重建
+ */
+@Component
+public class ShopNameIndex implements ShopIndex {
+
+    /**
+     * 删除的槽位超过这个数量并且多于有效槽位时重建索引
+     */
+    private static final int COMPACT_THRESHOLD = 10000;
+    /**
+     * 最多对几个倒排表求交集，其余的词项由校验保证
+     */
+    private static final int MAX_INTERSECT_LISTS = 3;
+    private static final long UNIGRAM = 0;
+    private static final long BIGRAM = 1L << 32;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 按槽位保存的店铺数据
+    private long[] ids = new long[64];
+    private String[] names = new String[64];
+    // 高32位是名称的前两个字，低32位是销量取反，查询时大部分候选只读这一个数组，不用读取名称
+    private long[] metas = new long[64];
+    private int[] lengths = new int[64];
+    private boolean[] deleted = new boolean[64];
+    private int slotCount;
+    private int deletedCount;
+    // 店铺id -> 槽位
+    private LongIntHashMap slots = new LongIntHashMap();
+    // 词项 -> 包含该词项的槽位
+    private Map<Long, IntList> postings = new HashMap<>();
+
+    private volatile boolean ready;
+
+    @Override
+    public void update(Shop before, Shop after) {
+        lock.writeLock().lock();
+        try {
+            // 1.删除旧的槽位，店铺被删除或者名称、销量变化时
+            long id = after != null ? after.getId() : before.getId();
+            String name = after != null ? normalize(after.getName()) : "";
+            int slot = slots.get(id, -1);
+            if (slot >= 0) {
+                if (!name.isEmpty() && name.equals(names[slot]) && sold(after) == sold(metas[slot])) {
+                    return;
+                }
+                slots.remove(id, -1);
+                deleted[slot] = true;
+                deletedCount++;
+            }
+            // 2.追加新的槽位
+            if (!name.isEmpty()) {
+                add(id, name, sold(after));
+            }
+            // 3.墓碑太多时重建
+            if (deletedCount > COMPACT_THRESHOLD && deletedCount > slotCount - deletedCount) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void ready() {
+        ready = true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 查询名称包含关键字的店铺，排序值的高位是匹配的档次（0完全相同、1以关键字开头、2包含），低位是销量取反，
+     * 排序值相同按id升序
+     * @param limit 最多返回的数量
+     */
+    public List<NameHit> search(String keyword, int limit) {
+        return search(keyword, limit, Long.MIN_VALUE, Long.MIN_VALUE);
+    }
+
+    /**
+     * 从上一页的最后一个结果之后继续查询，只返回(rank, id)大于(afterRank, afterId)的店铺
+     */
+    public List<NameHit> search(String keyword, int limit, long afterRank, long afterId) {
+        String query = normalize(keyword);
+        if (query.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            // 1.取出所有词项的倒排表，有一个词项不存在就没有结果
+            Set<Long> terms = terms(query, false);
+            IntList[] lists = new IntList[terms.size()];
+            int n = 0;
+            for (Long term : terms) {
+                IntList list = postings.get(term);
+                if (list == null) {
+                    return Collections.emptyList();
+                }
+                lists[n++] = list;
+            }
+            // 2.从最短的倒排表开始求交集：所有倒排表轮流跳到当前最大的槽位，都相同时就是一个候选
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+            // 长的倒排表（例如“店)”几乎每个店铺都有）参与求交集得不偿失，最后反正要校验，只取最短的几个
+            if (lists.length > MAX_INTERSECT_LISTS) {
+                lists = Arrays.copyOf(lists, MAX_INTERSECT_LISTS);
+            }
+            int[] positions = new int[lists.length];
+            TopK topK = new TopK(limit);
+            int queryHead = head(query);
+            int headMask = query.length() == 1 ? 0xFFFF0000 : 0xFFFFFFFF;
+            // 超过两个字时bigram都命中也不一定连续出现，需要校验
+            boolean verify = query.length() > 2;
+            int candidate = lists[0].get(0);
+            int j = 0;
+            int matched = 0;
+            while (true) {
+                positions[j] = seek(lists[j], positions[j], candidate);
+                if (positions[j] == lists[j].size()) {
+                    break;
+                }
+                int slot = lists[j].get(positions[j]);
+                if (slot != candidate) {
+                    candidate = slot;
+                    matched = 1;
+                } else if (++matched < lists.length) {
+                    j = (j + 1) % lists.length;
+                    continue;
+                } else {
+                    offer(topK, slot, query, queryHead, headMask, verify, afterRank, afterId);
+                    candidate = slot + 1;
+                    matched = 0;
+                }
+                j = (j + 1) % lists.length;
+            }
+            return topK.toSortedList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 3.计算候选的排序值，只保留游标之后的前limit个；排序值的下界已经进不了前limit个时不读取名称
+     */
+    private void offer(TopK topK, int slot, String query, int queryHead, int headMask, boolean verify,
+                       long afterRank, long afterId) {
+        long meta = metas[slot];
+        boolean headMatch = ((int) (meta >>> 32) & headMask) == queryHead;
+        long soldKey = meta & 0xFFFFFFFFL;
+        if (topK.isFull()) {
+            long bound = ((headMatch ? 0L : 2L) << 32) | soldKey;
+            if (bound > topK.maxRank() || (bound == topK.maxRank() && ids[slot] > topK.maxId())) {
+                return;
+            }
+        }
+        if (deleted[slot]) {
+            return;
+        }
+        long tier;
+        if (verify) {
+            String name = names[slot];
+            if (!name.contains(query)) {
+                return;
+            }
+            tier = !headMatch ? 2 : lengths[slot] == query.length() ? 0 : name.startsWith(query) ? 1 : 2;
+        } else {
+            // 一两个字的查询，前两个字相同就是前缀匹配
+            tier = !headMatch ? 2 : lengths[slot] == query.length() ? 0 : 1;
+        }
+        long rank = (tier << 32) | soldKey;
+        if (TopK.less(afterRank, afterId, rank, ids[slot])) {
+            topK.offer(rank, ids[slot]);
+        }
+    }
+
+    private void add(long id, String name, int sold) {
+        if (slotCount == ids.length) {
+            int capacity = slotCount * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            metas = Arrays.copyOf(metas, capacity);
+            deleted = Arrays.copyOf(deleted, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        int slot = slotCount++;
+        ids[slot] = id;
+        names[slot] = name;
+        metas[slot] = ((long) head(name) << 32) | (Integer.MAX_VALUE - sold);
+        lengths[slot] = name.length();
+        slots.put(id, slot);
+        for (Long term : terms(name, true)) {
+            postings.computeIfAbsent(term, k -> new IntList(2)).add(slot);
+        }
+    }
+
+    /**
+     * 丢掉删除的槽位，按原来的顺序重新写入
+     */
+    private void compact() {
+        long[] oldIds = ids;
+        String[] oldNames = names;
+        long[] oldMetas = metas;
+        boolean[] oldDeleted = deleted;
+        int oldCount = slotCount;
+        int capacity = Math.max(64, (oldCount - deletedCount) * 2);
+        ids = new long[capacity];
+        names = new String[capacity];
+        metas = new long[capacity];
+        deleted = new boolean[capacity];
+        lengths = new int[capacity];
+        slotCount = 0;
+        deletedCount = 0;
+        slots = new LongIntHashMap(capacity);
+        postings = new HashMap<>();
+        for (int slot = 0; slot < oldCount; slot++) {
+            if (!oldDeleted[slot]) {
+                add(oldIds[slot], oldNames[slot], sold(oldMetas[slot]));
+            }
+        }
+    }
+
+    /**
+     * 在有序的倒排表中从from开始找第一个大于等于target的位置，先倍增步长再二分
+     */
+    private static int seek(IntList list, int from, int target) {
+        int size = list.size();
+        int bound = 1;
+        while (from + bound < size && list.get(from + bound) < target) {
+            bound <<= 1;
+        }
+        int low = from + (bound >> 1);
+        int high = Math.min(from + bound, size);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (list.get(mid) < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 分词：名称同时写入单字和bigram词项，单字词项只用于一个字的查询；查询词超过一个字时只用bigram
+     */
+    private static Set<Long> terms(String text, boolean forIndex) {
+        Set<Long> terms = new LinkedHashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            if (forIndex || text.length() == 1) {
+                terms.add(UNIGRAM | text.charAt(i));
+            }
+            if (i + 1 < text.length()) {
+                terms.add(BIGRAM | ((long) text.charAt(i) << 16) | text.charAt(i + 1));
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * 前两个字拼成一个int，只有一个字时低16位为0
+     */
+    private static int head(String text) {
+        return (text.charAt(0) << 16) | (text.length() > 1 ? text.charAt(1) : 0);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase();
+    }
+
+    private static int sold(long meta) {
+        return Integer.MAX_VALUE - (int) meta;
+    }
+
+    private static int sold(Shop shop) {
+        return shop.getSold() == null ? 0 : Math.max(shop.getSold(), 0);
+    }
+
+    /**
+     * 保留排序值最小的k个结果的大顶堆
+     */
+    private static class TopK {
+        private final long[] ranks;
+        private final long[] ids;
+        private int size;
+
+        private TopK(int k) {
+            this.ranks = new long[k];
+            this.ids = new long[k];
+        }
+
+        private boolean isFull() {
+            return size == ids.length;
+        }
+
+        private long maxRank() {
+            return ranks[0];
+        }
+
+        private long maxId() {
+            return ids[0];
+        }
+
+        private void offer(long rank, long id) {
+            if (size < ids.length) {
+                ranks[size] = rank;
+                ids[size] = id;
+                siftUp(size++);
+            } else if (less(rank, id, ranks[0], ids[0])) {
+                ranks[0] = rank;
+                ids[0] = id;
+                siftDown(0);
+            }
+        }
+
+        private List<NameHit> toSortedList() {
+            List<NameHit> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(new NameHit(ids[i], ranks[i]));
+            }
+            list.sort((a, b) -> less(a.getRank(), a.getId(), b.getRank(), b.getId()) ? -1 : 1);
+            return list;
+        }
+
+        private static boolean less(long rank1, long id1, long rank2, long id2) {
+            return rank1 < rank2 || (rank1 == rank2 && id1 < id2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(ranks[parent], ids[parent], ranks[i], ids[i])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int largest = left;
+                int right = left + 1;
+                if (right < size && less(ranks[left], ids[left], ranks[right], ids[right])) {
+                    largest = right;
+                }
+                if (!less(ranks[i], ids[i], ranks[largest], ids[largest])) {
+                    break;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            long rank = ranks[i];
+            ranks[i] = ranks[j];
+            ranks[j] = rank;
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+    }
+}
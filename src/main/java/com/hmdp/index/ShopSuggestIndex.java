@@ -0,0 +1,340 @@
+package com.hmdp.index;
+
+import com.hmdp.dto.SuggestionDTO;
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 店铺名称和商圈的前缀提示索引。所有提示词按忽略大小写的字典序排好，字符连续保存在一个char数组中，
+ * 前缀对应数组中连续的一段，用两次二分查找定位，再用按权重取最大值的线段树从这一段中取出权重最高的k个。
+ * <p>
+ * 已有提示词的权重变化直接原地修改；新的提示词先放在一个小的TreeMap中，积累到一定数量后合并进数组
+ */
+@Component
+public class ShopSuggestIndex implements ShopIndex {
+
+    /**
+     * 新提示词超过这个数量时合并进数组
+     */
+    private static final int DELTA_LIMIT = 4096;
+    /**
+     * 评分是10倍的整数（4.7分存47），乘以这个系数后和销量大致在同一量级
+     */
+    private static final int SCORE_WEIGHT = 10;
+    private static final char TYPE_NAME = '0';
+    private static final char TYPE_AREA = '1';
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 提示词 + '\0' + 类型，按忽略大小写的字典序连续保存，第i个在pool[offsets[i], offsets[i + 1])
+    private char[] pool = new char[0];
+    private int[] offsets = {0};
+    private long[] weights = new long[0];
+    // 包含该提示词的店铺数量，为0时不再返回，下次合并时删除
+    private int[] counts = new int[0];
+    private int size;
+    // 线段树，节点保存子树中权重最大的下标
+    private int[] tree = {-1, -1};
+    private int leafBase = 1;
+    // 还没合并进数组的提示词 -> {权重, 店铺数量}
+    private final TreeMap<String, long[]> delta = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private volatile boolean ready;
+
+    @Override
+    public void update(Shop before, Shop after) {
+        lock.writeLock().lock();
+        try {
+            // 1.减去变化前的权重
+            if (before != null) {
+                add(before.getName(), TYPE_NAME, -weight(before), -1);
+                add(before.getArea(), TYPE_AREA, -weight(before), -1);
+            }
+            // 2.加上变化后的权重
+            if (after != null) {
+                add(after.getName(), TYPE_NAME, weight(after), 1);
+                add(after.getArea(), TYPE_AREA, weight(after), 1);
+            }
+            // 3.新提示词太多时合并，全量加载期间等到加载完成再一次合并
+            if (ready && delta.size() > DELTA_LIMIT) {
+                rebuild();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void ready() {
+        lock.writeLock().lock();
+        try {
+            rebuild();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 查询以prefix开头（忽略大小写）的权重最高的k个提示词，按权重降序
+     */
+    public List<SuggestionDTO> suggest(String prefix, int k) {
+        if (prefix == null || prefix.isEmpty() || k <= 0) {
+            return Collections.emptyList();
+        }
+        List<SuggestionDTO> result = new ArrayList<>(k * 2);
+        lock.readLock().lock();
+        try {
+            // 1.二分查找前缀在数组中对应的区间
+            int from = lowerBound(prefix, false);
+            int to = lowerBound(prefix, true);
+            // 2.每次从堆顶的区间取出权重最大的一个，再把区间从这个位置拆成两半放回堆中
+            PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> Long.compare(weights[b[0]], weights[a[0]]));
+            offerRange(ranges, from, to);
+            while (result.size() < k && !ranges.isEmpty()) {
+                int[] range = ranges.poll();
+                int best = range[0];
+                result.add(toSuggestion(new String(pool, offsets[best], offsets[best + 1] - offsets[best]), weights[best]));
+                offerRange(ranges, range[1], best);
+                offerRange(ranges, best + 1, range[2]);
+            }
+            // 3.还没合并的提示词
+            for (Map.Entry<String, long[]> entry : delta.subMap(prefix, true, prefix + Character.MAX_VALUE, false).entrySet()) {
+                if (entry.getValue()[1] > 0) {
+                    result.add(toSuggestion(entry.getKey(), entry.getValue()[0]));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        result.sort((a, b) -> Long.compare(b.getWeight(), a.getWeight()));
+        return result.size() > k ? new ArrayList<>(result.subList(0, k)) : result;
+    }
+
+    /**
+     * 店铺的权重：销量 + 评分 * 10
+     */
+    public static long weight(Shop shop) {
+        long sold = shop.getSold() == null ? 0 : shop.getSold();
+        long score = shop.getScore() == null ? 0 : shop.getScore();
+        return sold + score * SCORE_WEIGHT;
+    }
+
+    private void add(String text, char type, long weight, int count) {
+        if (text == null || text.trim().isEmpty()) {
+            return;
+        }
+        String key = text.trim() + '\0' + type;
+        // 1.已经在数组中，原地修改权重，更新线段树
+        int i = indexOf(key);
+        if (i >= 0) {
+            weights[i] += weight;
+            counts[i] += count;
+            for (int node = (leafBase + i) >> 1; node > 0; node >>= 1) {
+                tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+            }
+            return;
+        }
+        // 2.新的提示词放到delta中，删除不存在的提示词时忽略
+        long[] value = delta.get(key);
+        if (value == null) {
+            if (count <= 0) {
+                return;
+            }
+            delta.put(key, new long[]{weight, count});
+            return;
+        }
+        value[0] += weight;
+        value[1] += count;
+        if (value[1] <= 0) {
+            delta.remove(key);
+        }
+    }
+
+    /**
+     * 合并数组和delta，去掉店铺数量为0的提示词，重建线段树
+     */
+    private void rebuild() {
+        int capacity = size + delta.size();
+        char[] newPool = new char[pool.length + delta.keySet().stream().mapToInt(String::length).sum()];
+        int[] newOffsets = new int[capacity + 1];
+        long[] newWeights = new long[capacity];
+        int[] newCounts = new int[capacity];
+        int n = 0;
+        int length = 0;
+        Iterator<Map.Entry<String, long[]>> it = delta.entrySet().iterator();
+        Map.Entry<String, long[]> next = it.hasNext() ? it.next() : null;
+        int i = 0;
+        while (i < size || next != null) {
+            // 两个有序序列归并，取较小的一个
+            if (next == null || (i < size && compare(i, next.getKey()) < 0)) {
+                if (counts[i] > 0) {
+                    int len = offsets[i + 1] - offsets[i];
+                    System.arraycopy(pool, offsets[i], newPool, length, len);
+                    length += len;
+                    newWeights[n] = weights[i];
+                    newCounts[n] = counts[i];
+                    newOffsets[++n] = length;
+                }
+                i++;
+            } else {
+                String key = next.getKey();
+                key.getChars(0, key.length(), newPool, length);
+                length += key.length();
+                newWeights[n] = next.getValue()[0];
+                newCounts[n] = (int) next.getValue()[1];
+                newOffsets[++n] = length;
+                next = it.hasNext() ? it.next() : null;
+            }
+        }
+        delta.clear();
+        pool = Arrays.copyOf(newPool, length);
+        offsets = Arrays.copyOf(newOffsets, n + 1);
+        weights = Arrays.copyOf(newWeights, n);
+        counts = Arrays.copyOf(newCounts, n);
+        size = n;
+        // 线段树，叶子数是不小于n的2的幂
+        leafBase = Integer.highestOneBit(Math.max(n, 1) * 2 - 1);
+        tree = new int[2 * leafBase];
+        Arrays.fill(tree, -1);
+        for (int j = 0; j < n; j++) {
+            tree[leafBase + j] = j;
+        }
+        for (int node = leafBase - 1; node > 0; node--) {
+            tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+
+    /**
+     * 把区间[from, to)和其中权重最大的下标放入堆，没有有效的提示词时不放
+     */
+    private void offerRange(PriorityQueue<int[]> ranges, int from, int to) {
+        int best = -1;
+        for (int l = from + leafBase, r = to + leafBase; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                best = better(best, tree[l++]);
+            }
+            if ((r & 1) == 1) {
+                best = better(best, tree[--r]);
+            }
+        }
+        if (best >= 0 && counts[best] > 0) {
+            ranges.offer(new int[]{best, from, to});
+        }
+    }
+
+    /**
+     * 两个下标中权重更大的一个，店铺数量为0的不参与比较
+     */
+    private int better(int a, int b) {
+        if (a < 0 || counts[a] <= 0) {
+            return b < 0 || counts[b] <= 0 ? -1 : b;
+        }
+        if (b < 0 || counts[b] <= 0) {
+            return a;
+        }
+        return weights[a] >= weights[b] ? a : b;
+    }
+
+    private int indexOf(String key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compare(mid, key);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 第一个以prefix开头的下标；after为true时是第一个排在所有以prefix开头的提示词之后的下标
+     */
+    private int lowerBound(String prefix, boolean after) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int c = comparePrefix(mid, prefix);
+            if (c < 0 || (after && c == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 第i个提示词和key比较，规则与String.CASE_INSENSITIVE_ORDER相同
+     */
+    private int compare(int i, String key) {
+        int start = offsets[i];
+        int len = offsets[i + 1] - start;
+        int n = Math.min(len, key.length());
+        for (int j = 0; j < n; j++) {
+            int c = compareIgnoreCase(pool[start + j], key.charAt(j));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - key.length();
+    }
+
+    /**
+     * 第i个提示词的前prefix.length()个字符和prefix比较
+     */
+    private int comparePrefix(int i, String prefix) {
+        int start = offsets[i];
+        int len = offsets[i + 1] - start;
+        int n = Math.min(len, prefix.length());
+        for (int j = 0; j < n; j++) {
+            int c = compareIgnoreCase(pool[start + j], prefix.charAt(j));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len < prefix.length() ? -1 : 0;
+    }
+
+    private static int compareIgnoreCase(char c1, char c2) {
+        if (c1 == c2) {
+            return 0;
+        }
+        c1 = Character.toUpperCase(c1);
+        c2 = Character.toUpperCase(c2);
+        if (c1 == c2) {
+            return 0;
+        }
+        c1 = Character.toLowerCase(c1);
+        c2 = Character.toLowerCase(c2);
+        return c1 - c2;
+    }
+
+    private static SuggestionDTO toSuggestion(String key, long weight) {
+        // key的最后两个字符是'\0'和类型
+        String type = key.charAt(key.length() - 1) == TYPE_AREA ? SuggestionDTO.TYPE_AREA : SuggestionDTO.TYPE_NAME;
+        return new SuggestionDTO(key.substring(0, key.length() - 2), type, weight);
+    }
+}
@@ -0,0 +1,209 @@
+package com.hmdp.like;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_ACTIVE_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_DIRTY_KEY;
+
+/**
+ * 笔记点赞数以redis为准（hash blog:like:count），点赞由一个脚本同时切换点赞状态、更新点赞数、记录待写回的笔记，
+ * 不再每次点赞都UPDATE数据库的同一行；待写回的笔记（ZSET blog:like:dirty，分数为最早没有写回的时间）定期批量写回数据库。
+ * <p>
+ * 写回的是点赞数的绝对值，多个节点同时写回结果也相同；写回期间点赞数又变化的笔记留在待写回集合中，下次再写回。
+ * 点赞数最后变化的时间记录在ZSET blog:like:active中，已经写回并且很久没有变化的点赞数在写回时一起删除
+ */
+@Slf4j
+@Component
+public class BlogLikeCounter {
+
+    private static final DefaultRedisScript<List> LIKE_SCRIPT;
+    private static final DefaultRedisScript<Long> FLUSH_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("blog_like.lua"));
+        LIKE_SCRIPT.setResultType(List.class);
+        FLUSH_SCRIPT = new DefaultRedisScript<>();
+        FLUSH_SCRIPT.setLocation(new ClassPathResource("blog_like_flush.lua"));
+        FLUSH_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final BlogMapper blogMapper;
+
+    private final BlogLikeProperties properties;
+
+    /**
+     * 待写回的笔记数量，每次写回后更新
+     */
+    private final AtomicLong dirtySize = new AtomicLong();
+
+    /**
+     * 最早没有写回的点赞距今的毫秒数，每次写回后更新
+     */
+    private final AtomicLong flushLag = new AtomicLong();
+
+    public BlogLikeCounter(StringRedisTemplate stringRedisTemplate, BlogMapper blogMapper,
+                           BlogLikeProperties properties, MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.blogMapper = blogMapper;
+        this.properties = properties;
+        Gauge.builder("blog.like.dirty", dirtySize, AtomicLong::get)
+                .description("点赞数还没有写回数据库的笔记数量")
+                .register(meterRegistry);
+        Gauge.builder("blog.like.flush.lag", flushLag, AtomicLong::get)
+                .description("最早没有写回数据库的点赞距今的毫秒数")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 切换用户对笔记的点赞状态
+     * @return 切换后的状态和点赞数，笔记不存在时返回null
+     */
+    public Toggle toggle(Long blogId, Long userId) {
+        List<String> keys = Arrays.asList(BLOG_LIKED_KEY + blogId, BLOG_LIKE_COUNT_KEY, BLOG_LIKE_DIRTY_KEY, BLOG_LIKE_ACTIVE_KEY);
+        String now = String.valueOf(System.currentTimeMillis());
+        // 1.执行脚本
+        List<?> result = stringRedisTemplate.execute(LIKE_SCRIPT, keys, blogId.toString(), userId.toString(), now);
+        if (((Number) result.get(0)).longValue() < 0) {
+            // 2.点赞数还没有加载，从数据库加载后重试，HSETNX不会覆盖其他线程已经加载并修改过的点赞数
+            Blog blog = blogMapper.selectOne(new QueryWrapper<Blog>().select("id", "liked").eq("id", blogId));
+            if (blog == null) {
+                return null;
+            }
+            stringRedisTemplate.opsForHash().putIfAbsent(BLOG_LIKE_COUNT_KEY, blogId.toString(),
+                    String.valueOf(blog.getLiked() == null ? 0 : blog.getLiked()));
+            result = stringRedisTemplate.execute(LIKE_SCRIPT, keys, blogId.toString(), userId.toString(), now);
+        }
+        return new Toggle(((Number) result.get(0)).longValue() == 1, ((Number) result.get(1)).longValue());
+    }
+
+    /**
+     * 一次HMGET查询多篇笔记在redis中的点赞数，没有加载过的笔记不在结果中，以数据库为准
+     */
+    public Map<Long, Integer> getLikes(Collection<Long> blogIds) {
+        Map<Long, Integer> likes = new HashMap<>(blogIds.size() * 2);
+        if (blogIds.isEmpty()) {
+            return likes;
+        }
+        List<Object> fields = new ArrayList<>(blogIds.size());
+        for (Long id : blogIds) {
+            fields.add(id.toString());
+        }
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(BLOG_LIKE_COUNT_KEY, fields);
+        int i = 0;
+        for (Long id : blogIds) {
+            Object value = values == null ? null : values.get(i);
+            if (value != null) {
+                likes.put(id, Integer.valueOf(value.toString()));
+            }
+            i++;
+        }
+        return likes;
+    }
+
+    /**
+     * 定期把最早变化的一批笔记的点赞数写回数据库，再删除一批很久没有变化的点赞数
+     */
+    @Scheduled(fixedDelayString = "#{@blogLikeProperties.flushInterval.toMillis()}")
+    public void flush() {
+        try {
+            // 1.最早变化的一批笔记 ZRANGE blog:like:dirty 0 batchSize-1
+            Set<String> dirty = stringRedisTemplate.opsForZSet().range(BLOG_LIKE_DIRTY_KEY, 0, properties.getBatchSize() - 1);
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(System.currentTimeMillis() - properties.getEvictAfter().toMillis()));
+            args.add(String.valueOf(properties.getBatchSize()));
+            if (dirty != null && !dirty.isEmpty()) {
+                List<Long> ids = new ArrayList<>(dirty.size());
+                for (String id : dirty) {
+                    ids.add(Long.valueOf(id));
+                }
+                // 2.读取当前的点赞数，没有点赞数的笔记无法写回，直接删除
+                Map<Long, Integer> likes = getLikes(ids);
+                List<Blog> blogs = new ArrayList<>(likes.size());
+                for (Long id : ids) {
+                    Integer liked = likes.get(id);
+                    if (liked == null) {
+                        stringRedisTemplate.opsForZSet().remove(BLOG_LIKE_DIRTY_KEY, id.toString());
+                        continue;
+                    }
+                    blogs.add(new Blog().setId(id).setLiked(liked));
+                    args.add(id.toString());
+                    args.add(liked.toString());
+                }
+                // 3.一条UPDATE写回
+                if (!blogs.isEmpty()) {
+                    blogMapper.updateLikedBatch(blogs);
+                }
+            }
+            // 4.删除点赞数没有再变化的待写回笔记，以及已经写回并且很久没有变化的点赞数
+            stringRedisTemplate.execute(FLUSH_SCRIPT, Arrays.asList(BLOG_LIKE_COUNT_KEY, BLOG_LIKE_DIRTY_KEY, BLOG_LIKE_ACTIVE_KEY),
+                    args.toArray());
+        } catch (Exception e) {
+            // 没有写回的笔记留在待写回集合中，下次继续
+            log.error("写回笔记点赞数失败", e);
+        }
+        updateMetrics();
+    }
+
+    /**
+     * 更新待写回的笔记数量和最早没有写回的点赞距今的时间
+     */
+    private void updateMetrics() {
+        try {
+            Long size = stringRedisTemplate.opsForZSet().zCard(BLOG_LIKE_DIRTY_KEY);
+            Set<ZSetOperations.TypedTuple<String>> oldest = stringRedisTemplate.opsForZSet()
+                    .rangeWithScores(BLOG_LIKE_DIRTY_KEY, 0, 0);
+            dirtySize.set(size == null ? 0 : size);
+            if (oldest == null || oldest.isEmpty()) {
+                flushLag.set(0);
+            } else {
+                double since = oldest.iterator().next().getScore();
+                flushLag.set(Math.max(System.currentTimeMillis() - (long) since, 0));
+            }
+        } catch (Exception e) {
+            log.error("查询笔记点赞待写回数量失败", e);
+        }
+    }
+
+    /**
+     * 切换点赞后的状态
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Toggle {
+        /**
+         * 切换后是否点赞
+         */
+        private final boolean liked;
+        /**
+         * 切换后的点赞数
+         */
+        private final long count;
+    }
+}
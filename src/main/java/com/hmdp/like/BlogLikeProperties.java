@@ -0,0 +1,28 @@
+package com.hmdp.like;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 笔记点赞数写回数据库的配置，对应application.yaml中的hmdp.blog-like
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.blog-like")
+public class BlogLikeProperties {
+    /**
+     * 写回数据库的间隔
+     */
+    private Duration flushInterval = Duration.ofSeconds(1);
+    /**
+     * 每次最多写回的笔记数量，一条UPDATE语句；也是每次最多从redis中删除的冷点赞数数量
+     */
+    private int batchSize = 500;
+    /**
+     * 点赞数已经写回并且超过这段时间没有变化的笔记，从redis中删除，再次点赞时从数据库加载
+     */
+    private Duration evictAfter = Duration.ofHours(1);
+}
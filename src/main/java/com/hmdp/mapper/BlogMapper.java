@@ -3,6 +3,8 @@ package com.hmdp.mapper;
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 
+import java.util.List;
+
 /**
  * <p>
  *  Mapper 接口
@@ -13,4 +15,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 一条UPDATE ... SET liked = CASE id WHEN ... END批量写回多篇笔记的点赞数
+     */
+    int updateLikedBatch(List<Blog> blogs);
 }
@@ -17,4 +17,9 @@ import java.util.List;
 public interface VoucherMapper extends BaseMapper<Voucher> {
 
     List<Voucher> queryVoucherOfShop(@Param("shopId") Long shopId);
+
+    /**
+     * 多行INSERT，自增id回填到每个优惠券
+     */
+    int insertBatch(List<Voucher> vouchers);
 }
@@ -0,0 +1,227 @@
+package com.hmdp.ranking;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.BooleanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.like.BlogLikeCounter;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOG_HOT_KEY;
+
+/**
+ * 热门笔记排行：redis ZSET blog:hot，score为随时间衰减的热度 (点赞数 + 1) / (发布小时数 + 2) ^ gravity。
+ * 点赞和发布时增量更新单篇笔记的热度，其他笔记的热度随时间下降，由定期的全量计算更新；
+ * 全量计算写入临时key后RENAME，期间读取的仍然是完整的旧排行；计算期间增量更新过的笔记记录在blog:hot:dirty中，
+ * RENAME之后重新写入，不会被临时排行中的旧热度覆盖
+ */
+@Slf4j
+@Component
+public class BlogHotRanking {
+
+    private static final String TMP_SUFFIX = ":tmp";
+
+    private static final DefaultRedisScript<Long> UPDATE_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    static {
+        UPDATE_SCRIPT = new DefaultRedisScript<>();
+        UPDATE_SCRIPT.setLocation(new ClassPathResource("blog_hot_update.lua"));
+        UPDATE_SCRIPT.setResultType(Long.class);
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("lock_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Resource
+    private BlogLikeCounter blogLikeCounter;
+
+    @Resource
+    private BlogRankingProperties properties;
+
+    /**
+     * 计算笔记的热度
+     */
+    public double score(Integer liked, LocalDateTime createTime, LocalDateTime now) {
+        long likes = liked == null ? 0 : Math.max(liked, 0);
+        double hours = createTime == null ? 0 : Math.max(Duration.between(createTime, now).toMillis(), 0) / 3600_000.0;
+        return (likes + 1) / Math.pow(hours + 2, properties.getGravity());
+    }
+
+    /**
+     * 增量更新一篇笔记的热度，超出排行时间范围的笔记从排行中删除；正在重新计算时同时记录下这篇笔记
+     */
+    public void update(Blog blog) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime createTime = blog.getCreateTime() == null ? now : blog.getCreateTime();
+        String score = createTime.isBefore(now.minus(properties.getWindow()))
+                ? "" : String.valueOf(score(blog.getLiked(), createTime, now));
+        stringRedisTemplate.execute(UPDATE_SCRIPT, Arrays.asList(BLOG_HOT_KEY, LOCK_BLOG_HOT_KEY, BLOG_HOT_DIRTY_KEY),
+                blog.getId().toString(), score, String.valueOf(properties.getRefreshInterval().getSeconds()));
+    }
+
+    /**
+     * 按热度降序分页查询笔记id ZREVRANGE blog:hot start end，排行还没有生成时返回null
+     */
+    public List<Long> page(int current, int size) {
+        long start = (long) (current - 1) * size;
+        Set<String> members = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, start, start + size - 1);
+        if (members == null || members.isEmpty()) {
+            return BooleanUtil.isTrue(stringRedisTemplate.hasKey(BLOG_HOT_KEY)) ? Collections.emptyList() : null;
+        }
+        List<Long> ids = new ArrayList<>(members.size());
+        for (String member : members) {
+            ids.add(Long.valueOf(member));
+        }
+        return ids;
+    }
+
+    /**
+     * 定期重新计算排行时间范围内所有笔记的热度，多个节点同时只有一个计算；
+     * 锁在计算结束后不释放，有效期内其他节点不再重复计算，每写入一批延长一次有效期
+     */
+    @Scheduled(fixedDelayString = "#{@blogRankingProperties.refreshInterval.toMillis()}", initialDelay = 10_000)
+    public void rebuild() {
+        long lockMillis = Math.max(properties.getRefreshInterval().toMillis() / 2, 1000);
+        String token = UUID.randomUUID().toString(true);
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_BLOG_HOT_KEY, token, lockMillis, TimeUnit.MILLISECONDS);
+        if (!BooleanUtil.isTrue(locked)) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime since = now.minus(properties.getWindow());
+        byte[] tmpKey = (BLOG_HOT_KEY + TMP_SUFFIX).getBytes(StandardCharsets.UTF_8);
+        int count = 0;
+        try {
+            // 上一次计算之后的变化记录已经没用了，这一次读取的点赞数不旧于它们
+            stringRedisTemplate.delete(Arrays.asList(BLOG_HOT_KEY + TMP_SUFFIX, BLOG_HOT_DIRTY_KEY));
+            long lastId = 0;
+            while (true) {
+                // 1.按id分批读取时间范围内的笔记 WHERE create_time >= ? AND id > ? ORDER BY id LIMIT ?
+                List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                        .select("id", "liked", "create_time")
+                        .ge("create_time", since)
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + properties.getBatchSize()));
+                if (blogs.isEmpty()) {
+                    break;
+                }
+                // 2.点赞数以redis为准，数据库中的可能还没有写回
+                List<Long> ids = new ArrayList<>(blogs.size());
+                for (Blog blog : blogs) {
+                    ids.add(blog.getId());
+                }
+                Map<Long, Integer> likes = blogLikeCounter.getLikes(ids);
+                for (Blog blog : blogs) {
+                    blog.setLiked(likes.getOrDefault(blog.getId(), blog.getLiked()));
+                }
+                // 3.一个pipeline写入一批热度
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Blog blog : blogs) {
+                        connection.zAdd(tmpKey, score(blog.getLiked(), blog.getCreateTime(), now),
+                                blog.getId().toString().getBytes(StandardCharsets.UTF_8));
+                    }
+                    return null;
+                });
+                count += blogs.size();
+                lastId = blogs.get(blogs.size() - 1).getId();
+                // 4.延长锁的有效期，锁已经过期被其他节点获取时放弃这次计算
+                if (!renew(token, lockMillis)) {
+                    log.warn("重新计算热门笔记排行超时，锁已失效，放弃本次计算，已计算笔记数：{}", count);
+                    stringRedisTemplate.delete(BLOG_HOT_KEY + TMP_SUFFIX);
+                    return;
+                }
+                if (blogs.size() < properties.getBatchSize()) {
+                    break;
+                }
+            }
+            // 5.原子地替换旧的排行，没有笔记时删除排行
+            if (count > 0) {
+                stringRedisTemplate.rename(BLOG_HOT_KEY + TMP_SUFFIX, BLOG_HOT_KEY);
+            } else {
+                stringRedisTemplate.delete(BLOG_HOT_KEY);
+            }
+            // 6.计算期间增量更新过的笔记，临时排行中可能是旧的热度，重新写入
+            int dirty = reapplyDirty(since);
+            log.debug("重新计算热门笔记排行，笔记数：{}，计算期间变化的笔记数：{}", count, dirty);
+        } catch (Exception e) {
+            log.error("重新计算热门笔记排行失败", e);
+        }
+    }
+
+    /**
+     * 重新读取变化记录中笔记的点赞数，写入排行，返回笔记数；之后的增量更新直接写入新的排行
+     */
+    private int reapplyDirty(LocalDateTime since) {
+        Set<String> members = stringRedisTemplate.opsForSet().members(BLOG_HOT_DIRTY_KEY);
+        if (members == null || members.isEmpty()) {
+            return 0;
+        }
+        stringRedisTemplate.delete(BLOG_HOT_DIRTY_KEY);
+        List<Long> ids = new ArrayList<>(members.size());
+        for (String member : members) {
+            ids.add(Long.valueOf(member));
+        }
+        // 1.读取笔记的发布时间，点赞数以redis为准
+        List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                .select("id", "liked", "create_time")
+                .in("id", ids));
+        Map<Long, Integer> likes = blogLikeCounter.getLikes(ids);
+        LocalDateTime now = LocalDateTime.now();
+        byte[] key = BLOG_HOT_KEY.getBytes(StandardCharsets.UTF_8);
+        Set<String> deleted = new HashSet<>(members);
+        for (Blog blog : blogs) {
+            deleted.remove(blog.getId().toString());
+        }
+        // 2.一个pipeline写入，已删除或者超出时间范围的笔记从排行中删除
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Blog blog : blogs) {
+                byte[] member = blog.getId().toString().getBytes(StandardCharsets.UTF_8);
+                if (blog.getCreateTime() != null && blog.getCreateTime().isBefore(since)) {
+                    connection.zRem(key, member);
+                } else {
+                    connection.zAdd(key, score(likes.getOrDefault(blog.getId(), blog.getLiked()), blog.getCreateTime(), now), member);
+                }
+            }
+            for (String member : deleted) {
+                connection.zRem(key, member.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        return members.size();
+    }
+
+    private boolean renew(String token, long lockMillis) {
+        Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(LOCK_BLOG_HOT_KEY),
+                token, String.valueOf(lockMillis));
+        return renewed != null && renewed == 1;
+    }
+}
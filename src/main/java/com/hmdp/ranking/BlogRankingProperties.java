@@ -0,0 +1,36 @@
+package com.hmdp.ranking;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 笔记排行的配置，对应application.yaml中的hmdp.blog-ranking
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.blog-ranking")
+public class BlogRankingProperties {
+    /**
+     * 热度随时间衰减的指数，热度 = (点赞数 + 1) / (发布小时数 + 2) ^ gravity，越大旧笔记掉得越快
+     */
+    private double gravity = 1.8;
+    /**
+     * 只有这段时间内发布的笔记参与热门排行
+     */
+    private Duration window = Duration.ofDays(7);
+    /**
+     * 重新计算所有热度的间隔，也决定了计算时的锁有效期
+     */
+    private Duration refreshInterval = Duration.ofMinutes(10);
+    /**
+     * 重新计算时每批从数据库读取的笔记数量
+     */
+    private int batchSize = 1000;
+    /**
+     * 把每小时的点赞数汇总成趋势窗口的间隔
+     */
+    private Duration trendingInterval = Duration.ofMinutes(1);
+}
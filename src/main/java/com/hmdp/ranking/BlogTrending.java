@@ -0,0 +1,131 @@
+package com.hmdp.ranking;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.hmdp.utils.RedisConstants.BLOG_TREND_HOUR_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_TREND_KEY;
+
+/**
+ * 按时间窗口的趋势笔记：点赞和取消点赞累加到当前小时的ZSET（blog:trend:hour:{小时数}），
+ * 定期用ZUNIONSTORE把窗口内的小时汇总成blog:trend:{day|week}，查询一页只需要一次ZREVRANGE。
+ * 小时的ZSET在最长的窗口之后自动过期
+ */
+@Slf4j
+@Component
+public class BlogTrending {
+
+    private static final long HOUR_MILLIS = 3600_000L;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    public enum Window {
+        DAY("day", 24),
+        WEEK("week", 24 * 7);
+
+        private final String name;
+        private final int hours;
+
+        Window(String name, int hours) {
+            this.name = name;
+            this.hours = hours;
+        }
+
+        public String key() {
+            return BLOG_TREND_KEY + name;
+        }
+
+        /**
+         * 根据名称查询窗口，不存在时返回null
+         */
+        public static Window of(String name) {
+            for (Window window : values()) {
+                if (window.name.equals(name)) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 记录一次点赞(+1)或者取消点赞(-1)，ZINCRBY和EXPIRE在一个pipeline中发送
+     */
+    public void record(Long blogId, int delta) {
+        byte[] key = hourKey(currentHour());
+        byte[] member = blogId.toString().getBytes(StandardCharsets.UTF_8);
+        long ttl = (maxHours() + 1) * 3600L;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.zIncrBy(key, delta, member);
+            connection.expire(key, ttl);
+            return null;
+        });
+    }
+
+    /**
+     * 按窗口内的点赞数降序分页查询笔记id ZREVRANGE blog:trend:{window} start end
+     */
+    public List<Long> page(Window window, int current, int size) {
+        long start = (long) (current - 1) * size;
+        Set<String> members = stringRedisTemplate.opsForZSet().reverseRange(window.key(), start, start + size - 1);
+        List<Long> ids = new ArrayList<>(members == null ? 0 : members.size());
+        if (members != null) {
+            for (String member : members) {
+                ids.add(Long.valueOf(member));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 定期汇总每个窗口：包含当前小时在内的最近N个小时。ZUNIONSTORE会原子地覆盖目标key，多个节点同时汇总结果也相同
+     */
+    @Scheduled(fixedDelayString = "#{@blogRankingProperties.trendingInterval.toMillis()}")
+    public void rollUp() {
+        long hour = currentHour();
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Window window : Window.values()) {
+                    byte[][] sources = new byte[window.hours][];
+                    for (int i = 0; i < window.hours; i++) {
+                        sources[i] = hourKey(hour - i);
+                    }
+                    byte[] key = window.key().getBytes(StandardCharsets.UTF_8);
+                    // 1.ZUNIONSTORE blog:trend:{window} N blog:trend:hour:{hour} ...
+                    connection.zUnionStore(key, sources);
+                    // 2.取消的点赞在点赞之前的小时之外时，窗口内的数量可能不是正数，删除这些笔记
+                    connection.zRemRangeByScore(key, Double.NEGATIVE_INFINITY, 0);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("汇总趋势笔记失败", e);
+        }
+    }
+
+    private static long currentHour() {
+        return System.currentTimeMillis() / HOUR_MILLIS;
+    }
+
+    private static int maxHours() {
+        int max = 0;
+        for (Window window : Window.values()) {
+            max = Math.max(max, window.hours);
+        }
+        return max;
+    }
+
+    private static byte[] hourKey(long hour) {
+        return (BLOG_TREND_HOUR_KEY + hour).getBytes(StandardCharsets.UTF_8);
+    }
+}
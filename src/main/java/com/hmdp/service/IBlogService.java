@@ -2,7 +2,8 @@ package com.hmdp.service;
 
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
-import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
 
 /**
  * <p>
@@ -12,12 +13,20 @@ import com.baomidou.mybatisplus.extension.service.IService;
  * @author 虎哥
  * @since 2021-12-22
  */
-public interface IBlogService extends IService<Blog> {
+public interface IBlogService extends ISeekService<Blog> {
 
     Result queryBlogById(Long id);
 
+    Blog getBlogById(Long id);
+
     Result queryHotBlog(Integer current);
 
+    Result queryHotBlogCursor(String cursor);
+
+    Result queryTrendingBlog(String window, Integer current);
+
+    List<Blog> queryTopBlogsOfShop(Long shopId, int size);
+
     Result likeBlog(Long id);
 
     Result queryBlogLikes(Long id);
@@ -0,0 +1,60 @@
+package com.hmdp.service;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.dto.CursorResult;
+import com.hmdp.utils.CursorUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在IService的基础上增加keyset分页，游标中保存上一页最后一条记录的排序值和id，
+ * 下一页用 WHERE (列, id) 排在游标之后 ORDER BY 列, id LIMIT n 查询，深度翻页和第一页的开销相同
+ */
+public interface ISeekService<T> extends IService<T> {
+
+    /**
+     * keyset分页：从游标处继续查询，不使用OFFSET，也不查询总数
+     * @param wrapper 查询条件，会被追加游标条件、排序和LIMIT
+     * @param order   排序
+     * @param cursor  上一页返回的游标，第一页传空字符串
+     * @param size    每页数量
+     * @throws IllegalArgumentException 游标无效
+     */
+    default CursorResult seekPage(QueryWrapper<T> wrapper, SeekOrder<T> order, String cursor, int size) {
+        String column = order.getColumn();
+        boolean desc = order.isDesc();
+        // 1.解析游标，追加排在游标之后的条件
+        if (StrUtil.isNotBlank(cursor)) {
+            String[] parts = CursorUtils.decode(cursor, 2);
+            long lastId = Long.parseLong(parts[1]);
+            if (column == null) {
+                // id < lastId 或 id > lastId
+                wrapper.lt(desc, "id", lastId).gt(!desc, "id", lastId);
+            } else {
+                // 列 < lastValue OR (列 = lastValue AND id < lastId)，升序时方向相反
+                long lastValue = Long.parseLong(parts[0]);
+                wrapper.and(w -> w.lt(desc, column, lastValue).gt(!desc, column, lastValue)
+                        .or(o -> o.eq(column, lastValue).lt(desc, "id", lastId).gt(!desc, "id", lastId)));
+            }
+        }
+        // 2.排序，多查一条用来判断是否还有下一页，不查询总数
+        if (column != null) {
+            wrapper.orderBy(true, !desc, column);
+        }
+        wrapper.orderBy(true, !desc, "id");
+        wrapper.last("LIMIT " + (size + 1));
+        List<T> list = list(wrapper);
+        // 3.返回当前页和下一页的游标
+        CursorResult result = new CursorResult();
+        if (list.size() > size) {
+            list = new ArrayList<>(list.subList(0, size));
+            T last = list.get(size - 1);
+            result.setCursor(CursorUtils.encode(column == null ? "" : order.valueOf(last), order.idOf(last)));
+        }
+        result.setList(list);
+        return result;
+    }
+}
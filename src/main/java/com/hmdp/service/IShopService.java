@@ -1,8 +1,8 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilter;
 import com.hmdp.entity.Shop;
-import com.baomidou.mybatisplus.extension.service.IService;
 
 /**
  * <p>
@@ -12,11 +12,27 @@ import com.baomidou.mybatisplus.extension.service.IService;
  * @author 虎哥
  * @since 2021-12-22
  */
-public interface IShopService extends IService<Shop> {
+public interface IShopService extends ISeekService<Shop> {
 
     Result queryById(Long id);
 
+    Shop getShopById(Long id);
+
+    Result queryShopDetail(Long id);
+
+    Result saveShop(Shop shop);
+
     Result updateByShop(Shop shop);
 
     Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    Result queryShopByTypeCursor(Integer typeId, Double x, Double y, String cursor);
+
+    Result queryNearbyShops(Double x, Double y, Integer current);
+
+    Result queryShopByName(String name, Integer current, String cursor);
+
+    Result suggest(String prefix, Integer size);
+
+    Result searchShops(ShopFilter filter);
 }
@@ -0,0 +1,52 @@
+package com.hmdp.service;
+
+import java.util.function.Function;
+
+/**
+ * keyset分页的排序：先按一个数值列排序，值相同再按id排序；只按id排序时column为null
+ */
+public class SeekOrder<T> {
+
+    private final String column;
+    private final Function<T, ? extends Number> valueGetter;
+    private final Function<T, Long> idGetter;
+    private final boolean desc;
+
+    private SeekOrder(String column, Function<T, ? extends Number> valueGetter, Function<T, Long> idGetter, boolean desc) {
+        this.column = column;
+        this.valueGetter = valueGetter;
+        this.idGetter = idGetter;
+        this.desc = desc;
+    }
+
+    /**
+     * 只按id排序
+     */
+    public static <T> SeekOrder<T> byId(Function<T, Long> idGetter, boolean desc) {
+        return new SeekOrder<>(null, null, idGetter, desc);
+    }
+
+    /**
+     * 按数值列排序，值相同按id排序，方向相同
+     */
+    public static <T> SeekOrder<T> by(String column, Function<T, ? extends Number> valueGetter, Function<T, Long> idGetter, boolean desc) {
+        return new SeekOrder<>(column, valueGetter, idGetter, desc);
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public boolean isDesc() {
+        return desc;
+    }
+
+    public long valueOf(T entity) {
+        Number value = valueGetter.apply(entity);
+        return value == null ? 0 : value.longValue();
+    }
+
+    public long idOf(T entity) {
+        return idGetter.apply(entity);
+    }
+}
@@ -0,0 +1,101 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.cache.CacheProperties;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.UserHolder;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_COUNT_KEY;
+
+/**
+ * 批量填充笔记列表的作者、点赞数和是否点赞：所有作者一次批量查询缓存（未命中的一次查询数据库），
+ * 点赞数（HMGET）和所有点赞状态（ZSCORE）用一个pipeline查询，一页笔记的往返次数与笔记数量无关
+ */
+@Component
+public class BlogHydrator {
+
+    /**
+     * 作者信息的缓存名称，对应application.yaml中的hmdp.cache.specs.user
+     */
+    static final String USER_CACHE = "user";
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    public void hydrate(List<Blog> blogs) {
+        if (blogs == null || blogs.isEmpty()) {
+            return;
+        }
+        // 1.一次批量查询所有作者
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).distinct().collect(Collectors.toList());
+        Map<Long, UserDTO> users = cacheClient.multiQuery(cacheProperties.getSpec(USER_CACHE), userIds, UserDTO.class,
+                ids -> userService.listByIds(ids).stream()
+                        .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                        .collect(Collectors.toMap(UserDTO::getId, Function.identity())));
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+        // 2.一个pipeline查询所有笔记在redis中的点赞数 HMGET blog:like:count id...，
+        // 和登录用户是否点赞了每篇笔记 ZSCORE blog:liked:{id} userId，未登录时无需查询是否点赞
+        UserDTO loginUser = UserHolder.getUser();
+        byte[] member = loginUser == null ? null : loginUser.getId().toString().getBytes(StandardCharsets.UTF_8);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[][] fields = new byte[blogs.size()][];
+            for (int i = 0; i < blogs.size(); i++) {
+                fields[i] = blogs.get(i).getId().toString().getBytes(StandardCharsets.UTF_8);
+            }
+            connection.hMGet(BLOG_LIKE_COUNT_KEY.getBytes(StandardCharsets.UTF_8), fields);
+            if (member != null) {
+                for (Blog blog : blogs) {
+                    connection.zScore((BLOG_LIKED_KEY + blog.getId()).getBytes(StandardCharsets.UTF_8), member);
+                }
+            }
+            return null;
+        });
+        if (results == null) {
+            results = Collections.emptyList();
+        }
+        // 3.点赞数以redis为准，没有加载到redis的笔记以数据库为准
+        List<?> likes = !results.isEmpty() && results.get(0) instanceof List ? (List<?>) results.get(0) : Collections.emptyList();
+        for (int i = 0; i < blogs.size() && i < likes.size(); i++) {
+            if (likes.get(i) != null) {
+                blogs.get(i).setLiked(Integer.valueOf(likes.get(i).toString()));
+            }
+        }
+        if (member == null) {
+            return;
+        }
+        for (int i = 0; i < blogs.size(); i++) {
+            int j = i + 1;
+            blogs.get(i).setIsLike(j < results.size() && results.get(j) != null);
+        }
+    }
+}
@@ -2,20 +2,29 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.cache.CacheProperties;
+import com.hmdp.cache.Cached;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.entity.Follow;
-import com.hmdp.entity.User;
+import com.hmdp.like.BlogLikeCounter;
 import com.hmdp.mapper.BlogMapper;
+import com.hmdp.ranking.BlogHotRanking;
+import com.hmdp.ranking.BlogTrending;
 import com.hmdp.service.IBlogService;
-import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.service.SeekOrder;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import org.springframework.aop.framework.AopContext;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
@@ -24,7 +33,9 @@ import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
@@ -50,60 +61,133 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private BlogHydrator blogHydrator;
+
+    @Resource
+    private BlogHotRanking blogHotRanking;
+
+    @Resource
+    private BlogTrending blogTrending;
+
+    @Resource
+    private BlogLikeCounter blogLikeCounter;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
     @Override
     public Result queryBlogById(Long id) {
-        // 1.查询blog
-        Blog blog = getById(id);
+        // 1.查询blog，通过代理对象调用走@Cached的缓存逻辑
+        Blog blog = ((IBlogService) AopContext.currentProxy()).getBlogById(id);
         if (blog == null) {
             return Result.fail("笔记不存在！");
         }
-        // 2.查询blog有关的用户
-        queryBlogUser(blog);
-        // 3.查询blog是否被点赞
-        isBlogLiked(blog);
+        // 2.查询blog有关的用户和是否被点赞
+        blogHydrator.hydrate(Collections.singletonList(blog));
         return Result.ok(blog);
     }
 
+    @Override
+    @Cached(value = "blog", key = "#id")
+    public Blog getBlogById(Long id) {
+        return getById(id);
+    }
+
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
-        Page<Blog> page = query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
-        return Result.ok(records);
+        // 1.从热门排行中查询一页笔记id ZREVRANGE blog:hot start end
+        List<Long> ids = blogHotRanking.page(current, SystemConstants.MAX_PAGE_SIZE);
+        if (ids == null) {
+            // 排行还没有生成，按点赞数查询数据库
+            List<Blog> records = query()
+                    .orderByDesc("liked")
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE))
+                    .getRecords();
+            blogHydrator.hydrate(records);
+            return Result.ok(records);
+        }
+        // 2.按排行的顺序查询笔记
+        return Result.ok(queryBlogsInOrder(ids));
+    }
+
+    @Override
+    public Result queryTrendingBlog(String window, Integer current) {
+        BlogTrending.Window w = BlogTrending.Window.of(window);
+        if (w == null) {
+            return Result.fail("不支持的时间窗口！");
+        }
+        // 1.从窗口的汇总中查询一页笔记id ZREVRANGE blog:trend:{window} start end
+        List<Long> ids = blogTrending.page(w, current, SystemConstants.MAX_PAGE_SIZE);
+        // 2.按排行的顺序查询笔记
+        return Result.ok(queryBlogsInOrder(ids));
+    }
+
+    /**
+     * 批量从缓存中查询笔记，未命中的一次查询数据库，按给定的顺序返回并填充用户和是否点赞，不存在的笔记跳过
+     */
+    private List<Blog> queryBlogsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Blog> blogMap = cacheClient.multiQuery(cacheProperties.getSpec("blog"), ids, Blog.class,
+                missing -> listByIds(missing).stream().collect(Collectors.toMap(Blog::getId, Function.identity())));
+        List<Blog> records = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Blog blog = blogMap.get(id);
+            if (blog != null) {
+                records.add(blog);
+            }
+        }
+        blogHydrator.hydrate(records);
+        return records;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Result queryHotBlogCursor(String cursor) {
+        // 1.按(liked, id)降序的游标分页，不用OFFSET扫描前面的行
+        CursorResult result = seekPage(new QueryWrapper<>(),
+                SeekOrder.by("liked", Blog::getLiked, Blog::getId, true), cursor, SystemConstants.MAX_PAGE_SIZE);
+        // 2.批量查询用户和是否点赞
+        blogHydrator.hydrate((List<Blog>) result.getList());
+        return Result.ok(result);
+    }
+
+    @Override
+    public List<Blog> queryTopBlogsOfShop(Long shopId, int size) {
+        // 1.店铺点赞最多的笔记 WHERE shop_id = ? ORDER BY liked DESC LIMIT ?，走(shop_id, liked)索引
+        List<Blog> blogs = query()
+                .eq("shop_id", shopId)
+                .orderByDesc("liked", "id")
+                .last("LIMIT " + size)
+                .list();
+        // 2.批量查询用户和是否点赞
+        blogHydrator.hydrate(blogs);
+        return blogs;
     }
 
     @Override
     public Result likeBlog(Long id) {
-        // 1.获取登录用户
+        // 1.查询笔记，通过代理对象调用走@Cached的缓存逻辑
+        Blog blog = ((IBlogService) AopContext.currentProxy()).getBlogById(id);
+        if (blog == null) {
+            return Result.fail("笔记不存在！");
+        }
+        // 2.获取登录用户
         Long userId = UserHolder.getUser().getId();
-        // 2.判断当前登录用户是否已经点赞
-        String key = BLOG_LIKED_KEY + id;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        if (score == null) {
-            // 3.如果未点赞，可以点赞
-            // 3.1.数据库点赞数 + 1
-            boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
-            // 3.2.保存用户到Redis的set集合  zadd key value score
-            if (isSuccess) {
-                stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
-            }
-        } else {
-            // 4.如果已点赞，取消点赞
-            // 4.1.数据库点赞数 -1
-            boolean isSuccess = update().setSql("liked = liked - 1").eq("id", id).update();
-            // 4.2.把用户从Redis的set集合移除
-            if (isSuccess) {
-                stringRedisTemplate.opsForZSet().remove(key, userId.toString());
-            }
+        // 3.一个脚本切换点赞状态并更新redis中的点赞数，数据库中的点赞数定期批量写回
+        BlogLikeCounter.Toggle toggle = blogLikeCounter.toggle(id, userId);
+        if (toggle == null) {
+            return Result.fail("笔记不存在！");
         }
+        // 4.更新热门排行和趋势
+        blog.setLiked((int) toggle.getCount());
+        blogHotRanking.update(blog);
+        blogTrending.record(id, toggle.isLiked() ? 1 : -1);
         return Result.ok();
     }
 
@@ -138,6 +222,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if(!isSuccess){
             return Result.fail("新增笔记失败!");
         }
+        // 2.1.加入热门排行
+        blogHotRanking.update(blog);
         // 3.查询笔记作者的所有粉丝 select * from tb_follow where follow_user_id = ?
         List<Follow> follows = followService.query().eq("follow_user_id", user.getId()).list();
         // 4.推送笔记id给所有粉丝
@@ -185,12 +271,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         String idStr = StrUtil.join(",", ids);
         List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
 
-        for (Blog blog : blogs) {
-            // 5.1.查询blog有关的用户
-            queryBlogUser(blog);
-            // 5.2.查询blog是否被点赞
-            isBlogLiked(blog);
-        }
+        // 5.1.批量查询blog有关的用户和是否被点赞
+        blogHydrator.hydrate(blogs);
 
         // 6.封装并返回
         ScrollResult r = new ScrollResult();
@@ -200,25 +282,4 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
         return Result.ok(r);
     }
-
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
-    }
-
-    private void isBlogLiked(Blog blog) {
-        // 1.获取登录用户
-        UserDTO user = UserHolder.getUser();
-        if (user == null) {
-            // 用户未登录，无需查询是否点赞
-            return;
-        }
-        Long userId = user.getId();
-        // 2.判断当前登录用户是否已经点赞
-        String key = "blog:liked:" + blog.getId();
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        blog.setIsLike(score != null);
-    }
 }
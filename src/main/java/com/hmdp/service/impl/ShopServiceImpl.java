@@ -1,27 +1,69 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopDetailDTO;
+import com.hmdp.dto.ShopCounter;
+import com.hmdp.dto.ShopFilter;
+import com.hmdp.dto.SuggestionDTO;
+import com.hmdp.entity.Blog;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.ShopMapper;
+import com.hmdp.config.ShopDetailProperties;
+import com.hmdp.service.IBlogService;
 import com.hmdp.service.IShopService;
-import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.CacheClient;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.service.SeekOrder;
+import com.hmdp.cache.CacheEvict;
+import com.hmdp.cache.GeoCellCache;
+import com.hmdp.cache.Cached;
+import com.hmdp.cache.ShopHashCache;
+import com.hmdp.event.ShopChangedEvent;
+import com.hmdp.index.GeoHit;
+import com.hmdp.index.GeoShopIndex;
+import com.hmdp.index.NameHit;
+import com.hmdp.index.ShopFilterIndex;
+import com.hmdp.index.ShopNameIndex;
+import com.hmdp.index.ShopSuggestIndex;
+import com.hmdp.utils.CursorUtils;
 import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.framework.AopContext;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.domain.geo.GeoReference;
+import org.springframework.data.redis.domain.geo.GeoShape;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -33,26 +75,58 @@ import static com.hmdp.utils.RedisConstants.*;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
+    /**
+     * 名称查询的游标中记录的查询方式：名称索引按(排序值, id)排序，数据库按id排序
+     */
+    private static final String NAME_CURSOR_INDEX = "index";
+    private static final String NAME_CURSOR_DB = "db";
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private CacheClient cacheClient;
+    private ShopHashCache shopHashCache;
 
-    @Override
-    public Result queryById(Long id) {
-        // 缓存空值解决缓存穿透
-        Shop shop = cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    @Resource
+    private GeoShopIndex geoShopIndex;
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
 
-        // 互斥锁解决缓存击穿
-//         Shop shop = cacheClient.queryWithMutex(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    @Resource
+    private ShopSuggestIndex shopSuggestIndex;
+
+    @Resource
+    private ShopFilterIndex shopFilterIndex;
+
+    @Resource
+    private GeoCellCache geoCellCache;
+
+    @Resource
+    private IShopTypeService shopTypeService;
 
-        // 逻辑过期解决缓存击穿
-//         Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+    @Resource
+    private IVoucherService voucherService;
 
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private ShopDetailProperties shopDetailProperties;
+
+    @Resource(name = "shopDetailExecutor")
+    private ExecutorService shopDetailExecutor;
+
+    @Resource
+    private ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public Result queryById(Long id) {
+        Shop shop = loadShop((IShopService) AopContext.currentProxy(), id);
         if (shop == null) {
             return Result.fail("店铺不存在！");
         }
@@ -60,20 +134,130 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
+    @Override
+    @Cached(value = "shop", key = "#id")
+    public Shop getShopById(Long id) {
+        return getById(id);
+    }
+
+    @Override
+    public Result queryShopDetail(Long id) {
+        // 1.并行查询店铺、优惠券、热门笔记；代理对象和登录用户都是线程变量，在请求线程中取出再带到线程池中
+        IShopService proxy = (IShopService) AopContext.currentProxy();
+        long deadline = System.nanoTime() + shopDetailProperties.getTimeout().toNanos();
+        CompletableFuture<Shop> shopFuture = submitDetailPart(() -> loadShop(proxy, id));
+        CompletableFuture<List<Voucher>> voucherFuture = submitDetailPart(() -> voucherService.listVoucherWithStock(id));
+        CompletableFuture<List<Blog>> blogFuture = submitDetailPart(
+                () -> blogService.queryTopBlogsOfShop(id, shopDetailProperties.getBlogSize()));
+        // 2.等待各部分，共用一个截止时间，总耗时约等于最慢的一部分；超时或失败的部分为空
+        ShopDetailDTO detail = new ShopDetailDTO();
+        detail.setShop(awaitDetailPart(shopFuture, deadline, "shop", detail));
+        detail.setVouchers(awaitDetailPart(voucherFuture, deadline, "vouchers", detail));
+        detail.setBlogs(awaitDetailPart(blogFuture, deadline, "blogs", detail));
+        // 3.店铺查询成功但不存在
+        if (detail.getShop() == null && !detail.getMissing().contains("shop")) {
+            return Result.fail("店铺不存在！");
+        }
+        return Result.ok(detail);
+    }
+
+    /**
+     * 查询店铺，通过代理对象调用，才能走@Cached的缓存逻辑，缓存策略在application.yaml的hmdp.cache.specs.shop中配置；
+     * 配置了hash结构时，使用hash缓存，一次HGETALL组装店铺
+     */
+    private Shop loadShop(IShopService proxy, Long id) {
+        return shopHashCache.isEnabled() ? shopHashCache.get(id, this::getById) : proxy.getShopById(id);
+    }
+
+    /**
+     * 在店铺详情的线程池中执行，带上当前的登录用户；线程池满时返回失败的future
+     */
+    private <T> CompletableFuture<T> submitDetailPart(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(UserHolder.wrap(supplier), shopDetailExecutor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * 等待店铺详情的一部分，到截止时间还没完成或者执行失败时返回null，并记录到missing中
+     */
+    private <T> T awaitDetailPart(CompletableFuture<T> future, long deadline, String part, ShopDetailDTO detail) {
+        try {
+            return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            detail.getMissing().add(part);
+        } catch (TimeoutException e) {
+            log.warn("查询店铺详情超时，部分：{}", part);
+            detail.getMissing().add(part);
+        } catch (ExecutionException e) {
+            log.error("查询店铺详情失败，部分：{}", part, e.getCause());
+            detail.getMissing().add(part);
+        }
+        return null;
+    }
+
+    @Override
+    @Transactional
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库
+        save(shop);
+        // 2.事务提交后更新店铺索引
+        eventPublisher.publishEvent(new ShopChangedEvent(null, getById(shop.getId())));
+        return Result.ok(shop.getId());
+    }
+
     @Override
     @Transactional
+    @CacheEvict(value = "shop", key = "#shop.id")
     public Result updateByShop(Shop shop) {
         Long id = shop.getId();
         if (id == null) {
             return Result.fail("店铺id不能为空");
         }
-        // 1.更新数据库
+        // 1.hash结构的缓存只修改计数器时原地自增，加锁读取修改前的店铺，保证增量基于真实的旧值
+        List<ShopCounter> counters = shopHashCache.isEnabled() ? changedCounters(shop) : null;
+        Shop before = counters != null ? query().eq("id", id).last("FOR UPDATE").one() : getById(id);
+        if (before == null) {
+            return Result.fail("店铺不存在！");
+        }
+        // 2.更新数据库，事务提交后由@CacheEvict删除缓存
         updateById(shop);
-        // 2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + shop.getId());
+        if (counters == null) {
+            shopHashCache.invalidate(id);
+        } else {
+            for (ShopCounter counter : counters) {
+                Integer old = counter.valueOf(before);
+                long delta = (long) counter.valueOf(shop) - (old == null ? 0 : old);
+                if (delta != 0) {
+                    shopHashCache.increment(id, counter, delta);
+                }
+            }
+        }
+        // 3.事务提交后更新店铺索引
+        eventPublisher.publishEvent(new ShopChangedEvent(before, getById(id)));
         return Result.ok();
     }
 
+    /**
+     * 修改的字段全部是计数器时返回这些计数器，否则返回null
+     */
+    private static List<ShopCounter> changedCounters(Shop shop) {
+        Set<String> fields = BeanUtil.beanToMap(shop, false, true).keySet();
+        fields.remove("id");
+        List<ShopCounter> counters = new ArrayList<>(fields.size());
+        for (ShopCounter counter : ShopCounter.values()) {
+            if (fields.remove(counter.getField())) {
+                counters.add(counter);
+            }
+        }
+        return fields.isEmpty() && !counters.isEmpty() ? counters : null;
+    }
+
     @Override
     public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
         // 1.判断是否需要根据坐标查询
@@ -90,42 +274,354 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
         int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
 
-        // 3.查询redis、按照距离排序、分页(只能从0开始)。结果：shopId、distance
+        // 3.查询附近的店铺、按照距离排序、分页(只能从0开始)。结果：shopId、distance
+        // 同一个位置格子内的用户共用缓存的候选店铺，按各自的坐标重新计算距离
+        List<GeoHit> hits = geoCellCache.nearby("type:" + typeId, x, y, SystemConstants.GEO_SEARCH_RADIUS, end,
+                (cx, cy, radius, limit) -> searchNearby(typeId, cx, cy, radius, limit, -1, Long.MIN_VALUE, 0));
+        if (hits.size() <= from) {
+            // 没有下一页了，结束
+            return Result.ok(Collections.emptyList());
+        }
+        // 4.截取 from ~ end的部分，5.根据id查询Shop（先查本地短期缓存），6.返回
+        return Result.ok(queryCachedShopsWithDistance(hits.subList(from, hits.size())));
+    }
+
+    @Override
+    public Result queryShopByTypeCursor(Integer typeId, Double x, Double y, String cursor) {
+        // 没有坐标，按id的keyset分页查询数据库
+        if (x == null || y == null) {
+            QueryWrapper<Shop> wrapper = new QueryWrapper<Shop>().eq("type_id", typeId);
+            return Result.ok(seekPage(wrapper, SeekOrder.byId(Shop::getId, false), cursor, SystemConstants.DEFAULT_PAGE_SIZE));
+        }
+        // 1.解析游标：上一页最后一个店铺的距离和id、使用的查询半径、已经返回的数量
+        double afterDistance = -1;
+        long afterId = Long.MIN_VALUE;
+        double radius = SystemConstants.GEO_SEARCH_RADIUS;
+        int offset = 0;
+        if (StrUtil.isNotBlank(cursor)) {
+            try {
+                String[] parts = CursorUtils.decode(cursor, 4);
+                afterDistance = Double.parseDouble(parts[0]);
+                afterId = Long.parseLong(parts[1]);
+                radius = Double.parseDouble(parts[2]);
+                offset = Integer.parseInt(parts[3]);
+            } catch (IllegalArgumentException e) {
+                return Result.fail("无效的游标");
+            }
+        }
+        // 2.从游标处继续查询，不够一页时扩大查询半径
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        List<GeoHit> hits = searchNearby(typeId, x, y, radius, size, afterDistance, afterId, offset);
+        while (hits.size() < size && radius < SystemConstants.GEO_SEARCH_MAX_RADIUS) {
+            radius = Math.min(radius * 2, SystemConstants.GEO_SEARCH_MAX_RADIUS);
+            hits = searchNearby(typeId, x, y, radius, size, afterDistance, afterId, offset);
+        }
+        // 3.根据id查询Shop
+        CursorResult result = new CursorResult();
+        result.setList(hits.isEmpty() ? Collections.emptyList() : queryShopsWithDistance(hits));
+        // 4.最大半径内也不够一页，说明没有下一页了
+        if (hits.size() == size) {
+            GeoHit last = hits.get(hits.size() - 1);
+            result.setCursor(CursorUtils.encode(last.getDistance(), last.getId(), radius, offset + hits.size()));
+        }
+        return Result.ok(result);
+    }
+
+    @Override
+    public Result queryNearbyShops(Double x, Double y, Integer current) {
+        current = current == null || current < 1 ? 1 : current;
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * size;
+        if (end > SystemConstants.MAX_SEARCH_RESULTS) {
+            return Result.fail("最多只能查询前" + SystemConstants.MAX_SEARCH_RESULTS + "个店铺");
+        }
+        // 1.查询所有类型中最近的前current页，同一个位置格子内的用户共用缓存的合并结果
+        List<GeoHit> hits = geoCellCache.nearby("all", x, y, SystemConstants.GEO_SEARCH_RADIUS, end, this::searchNearbyAllTypes);
+        int from = (current - 1) * size;
+        if (hits.size() <= from) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2.截取 from ~ end的部分，根据id查询Shop（先查本地短期缓存）
+        return Result.ok(queryCachedShopsWithDistance(hits.subList(from, hits.size())));
+    }
+
+    @Override
+    public Result queryShopByName(String name, Integer current, String cursor) {
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        boolean indexed = StrUtil.isNotBlank(name) && shopNameIndex.isReady();
+        // 1.游标分页，游标格式为 查询方式,排序值,id
+        if (cursor != null) {
+            String[] after = StrUtil.isBlank(cursor) ? null : CursorUtils.decode(cursor, 3);
+            // 翻页过程中保持第一页的查询方式，排序相同才不会跳过或重复：数据库的游标在索引加载完成后继续查询数据库，
+            // 索引的游标遇到索引还没加载完成的节点时无法继续，从数据库的第一页重新开始
+            if (after != null && NAME_CURSOR_DB.equals(after[0])) {
+                indexed = false;
+            } else if (after != null && !indexed) {
+                after = null;
+            }
+            return Result.ok(indexed ? searchByNameIndex(name, after, size) : seekByName(name, after, size));
+        }
+        // 2.没有关键字或者名称索引还没加载完成，按页码查询数据库
+        if (!indexed) {
+            QueryWrapper<Shop> wrapper = new QueryWrapper<Shop>().like(StrUtil.isNotBlank(name), "name", name);
+            return Result.ok(page(new Page<>(current, size), wrapper).getRecords());
+        }
+        // 3.页码分页：取前current页，截取最后一页
+        int from = (current - 1) * size;
+        List<NameHit> hits = shopNameIndex.search(name, current * size);
+        if (hits.size() <= from) {
+            return Result.ok(Collections.emptyList());
+        }
+        return Result.ok(queryShopsInOrder(hits.subList(from, hits.size()).stream().map(NameHit::getId).collect(Collectors.toList())));
+    }
+
+    /**
+     * 在名称索引中从上一页最后一个店铺的(排序值, id)之后继续查询
+     */
+    private CursorResult searchByNameIndex(String name, String[] after, int size) {
+        long afterRank = after == null ? Long.MIN_VALUE : Long.parseLong(after[1]);
+        long afterId = after == null ? Long.MIN_VALUE : Long.parseLong(after[2]);
+        List<NameHit> hits = shopNameIndex.search(name, size + 1, afterRank, afterId);
+        CursorResult result = new CursorResult();
+        if (hits.size() > size) {
+            hits = hits.subList(0, size);
+            NameHit last = hits.get(size - 1);
+            result.setCursor(CursorUtils.encode(NAME_CURSOR_INDEX, last.getRank(), last.getId()));
+        }
+        result.setList(queryShopsInOrder(hits.stream().map(NameHit::getId).collect(Collectors.toList())));
+        return result;
+    }
+
+    /**
+     * 在数据库中按id从上一页最后一个店铺之后继续查询，返回的游标加上查询方式
+     */
+    private CursorResult seekByName(String name, String[] after, int size) {
+        QueryWrapper<Shop> wrapper = new QueryWrapper<Shop>().like(StrUtil.isNotBlank(name), "name", name);
+        String seekCursor = after == null ? "" : CursorUtils.encode(after[1], after[2]);
+        CursorResult result = seekPage(wrapper, SeekOrder.byId(Shop::getId, false), seekCursor, size);
+        if (result.getCursor() != null) {
+            String[] last = CursorUtils.decode(result.getCursor(), 2);
+            result.setCursor(CursorUtils.encode(NAME_CURSOR_DB, last[0], last[1]));
+        }
+        return result;
+    }
+
+    @Override
+    public Result suggest(String prefix, Integer size) {
+        if (StrUtil.isBlank(prefix)) {
+            return Result.ok(Collections.emptyList());
+        }
+        prefix = prefix.trim();
+        int limit = Math.max(1, Math.min(size, SystemConstants.MAX_SUGGEST_SIZE));
+        // 1.索引加载完成，在内存中查询
+        if (shopSuggestIndex.isReady()) {
+            return Result.ok(shopSuggestIndex.suggest(prefix, limit));
+        }
+        // 2.还没加载完成，按名称前缀查询数据库 SELECT name, sold, score FROM tb_shop WHERE name LIKE 'prefix%'
+        List<SuggestionDTO> suggestions = query()
+                .select("name", "sold", "score")
+                .likeRight("name", prefix)
+                .orderByDesc("sold")
+                .last("LIMIT " + limit)
+                .list()
+                .stream()
+                .map(shop -> new SuggestionDTO(shop.getName(), SuggestionDTO.TYPE_NAME, ShopSuggestIndex.weight(shop)))
+                .collect(Collectors.toList());
+        return Result.ok(suggestions);
+    }
+
+    @Override
+    public Result searchShops(ShopFilter filter) {
+        boolean hasLocation = filter.getX() != null && filter.getY() != null;
+        // 1.校验排序方式，默认传了坐标时按距离，否则按评分
+        ShopFilterIndex.Sort sort = StrUtil.isBlank(filter.getSortBy())
+                ? (hasLocation ? ShopFilterIndex.Sort.DISTANCE : ShopFilterIndex.Sort.SCORE)
+                : ShopFilterIndex.Sort.parse(filter.getSortBy());
+        if (sort == null) {
+            return Result.fail("不支持的排序方式");
+        }
+        if (sort == ShopFilterIndex.Sort.DISTANCE && !hasLocation) {
+            return Result.fail("按距离排序需要传坐标");
+        }
+        if (hasLocation && filter.getRadius() == null) {
+            filter.setRadius(SystemConstants.GEO_SEARCH_RADIUS);
+        }
+        int current = filter.getCurrent() == null || filter.getCurrent() < 1 ? 1 : filter.getCurrent();
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        if (current * size > SystemConstants.MAX_SEARCH_RESULTS) {
+            return Result.fail("最多只能查询前" + SystemConstants.MAX_SEARCH_RESULTS + "个店铺");
+        }
+        if (!shopFilterIndex.isReady()) {
+            return Result.fail("店铺索引加载中，请稍后再试");
+        }
+        // 2.在内存中筛选排序，取前current页
+        LocalTime now = LocalTime.now();
+        List<GeoHit> hits = shopFilterIndex.search(filter, sort, now.getHour() * 60 + now.getMinute(), current * size);
+        int from = (current - 1) * size;
+        if (hits.size() <= from) {
+            return Result.ok(Collections.emptyList());
+        }
+        hits = hits.subList(from, hits.size());
+        // 3.根据id查询店铺
+        if (hasLocation) {
+            return Result.ok(queryShopsWithDistance(hits));
+        }
+        return Result.ok(queryShopsInOrder(hits.stream().map(GeoHit::getId).collect(Collectors.toList())));
+    }
+
+    /**
+     * 按给定的顺序根据id查询店铺
+     */
+    private List<Shop> queryShopsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return query().in("id", ids).last("ORDER BY FIELD(id," + StrUtil.join(",", ids) + ")").list();
+    }
+
+    /**
+     * 查询附近的店铺，按(距离, id)升序，只返回排在(afterDistance, afterId)之后的店铺。
+     * 内存索引已加载时在本地查询，否则查询redis GEO（redis不支持从指定位置继续查询，需要多查询skip个再过滤），结果带店铺坐标
+     */
+    private List<GeoHit> searchNearby(Integer typeId, Double x, Double y, double radius, int limit,
+                                      double afterDistance, long afterId, int skip) {
+        // 1.内存索引
+        if (geoShopIndex.isReady()) {
+            return geoShopIndex.nearby(typeId, x, y, radius, limit, afterDistance, afterId);
+        }
+        // 2.redis GEOSEARCH key BYLONLAT x y BYRADIUS 10 WITHDISTANCE WITHCOORD
         String key = SHOP_GEO_KEY + typeId;
-        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo() // GEOSEARCH key BYLONLAT x y BYRADIUS 10 WITHDISTANCE
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo()
                 .search(
                         key,
                         GeoReference.fromCoordinate(x, y),
-                        new Distance(5000),
-                        RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(end)
+                        new Distance(radius),
+                        RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().includeCoordinates().limit(skip + limit)
                 );
-        // 4.解析出id
         if (results == null) {
-            return Result.ok(Collections.emptyList());
+            return Collections.emptyList();
         }
-        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list = results.getContent();
-        if (list.size() <= from) {
-            // 没有下一页了，结束
-            return Result.ok(Collections.emptyList());
+        // 3.解析出id、距离和坐标，过滤掉游标之前的部分
+        List<GeoHit> hits = new ArrayList<>(results.getContent().size());
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results.getContent()) {
+            long shopId = Long.parseLong(result.getContent().getName());
+            double distance = result.getDistance().getValue();
+            if (distance > afterDistance || (distance == afterDistance && shopId > afterId)) {
+                Point point = result.getContent().getPoint();
+                hits.add(new GeoHit(shopId, distance, point.getX(), point.getY()));
+            }
+        }
+        hits.sort(Comparator.comparingDouble(GeoHit::getDistance).thenComparingLong(GeoHit::getId));
+        return hits.size() > limit ? hits.subList(0, limit) : hits;
+    }
+
+    /**
+     * 查询所有类型中附近的店铺，按(距离, id)升序，结果带店铺坐标。
+     * 每个类型的前limit个各自有序，用堆做多路归并取前limit个；内存索引没有加载完成时，所有类型的GEOSEARCH用一个pipeline发送
+     */
+    private List<GeoHit> searchNearbyAllTypes(double x, double y, double radius, int limit) {
+        List<ShopType> types = shopTypeService.listShopTypes();
+        if (types == null || types.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<List<GeoHit>> lists = new ArrayList<>(types.size());
+        // 1.内存索引
+        if (geoShopIndex.isReady()) {
+            for (ShopType type : types) {
+                lists.add(geoShopIndex.nearby(type.getId(), x, y, radius, limit));
+            }
+            return mergeByDistance(lists, limit);
+        }
+        // 2.一个pipeline发送 GEOSEARCH shop:geo:{typeId} FROMLONLAT x y BYRADIUS radius m ASC COUNT limit WITHCOORD WITHDIST
+        GeoReference<byte[]> reference = GeoReference.fromCoordinate(x, y);
+        GeoShape shape = GeoShape.byRadius(new Distance(radius));
+        RedisGeoCommands.GeoSearchCommandArgs args = RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs()
+                .includeDistance().includeCoordinates().sortAscending().limit(limit);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ShopType type : types) {
+                byte[] key = (SHOP_GEO_KEY + type.getId()).getBytes(StandardCharsets.UTF_8);
+                connection.geoSearch(key, reference, shape, args);
+            }
+            return null;
+        }, null);
+        // 3.解析出id、距离和坐标
+        for (Object result : results) {
+            if (!(result instanceof GeoResults)) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            List<GeoResult<RedisGeoCommands.GeoLocation<byte[]>>> content =
+                    ((GeoResults<RedisGeoCommands.GeoLocation<byte[]>>) result).getContent();
+            List<GeoHit> hits = new ArrayList<>(content.size());
+            for (GeoResult<RedisGeoCommands.GeoLocation<byte[]>> geoResult : content) {
+                long shopId = Long.parseLong(new String(geoResult.getContent().getName(), StandardCharsets.UTF_8));
+                Point point = geoResult.getContent().getPoint();
+                hits.add(new GeoHit(shopId, geoResult.getDistance().getValue(), point.getX(), point.getY()));
+            }
+            // redis按距离排序，距离相同时按id排序
+            hits.sort(Comparator.comparingDouble(GeoHit::getDistance).thenComparingLong(GeoHit::getId));
+            lists.add(hits);
+        }
+        return mergeByDistance(lists, limit);
+    }
+
+    /**
+     * 多路归并若干个按(距离, id)升序的列表，取前limit个：堆中保存每个列表当前的位置，每次取出最近的一个
+     */
+    private static List<GeoHit> mergeByDistance(List<List<GeoHit>> lists, int limit) {
+        Comparator<GeoHit> order = Comparator.comparingDouble(GeoHit::getDistance).thenComparingLong(GeoHit::getId);
+        // {列表下标, 列表中的位置}
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(lists.size(), 1),
+                (a, b) -> order.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1])));
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                heap.offer(new int[]{i, 0});
+            }
+        }
+        List<GeoHit> merged = new ArrayList<>(limit);
+        while (merged.size() < limit && !heap.isEmpty()) {
+            int[] top = heap.poll();
+            List<GeoHit> list = lists.get(top[0]);
+            merged.add(list.get(top[1]));
+            if (++top[1] < list.size()) {
+                heap.offer(top);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 按距离的顺序查询店铺，并填充距离，店铺详情先查附近查询的本地短期缓存
+     */
+    private List<Shop> queryCachedShopsWithDistance(List<GeoHit> hits) {
+        List<Long> ids = new ArrayList<>(hits.size());
+        Map<Long, Double> distanceMap = new HashMap<>(hits.size() * 2);
+        for (GeoHit hit : hits) {
+            ids.add(hit.getId());
+            distanceMap.put(hit.getId(), hit.getDistance());
+        }
+        List<Shop> shops = geoCellCache.getShops(ids, this::queryShopsInOrder);
+        for (Shop shop : shops) {
+            shop.setDistance(distanceMap.get(shop.getId()));
+        }
+        return shops;
+    }
+
+    /**
+     * 按距离的顺序查询店铺，并填充距离
+     */
+    private List<Shop> queryShopsWithDistance(List<GeoHit> hits) {
+        List<Long> ids = new ArrayList<>(hits.size());
+        Map<Long, Double> distanceMap = new HashMap<>(hits.size());
+        for (GeoHit hit : hits) {
+            ids.add(hit.getId());
+            distanceMap.put(hit.getId(), hit.getDistance());
         }
-        // 4.1.截取 from ~ end的部分
-        List<Long> ids = new ArrayList<>(list.size());
-        Map<String, Distance> distanceMap = new HashMap<>(list.size());
-        list.stream().skip(from).forEach(result -> {
-            // 4.2.获取店铺id
-            String shopIdStr = result.getContent().getName();
-            ids.add(Long.valueOf(shopIdStr));
-            // 4.3.获取距离
-            Distance distance = result.getDistance();
-            distanceMap.put(shopIdStr, distance);
-        });
-        // 5.根据id查询Shop
         String idStr = StrUtil.join(",", ids);
         List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
         for (Shop shop : shops) {
-            shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
+            shop.setDistance(distanceMap.get(shop.getId()));
         }
-        // 6.返回
-        return Result.ok(shops);
+        return shops;
     }
 }
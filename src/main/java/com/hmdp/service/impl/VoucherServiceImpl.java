@@ -1,18 +1,33 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.cache.CacheEvict;
+import com.hmdp.cache.CacheInvalidator;
+import com.hmdp.cache.CacheProperties;
+import com.hmdp.cache.Cached;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
+import com.hmdp.mapper.SeckillVoucherMapper;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SystemConstants;
+import org.springframework.aop.framework.AopContext;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
@@ -30,19 +45,67 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheProperties cacheProperties;
+
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
         // 返回结果
-        return Result.ok(vouchers);
+        return Result.ok(listVoucherWithStock(shopId));
+    }
+
+    @Override
+    public List<Voucher> listVoucherWithStock(Long shopId) {
+        // 1.通过代理对象查询优惠券信息，走@Cached的缓存逻辑，每次命中都是新的对象，可以直接修改
+        List<Voucher> vouchers = ((IVoucherService) AopContext.currentProxy()).listVoucherOfShop(shopId);
+        // 2.秒杀券的库存以redis为准（下单时在redis中扣减，数据库异步扣减），一次MGET查询所有秒杀券的库存
+        List<Voucher> seckillVouchers = vouchers.stream().filter(v -> v.getStock() != null).collect(Collectors.toList());
+        if (seckillVouchers.isEmpty()) {
+            return vouchers;
+        }
+        List<String> keys = seckillVouchers.stream().map(v -> SECKILL_STOCK_KEY + v.getId()).collect(Collectors.toList());
+        List<String> stocks = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (stocks == null) {
+            return vouchers;
+        }
+        // 3.redis中没有库存的保留数据库中的库存
+        for (int i = 0; i < seckillVouchers.size(); i++) {
+            String stock = stocks.get(i);
+            if (StrUtil.isNotBlank(stock)) {
+                seckillVouchers.get(i).setStock(Integer.valueOf(stock));
+            }
+        }
+        return vouchers;
+    }
+
+    /**
+     * 店铺优惠券的静态信息，库存是数据库中的，不是实时库存，由listVoucherWithStock覆盖
+     */
+    @Override
+    @Cached(value = "voucher-list", key = "#shopId")
+    public List<Voucher> listVoucherOfShop(Long shopId) {
+        return getBaseMapper().queryVoucherOfShop(shopId);
+    }
+
+    @Override
+    @CacheEvict(value = "voucher-list", key = "#voucher.shopId")
+    public void addVoucher(Voucher voucher) {
+        // 保存优惠券，删除店铺的优惠券列表缓存
+        save(voucher);
     }
 
     @Override
     @Transactional
+    @CacheEvict(value = "voucher-list", key = "#voucher.shopId")
     public void addSeckillVoucher(Voucher voucher) {
         // 保存优惠券
         save(voucher);
@@ -56,4 +119,92 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         // 保存秒杀库存到redis中,用于异步秒杀
         stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
     }
+
+    @Override
+    @Transactional
+    public Result addSeckillVouchers(List<Voucher> vouchers) {
+        // 1.校验整批数据，有一个不合法则全部不保存
+        if (vouchers == null || vouchers.isEmpty()) {
+            return Result.fail("优惠券不能为空");
+        }
+        if (vouchers.size() > SystemConstants.MAX_VOUCHER_BATCH_SIZE) {
+            return Result.fail("一次最多新增" + SystemConstants.MAX_VOUCHER_BATCH_SIZE + "个优惠券");
+        }
+        for (int i = 0; i < vouchers.size(); i++) {
+            String error = validateSeckillVoucher(vouchers.get(i));
+            if (error != null) {
+                return Result.fail("第" + (i + 1) + "个优惠券" + error);
+            }
+        }
+        // 2.多行INSERT写入tb_voucher，每条语句VOUCHER_INSERT_BATCH_SIZE行，回填自增id
+        for (Voucher voucher : vouchers) {
+            voucher.setType(1);
+            if (voucher.getStatus() == null) {
+                voucher.setStatus(1);
+            }
+        }
+        int batchSize = SystemConstants.VOUCHER_INSERT_BATCH_SIZE;
+        for (int from = 0; from < vouchers.size(); from += batchSize) {
+            getBaseMapper().insertBatch(vouchers.subList(from, Math.min(from + batchSize, vouchers.size())));
+        }
+        // 3.多行INSERT写入tb_seckill_voucher
+        List<SeckillVoucher> seckillVouchers = new ArrayList<>(vouchers.size());
+        for (Voucher voucher : vouchers) {
+            SeckillVoucher seckillVoucher = new SeckillVoucher();
+            seckillVoucher.setVoucherId(voucher.getId());
+            seckillVoucher.setStock(voucher.getStock());
+            seckillVoucher.setBeginTime(voucher.getBeginTime());
+            seckillVoucher.setEndTime(voucher.getEndTime());
+            seckillVouchers.add(seckillVoucher);
+        }
+        for (int from = 0; from < seckillVouchers.size(); from += batchSize) {
+            seckillVoucherMapper.insertBatch(seckillVouchers.subList(from, Math.min(from + batchSize, seckillVouchers.size())));
+        }
+        // 4.事务提交后删除涉及店铺的优惠券列表缓存
+        String keyPrefix = cacheProperties.getSpec("voucher-list").getKeyPrefix();
+        vouchers.stream().map(Voucher::getShopId).distinct().forEach(shopId -> cacheInvalidator.invalidate(keyPrefix + shopId));
+        // 5.事务提交后用一个pipeline把库存写入redis，用于异步秒杀
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Voucher voucher : vouchers) {
+                        connection.set((SECKILL_STOCK_KEY + voucher.getId()).getBytes(StandardCharsets.UTF_8),
+                                voucher.getStock().toString().getBytes(StandardCharsets.UTF_8));
+                    }
+                    return null;
+                });
+            }
+        });
+        // 6.按请求的顺序返回优惠券id
+        List<Long> ids = new ArrayList<>(vouchers.size());
+        for (Voucher voucher : vouchers) {
+            ids.add(voucher.getId());
+        }
+        return Result.ok(ids);
+    }
+
+    /**
+     * 校验秒杀券，返回错误信息，合法时返回null
+     */
+    private static String validateSeckillVoucher(Voucher voucher) {
+        if (voucher == null) {
+            return "不能为空";
+        }
+        if (voucher.getShopId() == null || StrUtil.isBlank(voucher.getTitle())) {
+            return "缺少店铺或标题";
+        }
+        if (voucher.getPayValue() == null || voucher.getActualValue() == null || voucher.getPayValue() < 0) {
+            return "金额不正确";
+        }
+        if (voucher.getStock() == null || voucher.getStock() <= 0) {
+            return "库存必须大于0";
+        }
+        LocalDateTime begin = voucher.getBeginTime();
+        LocalDateTime end = voucher.getEndTime();
+        if (begin == null || end == null || !begin.isBefore(end)) {
+            return "秒杀时间不正确";
+        }
+        return null;
+    }
 }
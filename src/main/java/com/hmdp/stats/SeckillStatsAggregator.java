@@ -0,0 +1,241 @@
+package com.hmdp.stats;
+
+import com.hmdp.dto.SeckillStatsDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_STATS_ACTIVE_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STATS_KEY;
+
+/**
+ * 秒杀实时统计：秒杀脚本按优惠券按秒累加计数（seckill:stats:{voucherId}:{second}），
+ * 这里每秒把刚结束的那一秒读到内存中，按滑动窗口汇总，查询和推送都不访问数据库。
+ * 每个节点各自汇总，读取的是同一份redis计数，结果相同
+ */
+@Slf4j
+@Component
+public class SeckillStatsAggregator {
+
+    /**
+     * 计数字段，与seckill.lua中的一致
+     */
+    private static final String[] FIELDS = {"attempt", "soldOut", "duplicate", "success"};
+    private static final int ATTEMPT = 0;
+    private static final int SOLD_OUT = 1;
+    private static final int DUPLICATE = 2;
+    private static final int SUCCESS = 3;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private SeckillStatsProperties properties;
+
+    /**
+     * 每个优惠券最近的每秒计数
+     */
+    private final Map<Long, Ring> rings = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅了实时推送的连接
+     */
+    private final Map<Long, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * 已经汇总到的秒，-1表示还没有汇总过
+     */
+    private volatile long aggregatedSecond = -1;
+
+    @Scheduled(fixedRate = 1000)
+    public void aggregate() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        int retention = maxWindow();
+        // 1.计算要读取的秒：上次汇总之后到已经结束并且稳定的一秒，最多读取最大窗口的长度
+        long to = System.currentTimeMillis() / 1000 - 1 - properties.getSettleSeconds();
+        long from = Math.max(aggregatedSecond + 1, to - retention + 1);
+        if (from > to) {
+            return;
+        }
+        try {
+            // 2.这段时间内有秒杀的优惠券 ZRANGEBYSCORE seckill:stats:active from +inf
+            Set<String> active = stringRedisTemplate.opsForZSet().rangeByScore(SECKILL_STATS_ACTIVE_KEY, from, Double.POSITIVE_INFINITY);
+            List<Long> voucherIds = new ArrayList<>();
+            if (active != null) {
+                for (String id : active) {
+                    voucherIds.add(Long.valueOf(id));
+                }
+            }
+            // 3.一个pipeline读取每个优惠券每一秒的计数 HGETALL seckill:stats:{voucherId}:{second}
+            if (!voucherIds.isEmpty()) {
+                List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Long voucherId : voucherIds) {
+                        for (long second = from; second <= to; second++) {
+                            connection.hGetAll((SECKILL_STATS_KEY + voucherId + ":" + second).getBytes(StandardCharsets.UTF_8));
+                        }
+                    }
+                    return null;
+                });
+                int i = 0;
+                for (Long voucherId : voucherIds) {
+                    Ring ring = rings.computeIfAbsent(voucherId, id -> new Ring(retention));
+                    for (long second = from; second <= to; second++) {
+                        ring.set(second, parse(results.get(i++)));
+                    }
+                }
+            }
+            // 4.清理长时间没有秒杀的优惠券
+            rings.entrySet().removeIf(e -> e.getValue().lastActiveSecond() <= to - retention
+                    && !subscribers.containsKey(e.getKey()));
+            stringRedisTemplate.opsForZSet().removeRangeByScore(SECKILL_STATS_ACTIVE_KEY,
+                    Double.NEGATIVE_INFINITY, to - properties.getKeyTtl().getSeconds());
+            aggregatedSecond = to;
+        } catch (Exception e) {
+            // 下次从没有汇总的那一秒继续
+            log.error("汇总秒杀统计失败", e);
+            return;
+        }
+        // 5.推送给订阅的连接
+        subscribers.forEach((voucherId, emitters) -> {
+            SeckillStatsDTO stats = snapshot(voucherId);
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().name("stats").data(stats, MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    // 连接已经断开
+                    emitter.completeWithError(e);
+                    unsubscribe(voucherId, emitter);
+                }
+            }
+        });
+    }
+
+    /**
+     * 查询优惠券当前各个窗口的统计
+     */
+    public SeckillStatsDTO snapshot(Long voucherId) {
+        long to = aggregatedSecond;
+        Ring ring = rings.get(voucherId);
+        List<SeckillStatsDTO.Window> windows = new ArrayList<>(properties.getWindows().size());
+        for (Integer seconds : properties.getWindows()) {
+            long[] counts = ring == null || to < 0 ? new long[FIELDS.length] : ring.sum(to - seconds + 1, to);
+            SeckillStatsDTO.Window window = new SeckillStatsDTO.Window();
+            window.setSeconds(seconds);
+            window.setAttempts(counts[ATTEMPT]);
+            window.setSoldOut(counts[SOLD_OUT]);
+            window.setDuplicate(counts[DUPLICATE]);
+            window.setSuccess(counts[SUCCESS]);
+            window.setAttemptsPerSecond((double) counts[ATTEMPT] / seconds);
+            windows.add(window);
+        }
+        SeckillStatsDTO stats = new SeckillStatsDTO();
+        stats.setVoucherId(voucherId);
+        stats.setSecond(to < 0 ? null : to);
+        stats.setWindows(windows);
+        return stats;
+    }
+
+    /**
+     * 订阅优惠券的实时统计，每秒推送一次
+     */
+    public SseEmitter subscribe(Long voucherId) {
+        SseEmitter emitter = new SseEmitter(properties.getStreamTimeout().toMillis());
+        subscribers.computeIfAbsent(voucherId, id -> new CopyOnWriteArraySet<>()).add(emitter);
+        emitter.onCompletion(() -> unsubscribe(voucherId, emitter));
+        emitter.onTimeout(() -> unsubscribe(voucherId, emitter));
+        try {
+            // 先推送一次当前的统计
+            emitter.send(SseEmitter.event().name("stats").data(snapshot(voucherId), MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+            unsubscribe(voucherId, emitter);
+        }
+        return emitter;
+    }
+
+    private void unsubscribe(Long voucherId, SseEmitter emitter) {
+        subscribers.computeIfPresent(voucherId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    private int maxWindow() {
+        return properties.getWindows().isEmpty() ? 1 : Collections.max(properties.getWindows());
+    }
+
+    private static long[] parse(Object result) {
+        long[] counts = new long[FIELDS.length];
+        if (!(result instanceof Map)) {
+            return counts;
+        }
+        Map<?, ?> hash = (Map<?, ?>) result;
+        for (int i = 0; i < FIELDS.length; i++) {
+            Object value = hash.get(FIELDS[i]);
+            if (value != null) {
+                counts[i] = Long.parseLong(value.toString());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 一个优惠券最近若干秒的计数，按秒取模保存在环形数组中
+     */
+    private static class Ring {
+        private final long[] seconds;
+        private final long[][] counts;
+        private long lastActiveSecond = -1;
+
+        private Ring(int size) {
+            this.seconds = new long[size];
+            this.counts = new long[size][];
+            Arrays.fill(seconds, -1);
+        }
+
+        private synchronized void set(long second, long[] values) {
+            int slot = (int) Math.floorMod(second, (long) seconds.length);
+            seconds[slot] = second;
+            counts[slot] = values;
+            if (values[ATTEMPT] > 0) {
+                lastActiveSecond = Math.max(lastActiveSecond, second);
+            }
+        }
+
+        private synchronized long[] sum(long from, long to) {
+            long[] total = new long[FIELDS.length];
+            for (long second = Math.max(from, to - seconds.length + 1); second <= to; second++) {
+                int slot = (int) Math.floorMod(second, (long) seconds.length);
+                if (seconds[slot] != second) {
+                    continue;
+                }
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += counts[slot][i];
+                }
+            }
+            return total;
+        }
+
+        private synchronized long lastActiveSecond() {
+            return lastActiveSecond;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.hmdp.stats;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 秒杀实时统计的配置，对应application.yaml中的hmdp.seckill-stats
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill-stats")
+public class SeckillStatsProperties {
+    /**
+     * 是否汇总统计数据，秒杀脚本中的计数不受影响
+     */
+    private boolean enabled = true;
+    /**
+     * 每秒计数的hash在redis中的有效期
+     */
+    private Duration keyTtl = Duration.ofMinutes(10);
+    /**
+     * 汇总的滑动窗口（秒），最大的窗口决定内存中保留的秒数
+     */
+    private List<Integer> windows = Arrays.asList(1, 60, 300);
+    /**
+     * 一秒结束后再等多久才读取它的计数，容忍各节点之间的时钟误差
+     */
+    private int settleSeconds = 2;
+    /**
+     * SSE连接的超时时间，到期后客户端重新连接
+     */
+    private Duration streamTimeout = Duration.ofMinutes(30);
+}
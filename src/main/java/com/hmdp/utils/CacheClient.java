@@ -1,21 +1,48 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.hmdp.cache.CacheProperties;
+import com.hmdp.cache.CacheStrategy;
+import com.hmdp.cache.HotKeyDetector;
+import com.hmdp.cache.LocalCache;
+import com.hmdp.cache.codec.CacheValueSerializer;
+import com.hmdp.cache.codec.CacheValueSerializer.CacheValue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.time.LocalDateTime;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
 import static com.hmdp.utils.RedisConstants.CACHE_NULL_UNIT;
+import static com.hmdp.utils.RedisConstants.CACHE_STALE_KEY;
 
 /**
  * @PROJECT_NAME: hm-dianping
@@ -30,95 +57,293 @@ import static com.hmdp.utils.RedisConstants.CACHE_NULL_UNIT;
 public class CacheClient {
     private final StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 缓存值使用CacheValueSerializer编码为字节保存
+     */
+    private final RedisTemplate<String, byte[]> bytesRedisTemplate;
+
+    private final CacheValueSerializer serializer;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    private final MeterRegistry meterRegistry;
+
     private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    /**
+     * 缓存未命中时查询数据库的线程池，并发数由每个缓存名称的舱壁限制，请求线程最多等待dbTimeout
+     */
+    private static final ExecutorService DB_FALLBACK_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "cache-db-fallback");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 查询数据库的舱壁，每个缓存名称一个
+     */
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * 本地缓存（L1），每个缓存名称一个
+     */
+    private final Map<String, LocalCache<byte[]>> localCaches = new ConcurrentHashMap<>();
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedisTemplate<String, byte[]> bytesRedisTemplate,
+                       CacheValueSerializer serializer, HotKeyDetector hotKeyDetector, MeterRegistry meterRegistry) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.bytesRedisTemplate = bytesRedisTemplate;
+        this.serializer = serializer;
+        this.hotKeyDetector = hotKeyDetector;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
-     * 向redis中插入String类型的数据，并设置实际的过期时间
+     * 向redis中插入数据，并设置实际的过期时间
      */
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        bytesRedisTemplate.opsForValue().set(key, serializer.serialize(value), time, unit);
     }
 
     /**
-     * 向向redis中插入String类型的数据，不设置过期时间，而是设置逻辑上的过期时间（在对象中封装一个过期时间，但是在redis不设置过期时间）
+     * 向redis中插入数据，不设置过期时间，而是设置逻辑上的过期时间（在缓存值的头部带上过期时间，但是在redis不设置过期时间）
      */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
         // 设置逻辑过期
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        if (unit == TimeUnit.MINUTES) {
-            redisData.setExpireTime(LocalDateTime.now().plusMinutes(unit.toMinutes(time)));
-        }else if (unit == TimeUnit.SECONDS){
-            redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        }else{
-            redisData.setExpireTime(LocalDateTime.now().plusHours(unit.toHours(time)));
-        }
+        long expireAt = System.currentTimeMillis() + unit.toMillis(time);
         // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        bytesRedisTemplate.opsForValue().set(key, serializer.serializeWithExpire(value, expireAt));
+    }
+
+    /**
+     * 删除缓存，同时删除当前节点的本地缓存
+     */
+    public void delete(String key) {
+        bytesRedisTemplate.delete(key);
+        localCaches.values().forEach(localCache -> localCache.remove(key));
+        hotKeyDetector.removeLocal(key);
+    }
+
+    /**
+     * 批量删除缓存，一次DEL命令删除所有key，同时删除当前节点的本地缓存
+     */
+    public void deleteAll(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        bytesRedisTemplate.delete(keys);
+        for (String key : keys) {
+            localCaches.values().forEach(localCache -> localCache.remove(key));
+            hotKeyDetector.removeLocal(key);
+        }
+    }
+
+    /**
+     * 按照缓存规则查询缓存，缓存策略、key前缀、有效期、本地缓存等都由规则决定
+     */
+    public <R, ID> R query(CacheProperties.Spec spec, ID id, Type type, Function<ID, R> dbFallback) {
+        if (spec.getStrategy() == CacheStrategy.MUTEX) {
+            return doQueryWithMutex(spec, id, type, dbFallback);
+        }
+        if (spec.getStrategy() == CacheStrategy.LOGICAL_EXPIRE) {
+            return doQueryWithLogicalExpire(spec, id, type, dbFallback);
+        }
+        return doQueryWithPassThrough(spec, id, type, dbFallback);
+    }
+
+    /**
+     * 批量查询缓存：先查本地缓存，其余的一次MGET，未命中的一次交给dbFallback批量查询数据库，
+     * 查到的用一个pipeline写回缓存（不存在的写入空值）。不区分缓存策略，也不走舱壁，用于列表页这类一次需要很多个对象的查询
+     * @param dbFallback 根据id批量查询，返回id到对象的映射，不存在的id不放入映射
+     * @return id到对象的映射，不存在的id不放入映射
+     */
+    public <R, ID> Map<ID, R> multiQuery(CacheProperties.Spec spec, Collection<ID> ids, Type type,
+                                         Function<List<ID>, Map<ID, R>> dbFallback) {
+        Map<ID, R> result = new HashMap<>(ids.size() * 2);
+        List<ID> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (distinctIds.isEmpty()) {
+            return result;
+        }
+        // 1.先查本地缓存
+        LocalCache<byte[]> localCache = localCache(spec);
+        List<ID> remoteIds = new ArrayList<>(distinctIds.size());
+        List<String> remoteKeys = new ArrayList<>(distinctIds.size());
+        List<byte[]> values = new ArrayList<>(distinctIds.size());
+        for (ID id : distinctIds) {
+            String key = spec.getKeyPrefix() + id;
+            byte[] value = localCache == null ? null : localCache.get(key);
+            if (value == null) {
+                remoteIds.add(id);
+                remoteKeys.add(key);
+            } else {
+                collect(result, id, key, value, type);
+            }
+        }
+        // 2.其余的一次MGET
+        List<ID> missingIds = new ArrayList<>();
+        if (!remoteKeys.isEmpty()) {
+            List<byte[]> remoteValues = bytesRedisTemplate.opsForValue().multiGet(remoteKeys);
+            for (int i = 0; i < remoteIds.size(); i++) {
+                byte[] value = remoteValues == null ? null : remoteValues.get(i);
+                if (value == null || !collect(result, remoteIds.get(i), remoteKeys.get(i), value, type)) {
+                    missingIds.add(remoteIds.get(i));
+                    continue;
+                }
+                if (localCache != null && value.length > 0) {
+                    localCache.put(remoteKeys.get(i), value, spec.getL1Ttl().toMillis());
+                }
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return result;
+        }
+        // 3.未命中的批量查询数据库，用一个pipeline写回缓存和宽限副本，不存在的写入空值
+        Map<ID, R> loaded = dbFallback.apply(missingIds);
+        bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missingIds) {
+                String key = spec.getKeyPrefix() + id;
+                R r = loaded.get(id);
+                if (r == null) {
+                    if (spec.isCacheNull()) {
+                        connection.set(key.getBytes(StandardCharsets.UTF_8), new byte[0],
+                                Expiration.from(CACHE_NULL_TTL, CACHE_NULL_UNIT), RedisStringCommands.SetOption.UPSERT);
+                    }
+                    continue;
+                }
+                write(connection, spec, key, serializer.serialize(r));
+            }
+            return null;
+        });
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * 批量写入缓存，用于启动预热：一个pipeline写入所有值，和查询时写回的一样带上宽限副本；
+     * 逻辑过期的缓存在值的头部带上过期时间，不设置redis的过期时间
+     * @param values id到缓存值的映射
+     */
+    public <ID> void setAll(CacheProperties.Spec spec, Map<ID, ?> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        boolean logicalExpire = spec.getStrategy() == CacheStrategy.LOGICAL_EXPIRE;
+        long expireAt = System.currentTimeMillis() + spec.getTtl().toMillis();
+        List<String> keys = new ArrayList<>(values.size());
+        bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((id, value) -> {
+                String key = spec.getKeyPrefix() + id;
+                keys.add(key);
+                if (logicalExpire) {
+                    connection.set(key.getBytes(StandardCharsets.UTF_8), serializer.serializeWithExpire(value, expireAt));
+                } else {
+                    write(connection, spec, key, serializer.serialize(value));
+                }
+            });
+            return null;
+        });
+        LocalCache<byte[]> localCache = localCache(spec);
+        for (String key : keys) {
+            hotKeyDetector.removeLocal(key);
+            if (localCache != null) {
+                localCache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 解码一个批量查询命中的缓存值放入结果，返回是否命中（空值也算命中，但不放入结果）
+     */
+    private <R, ID> boolean collect(Map<ID, R> result, ID id, String key, byte[] value, Type type) {
+        if (value.length == 0) {
+            return true;
+        }
+        CacheValue cached = decode(key, value, type, false);
+        if (cached == null) {
+            return false;
+        }
+        result.put(id, cached.getValue());
+        return true;
     }
 
     /**
      * 使用“缓存空值”解决缓存穿透问题的代码的封装
      */
-    public <R,ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
-        String key = keyPrefix + id;
+    public <R,ID> R queryWithPassThrough(String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
+        return doQueryWithPassThrough(spec(keyPrefix, null, time, unit), id, type, dbFallback);
+    }
+
+    /**
+     * 缓存击穿：高并发访问、缓存重建时间长的热点数据过期
+     * 使用“逻辑过期”解决缓存击穿问题的代码的封装
+     */
+    public <R, ID> R queryWithLogicalExpire(String keyPrefix, String lockKeyPrefix,ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        return doQueryWithLogicalExpire(spec(keyPrefix, lockKeyPrefix, time, unit), id, type, dbFallback);
+    }
+
+    /**
+     * 缓存击穿：高并发访问、缓存重建时间长的热点数据过期
+     * 使用“互斥锁”解决缓存击穿问题的代码的封装（在queryWithPassThrough的代码基础上增加使用“互斥锁”解决缓存击穿问题的代码）
+     */
+    public <R, ID> R queryWithMutex(String keyPrefix, String lockKeyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        return doQueryWithMutex(spec(keyPrefix, lockKeyPrefix, time, unit), id, type, dbFallback);
+    }
+
+    private <R, ID> R doQueryWithPassThrough(CacheProperties.Spec spec, ID id, Type type, Function<ID, R> dbFallback) {
+        String key = spec.getKeyPrefix() + id;
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = get(spec, key);
         // 2.判断是否存在
-        if (StrUtil.isNotBlank(json)) {
+        CacheValue cached = decode(key, bytes, type, false);
+        if (cached != null) {
             // 3.存在，直接返回
-            return JSONUtil.toBean(json, type);
+            return cached.getValue();
         }
         // 4.判断命中的是否是空值
-        if (json != null) {
+        if (bytes != null && bytes.length == 0) {
             // 查询到缓存的空值，说明发生缓存穿透，直接返回，而不用查询数据库，减轻数据库压力
             return null;
         }
 
-        // 5.缓存中不存在，根据id查询数据库
-        R r = dbFallback.apply(id);
+        // 5.缓存中不存在，根据id查询数据库，数据库繁忙或超时则返回宽限副本中的旧数据
+        DbResult<R> loaded = loadFromDb(spec, key, id, type, dbFallback);
+        if (loaded.stale) {
+            return loaded.value;
+        }
+        R r = loaded.value;
         // 6.数据库中不存在
         if (r == null) {
             // 将空值写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, CACHE_NULL_UNIT);
+            setNull(spec, key);
             // 直接返回
             return null;
         }
         // 7.数据库中存在，写入redis
-        this.set(key, r, time, unit);
+        set(spec, key, r);
         // 8.返回
         return r;
     }
 
-    /**
-     * 缓存击穿：高并发访问、缓存重建时间长的热点数据过期
-     * 使用“逻辑过期”解决缓存击穿问题的代码的封装
-     */
-    public <R, ID> R queryWithLogicalExpire(String keyPrefix, String lockKeyPrefix,ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
-        String key = keyPrefix + id;
+    private <R, ID> R doQueryWithLogicalExpire(CacheProperties.Spec spec, ID id, Type type, Function<ID, R> dbFallback) {
+        String key = spec.getKeyPrefix() + id;
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
-        // 2.判断缓存数据是否存在
-        if (StrUtil.isBlank(json)) {
+        byte[] bytes = get(spec, key);
+        // 2.判断缓存数据是否存在，过期时间在缓存值的头部，只需解析一次
+        CacheValue cached = decode(key, bytes, type, true);
+        if (cached == null) {
             // 3.不存在，直接返回，一般都会提前将热点数据加入缓存
             return null;
         }
-        // 4.redis中存在数据，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
+        // 4.redis中存在数据
+        R r = cached.getValue();
         // 5.判断是否过期
-        if(expireTime.isAfter(LocalDateTime.now())) {
+        if(cached.getExpireAt() > System.currentTimeMillis()) {
             // 6.未过期，直接返回店铺信息
             return r;
         }
         // 7.已过期，需要缓存重建
         // 7.1.获取互斥锁
-        String lockKey = lockKeyPrefix + id;
+        String lockKey = spec.getLockPrefix() + id;
         boolean isLock = tryLock(lockKey);
         // 7.2.判断是否获取锁成功
         if (isLock){
@@ -127,8 +352,12 @@ public class CacheClient {
                 try {
                     // 查询数据库
                     R newR = dbFallback.apply(id);
-                    // 重建缓存
-                    this.setWithLogicalExpire(key, newR, time, unit);
+                    // 重建缓存，数据已经不存在则直接删除
+                    if (newR == null) {
+                        delete(key);
+                    } else {
+                        setWithLogicalExpire(spec, key, newR);
+                    }
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }finally {
@@ -141,27 +370,24 @@ public class CacheClient {
         return r;
     }
 
-    /**
-     * 缓存击穿：高并发访问、缓存重建时间长的热点数据过期
-     * 使用“互斥锁”解决缓存击穿问题的代码的封装（在queryWithPassThrough的代码基础上增加使用“互斥锁”解决缓存击穿问题的代码）
-     */
-    public <R, ID> R queryWithMutex(String keyPrefix, String lockKeyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
-        String key = keyPrefix + id;
+    private <R, ID> R doQueryWithMutex(CacheProperties.Spec spec, ID id, Type type, Function<ID, R> dbFallback) {
+        String key = spec.getKeyPrefix() + id;
         // 1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = get(spec, key);
         // 2.判断缓存中是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
+        CacheValue cached = decode(key, bytes, type, false);
+        if (cached != null) {
             // 3.存在，直接返回
-            return JSONUtil.toBean(shopJson, type);
+            return cached.getValue();
         }
         // 4.判断命中的是否是空值
-        if (shopJson != null) {
+        if (bytes != null && bytes.length == 0) {
             // 是空值则直接返回
             return null;
         }
         // 5.实现缓存重建
         // 5.1.获取互斥锁
-        String lockKey = lockKeyPrefix + id;
+        String lockKey = spec.getLockPrefix() + id;
         R r = null;
         try {
             boolean isLock = tryLock(lockKey);
@@ -169,19 +395,23 @@ public class CacheClient {
             if (!isLock) {
                 // 5.3.获取锁失败，休眠并重试
                 Thread.sleep(50);
-                return queryWithMutex(keyPrefix, lockKeyPrefix, id, type, dbFallback, time, unit);
+                return doQueryWithMutex(spec, id, type, dbFallback);
+            }
+            // 5.4.获取锁成功，根据id查询数据库，数据库繁忙或超时则返回宽限副本中的旧数据
+            DbResult<R> loaded = loadFromDb(spec, key, id, type, dbFallback);
+            if (loaded.stale) {
+                return loaded.value;
             }
-            // 5.4.获取锁成功，根据id查询数据库
-            r = dbFallback.apply(id);
+            r = loaded.value;
             // 6.如果数据库中不存在数据
             if (r == null) {
                 // 将空值写入redis
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+                setNull(spec, key);
                 // 直接返回
                 return null;
             }
             // 7.存在，将数据写入redis
-            this.set(key, r, time, unit);
+            set(spec, key, r);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }finally {
@@ -192,6 +422,205 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 将旧的参数形式转换为缓存规则
+     */
+    private static CacheProperties.Spec spec(String keyPrefix, String lockKeyPrefix, Long time, TimeUnit unit) {
+        CacheProperties.Spec spec = new CacheProperties.Spec();
+        spec.setKeyPrefix(keyPrefix);
+        spec.setLockPrefix(lockKeyPrefix);
+        spec.setTtl(Duration.ofMillis(unit.toMillis(time)));
+        return spec;
+    }
+
+    /**
+     * 先查本地缓存，再查redis，redis中查到的数据回填到本地缓存
+     * 未配置本地缓存的key如果被探测为热点key，同样会使用短有效期的本地缓存
+     */
+    private byte[] get(CacheProperties.Spec spec, String key) {
+        LocalCache<byte[]> localCache = localCache(spec);
+        if (localCache != null) {
+            byte[] value = localCache.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        boolean hot = hotKeyDetector.record(key);
+        if (hot) {
+            byte[] value = hotKeyDetector.getLocal(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        byte[] value = bytesRedisTemplate.opsForValue().get(key);
+        if (hot && value != null) {
+            hotKeyDetector.putLocal(key, value);
+        }
+        if (localCache != null && value != null) {
+            // 空值在本地缓存中的有效期不能超过redis中的有效期
+            long ttl = value.length == 0
+                    ? Math.min(spec.getL1Ttl().toMillis(), CACHE_NULL_UNIT.toMillis(CACHE_NULL_TTL))
+                    : spec.getL1Ttl().toMillis();
+            localCache.put(key, value, ttl);
+        }
+        return value;
+    }
+
+    /**
+     * 解码缓存值，不存在、空值或者数据无法解析时返回null，无法解析的数据当作未命中处理，之后会被新数据覆盖
+     */
+    private CacheValue decode(String key, byte[] bytes, Type type, boolean logicalExpire) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return serializer.deserialize(bytes, type, logicalExpire);
+        } catch (RuntimeException e) {
+            log.warn("缓存数据解析失败，key：{}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 在舱壁的限制下查询数据库：并发已满等待超时、查询超时或者查询失败时，返回宽限副本中的旧数据，
+     * 没有宽限副本则抛出异常。
+     * <p>
+     * 查询默认在独立线程中执行，请求线程的登录用户（UserHolder）会带过去，其他ThreadLocal不会；
+     * 调用方在事务中时，独立线程看不到事务中还没有提交的数据，也不会加入事务，因此在当前线程中查询，只受舱壁限制，不能超时返回
+     */
+    private <R, ID> DbResult<R> loadFromDb(CacheProperties.Spec spec, String key, ID id, Type type, Function<ID, R> dbFallback) {
+        Bulkhead bulkhead = bulkhead(spec);
+        long timeout = spec.getDbTimeout().toMillis();
+        long start = System.currentTimeMillis();
+        // 1.获取舱壁的许可
+        boolean acquired;
+        try {
+            acquired = bulkhead.semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (!acquired) {
+            // 2.并发已满
+            bulkhead.rejected.increment();
+            return serveStale(spec, key, type, bulkhead, new RuntimeException("查询数据库的并发已满：" + bulkhead.name));
+        }
+        // 3.在事务中，在当前线程查询
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            try {
+                return new DbResult<>(dbFallback.apply(id), false);
+            } catch (RuntimeException e) {
+                return serveStale(spec, key, type, bulkhead, e);
+            } finally {
+                bulkhead.semaphore.release();
+            }
+        }
+        // 4.在独立线程中查询，带上登录用户，许可在查询真正结束后才释放，超时的查询仍然占用舱壁
+        Supplier<R> task = UserHolder.wrap(() -> dbFallback.apply(id));
+        Future<R> future;
+        try {
+            future = DB_FALLBACK_EXECUTOR.submit(() -> {
+                try {
+                    return task.get();
+                } finally {
+                    bulkhead.semaphore.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            bulkhead.semaphore.release();
+            throw e;
+        }
+        try {
+            long remaining = Math.max(timeout - (System.currentTimeMillis() - start), 1);
+            return new DbResult<>(future.get(remaining, TimeUnit.MILLISECONDS), false);
+        } catch (TimeoutException e) {
+            // 5.查询超时
+            bulkhead.timeouts.increment();
+            return serveStale(spec, key, type, bulkhead, e);
+        } catch (ExecutionException e) {
+            // 6.查询失败
+            return serveStale(spec, key, type, bulkhead, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private <R> DbResult<R> serveStale(CacheProperties.Spec spec, String key, Type type, Bulkhead bulkhead, Throwable cause) {
+        byte[] bytes = spec.getStaleGrace().isZero() ? null : bytesRedisTemplate.opsForValue().get(CACHE_STALE_KEY + key);
+        CacheValue stale = decode(key, bytes, type, false);
+        if (stale == null) {
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("查询数据库失败：" + key, cause);
+        }
+        bulkhead.staleServed.increment();
+        log.warn("查询数据库失败，返回旧数据，key：{}，原因：{}", key, cause.toString());
+        return new DbResult<>(stale.getValue(), true);
+    }
+
+    private Bulkhead bulkhead(CacheProperties.Spec spec) {
+        String name = spec.getName() != null ? spec.getName() : spec.getKeyPrefix();
+        return bulkheads.computeIfAbsent(name, n -> new Bulkhead(n, spec.getDbMaxConcurrency(), meterRegistry));
+    }
+
+    /**
+     * 写入缓存，同时写入有效期更长的宽限副本
+     */
+    private void set(CacheProperties.Spec spec, String key, Object value) {
+        byte[] bytes = serializer.serialize(value);
+        if (spec.getStaleGrace().isZero()) {
+            bytesRedisTemplate.opsForValue().set(key, bytes, spec.getTtl().toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                write(connection, spec, key, bytes);
+                return null;
+            });
+        }
+        hotKeyDetector.removeLocal(key);
+        LocalCache<byte[]> localCache = localCache(spec);
+        if (localCache != null) {
+            localCache.put(key, bytes, spec.getL1Ttl().toMillis());
+        }
+    }
+
+    /**
+     * 在pipeline中写入缓存值，宽限时间不为0时同时写入有效期更长的宽限副本
+     */
+    private void write(RedisConnection connection, CacheProperties.Spec spec, String key, byte[] bytes) {
+        long ttl = spec.getTtl().toMillis();
+        connection.set(key.getBytes(StandardCharsets.UTF_8), bytes,
+                Expiration.milliseconds(ttl), RedisStringCommands.SetOption.UPSERT);
+        if (!spec.getStaleGrace().isZero()) {
+            connection.set((CACHE_STALE_KEY + key).getBytes(StandardCharsets.UTF_8), bytes,
+                    Expiration.milliseconds(ttl + spec.getStaleGrace().toMillis()), RedisStringCommands.SetOption.UPSERT);
+        }
+    }
+
+    private void setNull(CacheProperties.Spec spec, String key) {
+        if (!spec.isCacheNull()) {
+            return;
+        }
+        bytesRedisTemplate.opsForValue().set(key, new byte[0], CACHE_NULL_TTL, CACHE_NULL_UNIT);
+    }
+
+    private void setWithLogicalExpire(CacheProperties.Spec spec, String key, Object value) {
+        setWithLogicalExpire(key, value, spec.getTtl().toMillis(), TimeUnit.MILLISECONDS);
+        hotKeyDetector.removeLocal(key);
+        LocalCache<byte[]> localCache = localCache(spec);
+        if (localCache != null) {
+            localCache.remove(key);
+        }
+    }
+
+    private LocalCache<byte[]> localCache(CacheProperties.Spec spec) {
+        if (!spec.isL1() || spec.getName() == null) {
+            return null;
+        }
+        return localCaches.computeIfAbsent(spec.getName(), name -> new LocalCache<>(spec.getL1MaxSize()));
+    }
+
     /**
      * 用于缓存击穿时缓存重建时的互斥锁，使用redis中的setnx命令实现
      * @param key
@@ -209,4 +638,39 @@ public class CacheClient {
     private void unlock(String key){
         stringRedisTemplate.delete(key);
     }
+
+    private static class DbResult<R> {
+        private final R value;
+        /**
+         * 是否是宽限副本中的旧数据，旧数据不写回缓存
+         */
+        private final boolean stale;
+
+        private DbResult(R value, boolean stale) {
+            this.value = value;
+            this.stale = stale;
+        }
+    }
+
+    /**
+     * 查询数据库的舱壁及其监控指标
+     */
+    private static class Bulkhead {
+        private final String name;
+        private final Semaphore semaphore;
+        private final Counter rejected;
+        private final Counter timeouts;
+        private final Counter staleServed;
+
+        private Bulkhead(String name, int permits, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.semaphore = new Semaphore(permits);
+            this.rejected = meterRegistry.counter("cache.bulkhead.rejected", "cache", name);
+            this.timeouts = meterRegistry.counter("cache.bulkhead.timeout", "cache", name);
+            this.staleServed = meterRegistry.counter("cache.stale.served", "cache", name);
+            Gauge.builder("cache.bulkhead.available", semaphore, Semaphore::availablePermits)
+                    .tag("cache", name)
+                    .register(meterRegistry);
+        }
+    }
 }
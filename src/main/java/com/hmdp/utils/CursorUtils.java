@@ -0,0 +1,29 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 分页游标的编码，游标对客户端是不透明的字符串，内容是以","拼接的若干个值再做base64url编码
+ */
+public class CursorUtils {
+
+    public static String encode(Object... parts) {
+        String raw = StrUtil.join(",", parts);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标，格式不对时抛出IllegalArgumentException
+     */
+    public static String[] decode(String cursor, int parts) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] values = raw.split(",", -1);
+        if (values.length != parts) {
+            throw new IllegalArgumentException("无效的游标：" + cursor);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,91 @@
+package com.hmdp.utils;
+
+/**
+ * geohash编码，把经纬度量化到格子：经度、纬度交替二分，每5位用一个base32字符表示，
+ * 字符数越多格子越小，例如7位约150米x150米，相邻的坐标得到相同的编码
+ */
+public class GeoHashUtils {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    /**
+     * 计算经纬度所在格子的geohash
+     * @param precision 字符数，1~12
+     */
+    public static String encode(double x, double y, int precision) {
+        double minX = -180, maxX = 180;
+        double minY = -90, maxY = 90;
+        char[] hash = new char[precision];
+        boolean even = true;
+        for (int i = 0; i < precision; i++) {
+            int value = 0;
+            for (int bit = 0; bit < 5; bit++) {
+                // 偶数位二分经度，奇数位二分纬度
+                if (even) {
+                    double mid = (minX + maxX) / 2;
+                    if (x >= mid) {
+                        value = (value << 1) | 1;
+                        minX = mid;
+                    } else {
+                        value <<= 1;
+                        maxX = mid;
+                    }
+                } else {
+                    double mid = (minY + maxY) / 2;
+                    if (y >= mid) {
+                        value = (value << 1) | 1;
+                        minY = mid;
+                    } else {
+                        value <<= 1;
+                        maxY = mid;
+                    }
+                }
+                even = !even;
+            }
+            hash[i] = BASE32[value];
+        }
+        return new String(hash);
+    }
+
+    /**
+     * 解码出geohash格子的范围
+     * @return {最小经度, 最小纬度, 最大经度, 最大纬度}
+     */
+    public static double[] bounds(String hash) {
+        double minX = -180, maxX = 180;
+        double minY = -90, maxY = 90;
+        boolean even = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int value = indexOf(hash.charAt(i));
+            for (int bit = 4; bit >= 0; bit--) {
+                boolean one = ((value >> bit) & 1) == 1;
+                if (even) {
+                    double mid = (minX + maxX) / 2;
+                    if (one) {
+                        minX = mid;
+                    } else {
+                        maxX = mid;
+                    }
+                } else {
+                    double mid = (minY + maxY) / 2;
+                    if (one) {
+                        minY = mid;
+                    } else {
+                        maxY = mid;
+                    }
+                }
+                even = !even;
+            }
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == c) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("无效的geohash：" + c);
+    }
+}
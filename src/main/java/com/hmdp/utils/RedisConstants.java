@@ -17,12 +17,26 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TYPE_TTL = 30L;
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:";
 
+    public static final String CACHE_STALE_KEY = "stale:";
+    public static final String CACHE_HOT_KEY_CHANNEL = "cache:hot-key";
+    public static final String CACHE_GEO_CELL_EVICT_CHANNEL = "cache:geo-cell:evict";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final String LOCK_SHOP_VALUE = "lock";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_STATS_KEY = "seckill:stats:";
+    public static final String SECKILL_STATS_ACTIVE_KEY = "seckill:stats:active";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKE_COUNT_KEY = "blog:like:count";
+    public static final String BLOG_LIKE_DIRTY_KEY = "blog:like:dirty";
+    public static final String BLOG_LIKE_ACTIVE_KEY = "blog:like:active";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_HOT_DIRTY_KEY = "blog:hot:dirty";
+    public static final String LOCK_BLOG_HOT_KEY = "lock:blog:hot";
+    public static final String BLOG_TREND_KEY = "blog:trend:";
+    public static final String BLOG_TREND_HOUR_KEY = "blog:trend:hour:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
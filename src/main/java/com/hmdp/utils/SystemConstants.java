@@ -5,4 +5,14 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    // 输入提示最多返回的数量
+    public static final int MAX_SUGGEST_SIZE = 20;
+    // 多条件筛选最多翻到前多少个店铺
+    public static final int MAX_SEARCH_RESULTS = 1000;
+    // 附近店铺的默认查询半径和扩大后的最大半径（米）
+    public static final double GEO_SEARCH_RADIUS = 5000;
+    public static final double GEO_SEARCH_MAX_RADIUS = 50000;
+    // 批量新增秒杀券一次最多的数量，以及每条多行INSERT语句的行数
+    public static final int MAX_VOUCHER_BATCH_SIZE = 5000;
+    public static final int VOUCHER_INSERT_BATCH_SIZE = 500;
 }
@@ -2,6 +2,8 @@ package com.hmdp.utils;
 
 import com.hmdp.dto.UserDTO;
 
+import java.util.function.Supplier;
+
 public class UserHolder {
     private static final ThreadLocal<UserDTO> tl = new ThreadLocal<>();
 
@@ -16,4 +18,24 @@ public class UserHolder {
     public static void removeUser(){
         tl.remove();
     }
+
+    /**
+     * 把当前线程的登录用户带到其他线程执行的任务中，任务结束后清除
+     */
+    public static <T> Supplier<T> wrap(Supplier<T> supplier){
+        UserDTO user = tl.get();
+        return () -> {
+            UserDTO previous = tl.get();
+            tl.set(user);
+            try {
+                return supplier.get();
+            } finally {
+                if (previous == null) {
+                    tl.remove();
+                } else {
+                    tl.set(previous);
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,14 @@
+-- 更新一篇笔记的热度
+-- KEYS[1] 热门排行，KEYS[2] 重新计算的锁，KEYS[3] 重新计算期间热度变化的笔记
+-- ARGV[1] 笔记id，ARGV[2] 热度（为空时从排行中删除），ARGV[3] 变化记录的有效期（秒）
+if (ARGV[2] == '') then
+    redis.call('zrem', KEYS[1], ARGV[1])
+else
+    redis.call('zadd', KEYS[1], ARGV[2], ARGV[1])
+end
+-- 正在重新计算，临时排行中可能是旧的热度，记录下来，替换排行后重新写入
+if (redis.call('exists', KEYS[2]) == 1) then
+    redis.call('sadd', KEYS[3], ARGV[1])
+    redis.call('expire', KEYS[3], ARGV[3])
+end
+return 1
@@ -0,0 +1,31 @@
+-- 切换用户对笔记的点赞状态，同时更新redis中的点赞数和待写回数据库的笔记
+-- KEYS[1]：点赞用户 blog:liked:{blogId}，KEYS[2]：点赞数 blog:like:count，KEYS[3]：待写回的笔记 blog:like:dirty，
+-- KEYS[4]：点赞数最后变化的时间 blog:like:active
+-- ARGV[1]：笔记id，ARGV[2]：用户id，ARGV[3]：当前时间（毫秒）
+local blogId = ARGV[1]
+local userId = ARGV[2]
+local now = ARGV[3]
+
+-- 1.点赞数还没有从数据库加载，由调用方加载后重试
+if(redis.call('hexists', KEYS[2], blogId) == 0) then
+    return {-1, 0}
+end
+-- 2.切换点赞状态
+local liked
+local count
+if(redis.call('zscore', KEYS[1], userId) == false) then
+    -- 2.1.未点赞，点赞 zadd blog:liked:{blogId} now userId
+    redis.call('zadd', KEYS[1], now, userId)
+    count = redis.call('hincrby', KEYS[2], blogId, 1)
+    liked = 1
+else
+    -- 2.2.已点赞，取消点赞
+    redis.call('zrem', KEYS[1], userId)
+    count = redis.call('hincrby', KEYS[2], blogId, -1)
+    liked = 0
+end
+-- 3.记录待写回的笔记，分数保留最早没有写回的时间
+redis.call('zadd', KEYS[3], 'NX', now, blogId)
+-- 4.记录最后变化的时间，很久没有变化的点赞数写回后从redis中删除
+redis.call('zadd', KEYS[4], now, blogId)
+return {liked, count}
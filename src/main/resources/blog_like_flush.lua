@@ -0,0 +1,19 @@
+-- 点赞数写回数据库后，把点赞数没有再变化的笔记从待写回的集合中删除，变化了的等待下次写回；
+-- 再删除已经写回并且很久没有变化的笔记的点赞数，hash不会无限增长，之后点赞时从数据库重新加载
+-- KEYS[1]：点赞数 blog:like:count，KEYS[2]：待写回的笔记 blog:like:dirty，KEYS[3]：最后变化的时间 blog:like:active
+-- ARGV[1]：最后变化早于这个时间（毫秒）的笔记可以删除，ARGV[2]：最多删除的笔记数量，之后是笔记id、写回的点赞数，成对出现
+local removed = 0
+for i = 3, #ARGV, 2 do
+    if(redis.call('hget', KEYS[1], ARGV[i]) == ARGV[i + 1]) then
+        removed = removed + redis.call('zrem', KEYS[2], ARGV[i])
+    end
+end
+-- 删除很久没有变化的点赞数，还没有写回的保留
+local cold = redis.call('zrangebyscore', KEYS[3], '-inf', '(' .. ARGV[1], 'LIMIT', 0, ARGV[2])
+for _, blogId in ipairs(cold) do
+    if(redis.call('zscore', KEYS[2], blogId) == false) then
+        redis.call('hdel', KEYS[1], blogId)
+        redis.call('zrem', KEYS[3], blogId)
+    end
+end
+return removed
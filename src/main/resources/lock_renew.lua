@@ -0,0 +1,6 @@
+-- 比较线程标示与锁中的标示是否一致
+if (redis.call('get', KEYS[1]) == ARGV[1]) then
+    -- 延长锁的有效期 pexpire key ttl
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
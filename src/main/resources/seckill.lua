@@ -5,22 +5,37 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 1.3.订单id
 local orderId = ARGV[3]
+-- 1.4.当前时间（秒），统计数据的有效期（秒）
+local second = ARGV[4]
+local statsTtl = tonumber(ARGV[5])
 
 -- 2.数据key
 -- 2.1.库存key
 local stockKey = 'seckill:stock:' .. voucherId
 -- 2.2.订单key
 local orderKey = 'seckill:order:' .. voucherId
+-- 2.3.统计key，每个优惠券每秒一个hash：attempt、soldOut、duplicate、success
+local statsKey = 'seckill:stats:' .. voucherId .. ':' .. second
+
+-- 记录一次秒杀的结果，并记录最近有秒杀的优惠券 ZADD seckill:stats:active second voucherId
+local function stat(field)
+    redis.call('hincrby', statsKey, 'attempt', 1)
+    redis.call('hincrby', statsKey, field, 1)
+    redis.call('expire', statsKey, statsTtl)
+    redis.call('zadd', 'seckill:stats:active', second, voucherId)
+end
 
 -- 3.脚本业务
 -- 3.1.判断库存是否充足 get stockKey
 if(tonumber(redis.call('get', stockKey)) <= 0) then
     -- 3.2.库存不足，返回1
+    stat('soldOut')
     return 1
 end
 -- 3.2.判断用户是否下单 SISMEMBER orderKey userId
 if(redis.call('sismember', orderKey, userId) == 1) then
     -- 3.3.存在，说明是重复下单，返回2
+    stat('duplicate')
     return 2
 end
 -- 3.4.扣库存 incrby stockKey -1
@@ -29,4 +44,5 @@ redis.call('incrby', stockKey, -1)
 redis.call('sadd', orderKey, userId)
 -- 3.6.发送消息到stream消息队列中， XADD stream.orders * k1 v1 k2 v2 ...
 redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+stat('success')
 return 0
\ No newline at end of file
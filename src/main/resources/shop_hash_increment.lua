@@ -0,0 +1,11 @@
+-- KEYS[1] 店铺缓存，KEYS[2] 计数器版本
+-- ARGV[1] 计数器字段，ARGV[2] 增量（事务回滚时为0），ARGV[3] 计数器版本的有效期（毫秒）
+-- 一次计数器变化结束：正在变化的数量减一，版本加一
+redis.call('hincrby', KEYS[2], 'pending', -1)
+redis.call('hincrby', KEYS[2], 'ver', 1)
+redis.call('pexpire', KEYS[2], ARGV[3])
+-- 缓存存在时才自增计数器字段，避免缓存过期后生成只有计数器字段的不完整缓存
+if tonumber(ARGV[2]) ~= 0 and redis.call('exists', KEYS[1]) == 1 then
+    return redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])
+end
+return nil
@@ -0,0 +1,12 @@
+-- KEYS[1] 店铺缓存，KEYS[2] 计数器版本
+-- ARGV[1] 查询数据库之前读到的版本（不存在时为空串），ARGV[2] 缓存有效期（毫秒），ARGV[3...] 字段和值
+-- 有计数器正在变化、或者查询数据库之后计数器变化过时不写入，避免用旧的计数器覆盖已经自增过的缓存
+local meta = redis.call('hmget', KEYS[2], 'pending', 'ver')
+if (tonumber(meta[1]) or 0) > 0 or (meta[2] or '') ~= ARGV[1] then
+    return 0
+end
+-- 先删除旧的字段再写入
+redis.call('del', KEYS[1])
+redis.call('hmset', KEYS[1], unpack(ARGV, 3))
+redis.call('pexpire', KEYS[1], ARGV[2])
+return 1
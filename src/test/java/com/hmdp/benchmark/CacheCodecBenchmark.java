@@ -0,0 +1,154 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.cache.CacheProperties;
+import com.hmdp.cache.codec.BinaryCacheCodec;
+import com.hmdp.cache.codec.CacheValueSerializer;
+import com.hmdp.cache.codec.JsonCacheCodec;
+import com.hmdp.config.CacheCodecConfig;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.RedisData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存编码对比：Hutool JSON（原实现）与紧凑二进制编码的编解码耗时和字节大小
+ * <p>
+ * 运行：在IDE中直接运行main方法，或 mvn test-compile 后以测试classpath运行本类
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    private CacheValueSerializer binary;
+    private Shop shop;
+    private Blog blog;
+    private String shopJson;
+    private String shopLogicalJson;
+    private String blogJson;
+    private byte[] shopBytes;
+    private byte[] shopLogicalBytes;
+    private byte[] blogBytes;
+
+    @Setup
+    public void setup() {
+        binary = createSerializer();
+        shop = sampleShop();
+        blog = sampleBlog();
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+        shopJson = JSONUtil.toJsonStr(shop);
+        shopLogicalJson = JSONUtil.toJsonStr(redisData);
+        blogJson = JSONUtil.toJsonStr(blog);
+        shopBytes = binary.serialize(shop);
+        shopLogicalBytes = binary.serializeWithExpire(shop, System.currentTimeMillis() + 1800_000);
+        blogBytes = binary.serialize(blog);
+    }
+
+    @Benchmark
+    public String jsonEncodeShop() {
+        return JSONUtil.toJsonStr(shop);
+    }
+
+    @Benchmark
+    public byte[] binaryEncodeShop() {
+        return binary.serialize(shop);
+    }
+
+    @Benchmark
+    public Shop jsonDecodeShop() {
+        return JSONUtil.toBean(shopJson, Shop.class);
+    }
+
+    @Benchmark
+    public Shop binaryDecodeShop() {
+        return binary.deserialize(shopBytes, Shop.class, false).getValue();
+    }
+
+    @Benchmark
+    public Shop jsonDecodeShopLogicalExpire() {
+        // 原实现：先解析RedisData，再把data解析为Shop
+        RedisData redisData = JSONUtil.toBean(shopLogicalJson, RedisData.class);
+        return JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
+    }
+
+    @Benchmark
+    public Shop binaryDecodeShopLogicalExpire() {
+        return binary.deserialize(shopLogicalBytes, Shop.class, true).getValue();
+    }
+
+    @Benchmark
+    public String jsonEncodeBlog() {
+        return JSONUtil.toJsonStr(blog);
+    }
+
+    @Benchmark
+    public byte[] binaryEncodeBlog() {
+        return binary.serialize(blog);
+    }
+
+    @Benchmark
+    public Blog jsonDecodeBlog() {
+        return JSONUtil.toBean(blogJson, Blog.class);
+    }
+
+    @Benchmark
+    public Blog binaryDecodeBlog() {
+        return binary.deserialize(blogBytes, Blog.class, false).getValue();
+    }
+
+    static CacheValueSerializer createSerializer() {
+        CacheCodecConfig config = new CacheCodecConfig();
+        BinaryCacheCodec binaryCodec = new BinaryCacheCodec(Arrays.asList(
+                config.shopSchema(), config.shopTypeSchema(), config.blogSchema(), config.userDTOSchema()));
+        return new CacheValueSerializer(Arrays.asList(new JsonCacheCodec(), binaryCodec), new CacheProperties(), new SimpleMeterRegistry());
+    }
+
+    static Shop sampleShop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+
+    static Blog sampleBlog() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            content.append("又吃到一家好吃的茶餐厅🍴环境是怀旧tvb港风📺边吃边拍照片📷几十种菜品均价都在20+💰可以是很平价了！<br>");
+        }
+        return new Blog().setId(5L).setShopId(1L).setUserId(2L).setTitle("人均30💰杭州这家港式茶餐厅我疯狂打call‼️")
+                .setImages("/imgs/blogs/4/7/863cc302-d150-420d-a596-b16e9232a1a6.jpg,/imgs/blogs/11/12/8b37d208-9414-4e78-b065-9199647bb3e3.jpg")
+                .setContent(content.toString()).setLiked(104).setComments(0)
+                .setCreateTime(LocalDateTime.of(2021, 12, 28, 20, 57, 49))
+                .setUpdateTime(LocalDateTime.of(2022, 3, 10, 9, 21, 39));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        // 先输出字节大小的对比
+        CacheValueSerializer serializer = createSerializer();
+        Shop shop = sampleShop();
+        Blog blog = sampleBlog();
+        System.out.printf("Shop  json: %d bytes, binary: %d bytes%n",
+                JSONUtil.toJsonStr(shop).getBytes(StandardCharsets.UTF_8).length, serializer.serialize(shop).length);
+        System.out.printf("Blog  json: %d bytes, binary: %d bytes%n",
+                JSONUtil.toJsonStr(blog).getBytes(StandardCharsets.UTF_8).length, serializer.serialize(blog).length);
+        new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
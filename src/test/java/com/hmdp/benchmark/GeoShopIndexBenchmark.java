@@ -0,0 +1,82 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.index.GeoShopIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 店铺地理位置内存索引的附近查询吞吐量：100万店铺、10个类型，随机分布在杭州市区范围内
+ * <p>
+ * 运行：在IDE中直接运行main方法，或 mvn test-compile 后以测试classpath运行本类
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class GeoShopIndexBenchmark {
+
+    static final int SHOP_COUNT = 1_000_000;
+    static final int TYPE_COUNT = 10;
+    static final double MIN_X = 119.95, MAX_X = 120.45, MIN_Y = 30.05, MAX_Y = 30.45;
+
+    private GeoShopIndex index;
+
+    @Setup
+    public void setup() {
+        index = createIndex();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<?> nearbyFirstPage() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return index.nearby(random.nextInt(TYPE_COUNT) + 1, randomX(random), randomY(random), 5000, 5);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<?> nearbyPage20() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return index.nearby(random.nextInt(TYPE_COUNT) + 1, randomX(random), randomY(random), 5000, 100);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<?> nearbyFirstPageConcurrent() {
+        return nearbyFirstPage();
+    }
+
+    static GeoShopIndex createIndex() {
+        GeoShopIndex index = new GeoShopIndex();
+        Random random = new Random(42);
+        for (long id = 1; id <= SHOP_COUNT; id++) {
+            Shop shop = new Shop().setId(id).setTypeId((long) random.nextInt(TYPE_COUNT) + 1)
+                    .setX(randomX(random)).setY(randomY(random));
+            index.update(null, shop);
+        }
+        index.ready();
+        return index;
+    }
+
+    static double randomX(Random random) {
+        return MIN_X + random.nextDouble() * (MAX_X - MIN_X);
+    }
+
+    static double randomY(Random random) {
+        return MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GeoShopIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
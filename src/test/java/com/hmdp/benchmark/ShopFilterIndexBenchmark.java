@@ -0,0 +1,89 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.dto.ShopFilter;
+import com.hmdp.entity.Shop;
+import com.hmdp.index.ShopFilterIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 店铺多条件筛选的耗时：100万店铺、10个类型，随机分布在杭州市区范围内，均价、评分、营业时间随机
+ * <p>
+ * 运行：在IDE中直接运行main方法，或 mvn test-compile 后以测试classpath运行本类
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ShopFilterIndexBenchmark {
+
+    static final int SHOP_COUNT = 1_000_000;
+    static final int TYPE_COUNT = 10;
+    static final String[] OPEN_HOURS = {"10:00-22:00", "11:30-03:00", "09:00-21:00", "00:00-24:00",
+            "10:00-14:00,17:00-22:00", "08:10-20:20"};
+
+    private ShopFilterIndex index;
+
+    @Setup
+    public void setup() {
+        index = new ShopFilterIndex();
+        Random random = new Random(42);
+        for (long id = 1; id <= SHOP_COUNT; id++) {
+            index.update(null, new Shop().setId(id)
+                    .setTypeId((long) random.nextInt(TYPE_COUNT) + 1)
+                    .setX(GeoShopIndexBenchmark.randomX(random))
+                    .setY(GeoShopIndexBenchmark.randomY(random))
+                    .setAvgPrice((long) random.nextInt(300))
+                    .setScore(random.nextInt(50))
+                    .setSold(random.nextInt(10000))
+                    .setOpenHours(OPEN_HOURS[random.nextInt(OPEN_HOURS.length)]));
+        }
+        index.ready();
+    }
+
+    @TearDown
+    public void tearDown() {
+        index.shutdown();
+    }
+
+    /**
+     * 同类型、3公里内、正在营业、均价100以内，按评分排序
+     */
+    @Benchmark
+    public List<?> cheapOpenNearbyByScore() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ShopFilter filter = new ShopFilter();
+        filter.setTypeId((long) random.nextInt(TYPE_COUNT) + 1);
+        filter.setX(GeoShopIndexBenchmark.randomX(random));
+        filter.setY(GeoShopIndexBenchmark.randomY(random));
+        filter.setRadius(3000.0);
+        filter.setMaxPrice(100L);
+        filter.setOpenNow(true);
+        return index.search(filter, ShopFilterIndex.Sort.SCORE, random.nextInt(24 * 60), 10);
+    }
+
+    /**
+     * 不限类型和距离，正在营业、评分4.0以上，按销量排序，候选几十万个
+     */
+    @Benchmark
+    public List<?> openHighScoreBySold() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ShopFilter filter = new ShopFilter();
+        filter.setMinScore(40);
+        filter.setOpenNow(true);
+        return index.search(filter, ShopFilterIndex.Sort.SOLD, random.nextInt(24 * 60), 10);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ShopFilterIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.index.ShopNameIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 店铺名称倒排索引的查询耗时：100万店铺，名称由品牌、品类和分店名随机组合
+ * <p>
+ * 运行：在IDE中直接运行main方法，或 mvn test-compile 后以测试classpath运行本类
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class ShopNameIndexBenchmark {
+
+    static final int SHOP_COUNT = 1_000_000;
+    static final String[] BRANDS = {"老王", "小李", "阿强", "蜀香", "湘味", "粤港", "金牌", "大碗", "一品", "福满楼",
+            "海底", "川渝", "江南", "西北", "东北", "云南", "台湾", "日式", "韩式", "泰式"};
+    static final String[] CATEGORIES = {"火锅", "烧烤", "面馆", "茶餐厅", "奶茶", "咖啡", "烤肉", "小龙虾", "酸菜鱼", "麻辣烫",
+            "饺子馆", "米线", "甜品", "自助餐", "私房菜", "酒吧", "KTV", "足疗", "美发", "健身房"};
+    static final String[] BRANCHES = {"西湖", "拱墅", "上城", "滨江", "萧山", "余杭", "临平", "钱塘", "富阳", "临安",
+            "武林", "湖滨", "黄龙", "文三路", "万象城", "银泰", "来福士", "龙湖", "印象城", "大悦城"};
+
+    // 品类，每个约匹配5%的店铺
+    static final String[] SHORT_QUERIES = {"火锅", "烧烤", "奶茶", "咖啡", "面馆", "烤肉"};
+    // 品牌+品类，每个约匹配0.25%的店铺
+    static final String[] LONG_QUERIES = {"老王火锅", "蜀香烤肉", "湘味小龙虾", "福满楼茶餐厅", "日式米线", "大碗酸菜鱼"};
+    // 完整的店名，倒排表多，交集很小
+    static final String[] FULL_NAME_QUERIES = {"福满楼酸菜鱼(万象城店)", "老王火锅(西湖店)", "泰式甜品(银泰店)", "韩式ktv(龙湖店)"};
+
+    private ShopNameIndex index;
+
+    @Setup
+    public void setup() {
+        index = createIndex();
+    }
+
+    @Benchmark
+    public List<?> shortQueryFirstPage() {
+        return index.search(SHORT_QUERIES[ThreadLocalRandom.current().nextInt(SHORT_QUERIES.length)], 10);
+    }
+
+    @Benchmark
+    public List<?> longQueryFirstPage() {
+        return index.search(LONG_QUERIES[ThreadLocalRandom.current().nextInt(LONG_QUERIES.length)], 10);
+    }
+
+    @Benchmark
+    public List<?> fullNameQueryFirstPage() {
+        return index.search(FULL_NAME_QUERIES[ThreadLocalRandom.current().nextInt(FULL_NAME_QUERIES.length)], 10);
+    }
+
+    static ShopNameIndex createIndex() {
+        ShopNameIndex index = new ShopNameIndex();
+        Random random = new Random(42);
+        for (long id = 1; id <= SHOP_COUNT; id++) {
+            Shop shop = new Shop().setId(id).setName(randomName(random)).setSold(random.nextInt(10000));
+            index.update(null, shop);
+        }
+        index.ready();
+        return index;
+    }
+
+    static String randomName(Random random) {
+        return BRANDS[random.nextInt(BRANDS.length)] + CATEGORIES[random.nextInt(CATEGORIES.length)]
+                + "(" + BRANCHES[random.nextInt(BRANCHES.length)] + "店)";
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ShopNameIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
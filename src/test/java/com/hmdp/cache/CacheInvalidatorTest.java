@@ -0,0 +1,147 @@
+package com.hmdp.cache;
+
+import com.hmdp.utils.CacheClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 缓存失效：事务提交后才删除、回滚不删除，窗口内的删除合并为一次调用，并延迟再删一次
+ */
+class CacheInvalidatorTest {
+
+    private CacheClient cacheClient;
+
+    private CacheInvalidator invalidator;
+
+    @BeforeEach
+    void setUp() {
+        cacheClient = mock(CacheClient.class);
+        CacheProperties properties = new CacheProperties();
+        properties.getInvalidation().setWindow(Duration.ofMillis(30));
+        properties.getInvalidation().setSecondDeleteDelay(Duration.ofMillis(150));
+        invalidator = new CacheInvalidator(cacheClient, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        invalidator.shutdown();
+    }
+
+    @Test
+    void coalescesDeletesInWindowAndDeletesTwice() {
+        invalidator.invalidate("cache:shop:1");
+        invalidator.invalidate("cache:shop:2");
+        invalidator.invalidate("cache:shop:1");
+
+        // 1.窗口内的三次删除合并为一次DEL
+        verify(cacheClient, timeout(1000).times(1)).deleteAll(keys("cache:shop:1", "cache:shop:2"));
+        // 2.延迟后再删一次
+        verify(cacheClient, timeout(1000).times(2)).deleteAll(keys("cache:shop:1", "cache:shop:2"));
+        verify(cacheClient, after(300).times(2)).deleteAll(anyCollection());
+    }
+
+    @Test
+    void deletesOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        invalidator.invalidate("cache:shop:1");
+        invalidator.invalidate("cache:shop:2");
+
+        // 1.事务提交前不删除
+        verify(cacheClient, after(200).never()).deleteAll(anyCollection());
+        // 2.同一个事务只注册一次回调
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronizations.size());
+        // 3.提交后删除
+        complete(synchronizations, true);
+        verify(cacheClient, timeout(1000).times(1)).deleteAll(keys("cache:shop:1", "cache:shop:2"));
+        assertNull(TransactionSynchronizationManager.getResource(invalidator));
+    }
+
+    @Test
+    void rollbackDeletesNothing() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        invalidator.invalidate("cache:shop:1");
+        complete(TransactionSynchronizationManager.getSynchronizations(), false);
+
+        verify(cacheClient, after(300).never()).deleteAll(anyCollection());
+        assertNull(TransactionSynchronizationManager.getResource(invalidator));
+    }
+
+    @Test
+    void nextTransactionStartsWithNoKeys() {
+        TransactionSynchronizationManager.initSynchronization();
+        invalidator.invalidate("cache:shop:1");
+        complete(TransactionSynchronizationManager.getSynchronizations(), false);
+
+        TransactionSynchronizationManager.initSynchronization();
+        invalidator.invalidate("cache:shop:2");
+        complete(TransactionSynchronizationManager.getSynchronizations(), true);
+
+        // 回滚的事务登记的key不会带到下一个事务
+        verify(cacheClient, timeout(1000).times(1)).deleteAll(keys("cache:shop:2"));
+        verify(cacheClient, never()).deleteAll(argThat(c -> c.contains("cache:shop:1")));
+    }
+
+    @Test
+    void failedDeleteIsRetriedBySecondDelete() {
+        doThrow(new RuntimeException("redis不可用")).doNothing().when(cacheClient).deleteAll(anyCollection());
+
+        invalidator.invalidate("cache:shop:1");
+
+        verify(cacheClient, timeout(1000).times(2)).deleteAll(keys("cache:shop:1"));
+    }
+
+    @Test
+    void shutdownFlushesPendingKeys() {
+        invalidator.invalidate("cache:shop:1");
+
+        invalidator.shutdown();
+
+        verify(cacheClient, times(1)).deleteAll(keys("cache:shop:1"));
+    }
+
+    /**
+     * 模拟事务结束时Spring依次调用的回调
+     */
+    private static void complete(List<TransactionSynchronization> synchronizations, boolean commit) {
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (commit) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(commit
+                    ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+    }
+
+    private static Collection<String> keys(String... keys) {
+        HashSet<String> expected = new HashSet<>(Arrays.asList(keys));
+        return argThat(c -> c != null && new HashSet<>(c).equals(expected) && c.size() == expected.size());
+    }
+}
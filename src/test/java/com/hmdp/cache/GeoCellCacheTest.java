@@ -0,0 +1,103 @@
+package com.hmdp.cache;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.event.ShopChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.CACHE_GEO_CELL_EVICT_CHANNEL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 附近查询的店铺详情缓存：店铺变化后删除本节点的缓存并广播，收到广播的节点删除自己的缓存，已删除的店铺不再返回
+ */
+class GeoCellCacheTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private GeoCellCache cache;
+
+    /**
+     * 数据库中的店铺
+     */
+    private final Map<Long, Shop> db = new HashMap<>();
+
+    /**
+     * 每次从数据库查询的店铺id
+     */
+    private final List<List<Long>> loads = new ArrayList<>();
+
+    private final Function<List<Long>, List<Shop>> loader = ids -> {
+        loads.add(ids);
+        List<Shop> shops = new ArrayList<>();
+        for (Long id : ids) {
+            if (db.containsKey(id)) {
+                shops.add(db.get(id));
+            }
+        }
+        return shops;
+    };
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        cache = new GeoCellCache(new CacheProperties(), stringRedisTemplate);
+        db.put(1L, new Shop().setId(1L).setName("103茶餐厅"));
+        db.put(2L, new Shop().setId(2L).setName("新白鹿餐厅"));
+    }
+
+    @Test
+    void shopChangeEvictsLocallyAndBroadcasts() {
+        cache.getShops(Arrays.asList(1L, 2L), loader);
+        db.put(1L, new Shop().setId(1L).setName("103茶餐厅(新店)"));
+
+        cache.onShopChanged(new ShopChangedEvent(db.get(1L), db.get(1L)));
+
+        verify(stringRedisTemplate).convertAndSend(CACHE_GEO_CELL_EVICT_CHANNEL, "1");
+        List<Shop> shops = cache.getShops(Arrays.asList(1L, 2L), loader);
+        assertEquals("103茶餐厅(新店)", shops.get(0).getName());
+        // 只重新查询变化的店铺
+        assertEquals(Collections.singletonList(1L), loads.get(1));
+    }
+
+    @Test
+    void broadcastFromOtherNodeRemovesDeletedShop() {
+        cache.getShops(Arrays.asList(1L, 2L), loader);
+        // 店铺在其它节点上被删除
+        db.remove(2L);
+
+        cache.onMessage(new DefaultMessage(CACHE_GEO_CELL_EVICT_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "2".getBytes(StandardCharsets.UTF_8)), null);
+
+        List<Shop> shops = cache.getShops(Arrays.asList(1L, 2L), loader);
+        assertEquals(1, shops.size());
+        assertEquals(1L, shops.get(0).getId());
+    }
+
+    @Test
+    void broadcastFailureStillEvictsLocally() {
+        cache.getShops(Collections.singletonList(1L), loader);
+        doThrow(new IllegalStateException("redis不可用")).when(stringRedisTemplate)
+                .convertAndSend(CACHE_GEO_CELL_EVICT_CHANNEL, "1");
+
+        cache.onShopChanged(new ShopChangedEvent(db.get(1L), null));
+
+        db.remove(1L);
+        assertTrue(cache.getShops(Collections.singletonList(1L), loader).isEmpty());
+    }
+}
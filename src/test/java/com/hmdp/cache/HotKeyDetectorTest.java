@@ -0,0 +1,105 @@
+package com.hmdp.cache;
+
+import com.hmdp.dto.HotKeyDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.CACHE_HOT_KEY_CHANNEL;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 热点key探测：达到阈值后升级并广播，保持时间内不重复广播，到期后降级并清除本地缓存
+ */
+class HotKeyDetectorTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private CacheProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        properties = new CacheProperties();
+        CacheProperties.HotKey hotKey = properties.getHotKey();
+        // 每次访问都计数，便于断言
+        hotKey.setSampleRate(1.0);
+        hotKey.setThreshold(10);
+        hotKey.setWindow(Duration.ofMinutes(1));
+        hotKey.setHoldTime(Duration.ofSeconds(30));
+    }
+
+    @Test
+    void promotesAfterThresholdAndBroadcastsOnce() {
+        HotKeyDetector detector = new HotKeyDetector(properties, stringRedisTemplate);
+
+        for (int i = 0; i < 9; i++) {
+            assertFalse(detector.record("cache:shop:1"));
+        }
+        assertTrue(detector.record("cache:shop:1"));
+        // 保持时间还剩一半以上，不重复广播
+        for (int i = 0; i < 20; i++) {
+            assertTrue(detector.record("cache:shop:1"));
+        }
+
+        verify(stringRedisTemplate, times(1)).convertAndSend(CACHE_HOT_KEY_CHANNEL, "cache:shop:1");
+        assertFalse(detector.isHot("cache:shop:2"));
+        List<HotKeyDTO> hotKeys = detector.listHotKeys();
+        assertEquals(1, hotKeys.size());
+        assertEquals("cache:shop:1", hotKeys.get(0).getKey());
+        assertTrue(hotKeys.get(0).getCount() >= 30);
+    }
+
+    @Test
+    void demotesAfterHoldTimeAndDropsLocalValue() throws InterruptedException {
+        properties.getHotKey().setHoldTime(Duration.ofMillis(200));
+        HotKeyDetector detector = new HotKeyDetector(properties, stringRedisTemplate);
+        for (int i = 0; i < 10; i++) {
+            detector.record("cache:shop:1");
+        }
+        detector.putLocal("cache:shop:1", new byte[]{1});
+
+        Thread.sleep(300);
+
+        assertFalse(detector.isHot("cache:shop:1"));
+        assertNull(detector.getLocal("cache:shop:1"));
+    }
+
+    @Test
+    void markedByBroadcastFromOtherNodes() {
+        HotKeyDetector detector = new HotKeyDetector(properties, stringRedisTemplate);
+
+        detector.onMessage(new DefaultMessage(CACHE_HOT_KEY_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "cache:shop:9".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertTrue(detector.isHot("cache:shop:9"));
+        detector.putLocal("cache:shop:9", new byte[]{9});
+        assertArrayEquals(new byte[]{9}, detector.getLocal("cache:shop:9"));
+        verify(stringRedisTemplate, never()).convertAndSend(anyString(), anyString());
+    }
+
+    @Test
+    void disabledDetectorNeverPromotes() {
+        properties.getHotKey().setEnabled(false);
+        HotKeyDetector detector = new HotKeyDetector(properties, stringRedisTemplate);
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(detector.record("cache:shop:1"));
+        }
+        verify(stringRedisTemplate, never()).convertAndSend(anyString(), anyString());
+    }
+}
@@ -0,0 +1,222 @@
+package com.hmdp.cache;
+
+import com.hmdp.dto.ShopCounter;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * hash结构的店铺缓存：HGETALL组装店铺，计数器在事务提交后才自增，计数器变化期间查询到的数据不写入缓存
+ */
+@ExtendWith(MockitoExtension.class)
+class ShopHashCacheTest {
+
+    private static final String KEY = "cache:shop-hash:1";
+    private static final String VERSION_KEY = KEY + ":ver";
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private CacheInvalidator cacheInvalidator;
+
+    @Spy
+    private CacheProperties cacheProperties = new CacheProperties();
+
+    @InjectMocks
+    private ShopHashCache shopHashCache;
+
+    /**
+     * 执行过的脚本的keys和参数
+     */
+    private final List<List<Object>> scripts = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(stringRedisTemplate.opsForHash()).thenReturn(hashOperations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void hashFieldsRoundTripToShop() {
+        recordScripts(1L);
+        Shop shop = shop();
+        when(hashOperations.entries(KEY)).thenReturn(Collections.emptyMap());
+
+        // 1.未命中，从数据库加载后写入
+        assertEquals(shop, shopHashCache.get(1L, id -> shop));
+        List<Object> put = scripts.get(0);
+        assertEquals(Arrays.asList(KEY, VERSION_KEY), put.get(0));
+
+        // 2.写入的字段原样作为HGETALL的结果，组装出相同的店铺
+        Map<Object, Object> entries = new HashMap<>();
+        for (int i = 3; i < put.size(); i += 2) {
+            entries.put(put.get(i), put.get(i + 1));
+        }
+        assertTrue(entries.values().stream().allMatch(value -> value instanceof String));
+        when(hashOperations.entries(KEY)).thenReturn(entries);
+        assertEquals(shop, shopHashCache.get(1L, id -> {
+            throw new AssertionError("命中时不应查询数据库");
+        }));
+    }
+
+    @Test
+    void readsVersionBeforeQueryingDatabase() {
+        recordScripts(0L);
+        when(hashOperations.entries(KEY)).thenReturn(Collections.emptyMap());
+        when(hashOperations.get(VERSION_KEY, "ver")).thenReturn("3");
+        @SuppressWarnings("unchecked")
+        Function<Long, Shop> dbFallback = mock(Function.class);
+        when(dbFallback.apply(1L)).thenReturn(shop());
+
+        shopHashCache.get(1L, dbFallback);
+
+        // 先读取版本再查询数据库，写入时带上读到的版本，由脚本判断期间计数器是否变化过
+        InOrder order = inOrder(hashOperations, dbFallback);
+        order.verify(hashOperations).get(VERSION_KEY, "ver");
+        order.verify(dbFallback).apply(1L);
+        assertEquals("3", scripts.get(0).get(1));
+    }
+
+    @Test
+    void missingShopCachesNullMarker() {
+        when(hashOperations.entries(KEY)).thenReturn(Collections.emptyMap());
+
+        assertNull(shopHashCache.get(1L, id -> null));
+
+        verify(hashOperations).put(KEY, "_null", "");
+        when(hashOperations.entries(KEY)).thenReturn(Collections.singletonMap("_null", ""));
+        assertNull(shopHashCache.get(1L, id -> {
+            throw new AssertionError("命中空值时不应查询数据库");
+        }));
+    }
+
+    @Test
+    void incrementAppliesOnlyAfterCommit() {
+        recordScripts(null);
+        TransactionSynchronizationManager.initSynchronization();
+
+        shopHashCache.increment(1L, ShopCounter.SOLD, 5);
+
+        // 1.事务中只标记计数器正在变化，不修改缓存
+        verify(stringRedisTemplate).executePipelined(any(RedisCallback.class));
+        assertTrue(scripts.isEmpty());
+        // 2.提交后结束标记并自增
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(1, scripts.size());
+        assertEquals(Arrays.asList(KEY, VERSION_KEY), scripts.get(0).get(0));
+        assertEquals("sold", scripts.get(0).get(1));
+        assertEquals("5", scripts.get(0).get(2));
+    }
+
+    @Test
+    void rollbackOnlyEndsTheMark() {
+        recordScripts(null);
+        TransactionSynchronizationManager.initSynchronization();
+
+        shopHashCache.increment(1L, ShopCounter.COMMENTS, 2);
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // 增量为0，脚本只结束标记
+        assertEquals(1, scripts.size());
+        assertEquals("0", scripts.get(0).get(2));
+    }
+
+    @Test
+    void incrementOnMissingKeyDoesNotWriteFields() {
+        // 缓存不存在时脚本返回nil，不会生成只有计数器字段的缓存
+        recordScripts(null);
+
+        shopHashCache.increment(1L, ShopCounter.SOLD, 1);
+
+        assertEquals(1, scripts.size());
+        verify(hashOperations, never()).put(any(), any(), any());
+        verify(hashOperations, never()).putAll(any(), any());
+        verify(hashOperations, never()).increment(any(), any(), any(Long.class));
+    }
+
+    @Test
+    void invalidateGoesThroughInvalidator() {
+        shopHashCache.invalidate(1L);
+
+        verify(cacheInvalidator).invalidate(KEY);
+    }
+
+    /**
+     * 记录执行的脚本，第一个元素是keys，之后是参数
+     */
+    @SuppressWarnings("unchecked")
+    private void recordScripts(Long result) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any())).thenAnswer(invocation -> {
+            List<Object> call = new ArrayList<>();
+            call.add(invocation.getArgument(1));
+            Object[] args = invocation.getArguments();
+            call.addAll(Arrays.asList(args).subList(2, args.length));
+            scripts.add(call);
+            return result;
+        });
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    private static Shop shop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/a.jpg").setArea("大关").setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192).setY(30.316078).setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
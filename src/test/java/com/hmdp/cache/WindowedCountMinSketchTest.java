@@ -0,0 +1,102 @@
+package com.hmdp.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 滑动窗口的Count-Min Sketch：估算值不低于真实值，超出的部分在理论误差范围内，过期的子窗口不再计数
+ */
+class WindowedCountMinSketchTest {
+
+    @Test
+    void sameStringHashCodeDoesNotShareCounters() {
+        WindowedCountMinSketch sketch = new WindowedCountMinSketch(1024, 600_000, 6);
+        String hot = "cache:shop:Aa";
+        String cold = "cache:shop:BB";
+        assertEquals(hot.hashCode(), cold.hashCode());
+
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(hot);
+        }
+
+        // hashCode相同的冷门key不会因为和热点key冲突被估算为热点
+        assertEquals(1000, sketch.estimate(hot));
+        assertEquals(0, sketch.estimate(cold));
+    }
+
+    @Test
+    void neverUnderestimatesAndStaysWithinBound() {
+        int width = 1024;
+        // 窗口足够长，测试期间所有计数都在窗口内
+        WindowedCountMinSketch sketch = new WindowedCountMinSketch(width, 600_000, 6);
+        Random random = new Random(7);
+        Map<String, Integer> counts = new HashMap<>();
+        int total = 0;
+        // 少量热点key加大量长尾key，按zipf近似分布
+        for (int i = 0; i < 5000; i++) {
+            String key = "cache:shop:" + i;
+            int n = Math.max(1, 2000 / (i + 1)) + random.nextInt(3);
+            for (int j = 0; j < n; j++) {
+                sketch.add(key);
+            }
+            counts.put(key, n);
+            total += n;
+        }
+        // 误差上界 ε·N，ε = e / width；每一行独立，超出上界的概率不超过 e^-depth（depth = 4，约1.8%）
+        double bound = Math.E / width * total;
+        int exceeded = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            int estimate = sketch.estimate(entry.getKey());
+            assertTrue(estimate >= entry.getValue(), "低估了" + entry.getKey());
+            if (estimate - entry.getValue() > bound) {
+                exceeded++;
+            }
+        }
+        assertTrue(exceeded <= counts.size() * 0.018, "超出误差上界的key过多：" + exceeded);
+    }
+
+    @Test
+    void hotKeyIsExactWhenAlone() {
+        WindowedCountMinSketch sketch = new WindowedCountMinSketch(4096, 600_000, 6);
+        int last = 0;
+        for (int i = 0; i < 100; i++) {
+            last = sketch.add("cache:shop:1");
+        }
+
+        assertEquals(100, last);
+        assertEquals(100, sketch.estimate("cache:shop:1"));
+        assertEquals(0, sketch.estimate("cache:shop:2"));
+    }
+
+    @Test
+    void widthIsRoundedUpToPowerOfTwo() {
+        // 宽度1000向上取整为1024，不会因为取模越界
+        WindowedCountMinSketch sketch = new WindowedCountMinSketch(1000, 600_000, 1);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add("k" + i);
+        }
+        assertTrue(sketch.estimate("k1") >= 1);
+    }
+
+    @Test
+    void expiredSlotsAreNotCounted() throws InterruptedException {
+        // 窗口100毫秒，分成5个子窗口
+        WindowedCountMinSketch sketch = new WindowedCountMinSketch(256, 100, 5);
+        for (int i = 0; i < 50; i++) {
+            sketch.add("cache:shop:1");
+        }
+        assertTrue(sketch.estimate("cache:shop:1") >= 50);
+
+        Thread.sleep(250);
+
+        assertEquals(0, sketch.estimate("cache:shop:1"));
+        // 过期的子窗口被重新使用时清零
+        assertEquals(1, sketch.add("cache:shop:1"));
+    }
+}
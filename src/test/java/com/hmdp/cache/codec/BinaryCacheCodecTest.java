@@ -0,0 +1,217 @@
+package com.hmdp.cache.codec;
+
+import cn.hutool.core.lang.TypeReference;
+import com.hmdp.config.CacheCodecConfig;
+import com.hmdp.entity.Shop;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.cache.codec.BinarySchema.INT;
+import static com.hmdp.cache.codec.BinarySchema.LONG;
+import static com.hmdp.cache.codec.BinarySchema.STRING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 二进制编码：null字段位图、追加和删除字段后新旧版本互相读取、列表中跳过不认识的字段
+ */
+class BinaryCacheCodecTest {
+
+    private final BinaryCacheCodec codec = new BinaryCacheCodec(Collections.singletonList(new CacheCodecConfig().shopSchema()));
+
+    @Test
+    void roundTripAllFields() {
+        Shop shop = shop(1L);
+
+        assertEquals(shop, decode(codec, encode(codec, shop), Shop.class));
+    }
+
+    @Test
+    void nullFieldsOnlyTakeABitInTheMask() {
+        Shop shop = new Shop().setId(7L).setSold(0).setUpdateTime(LocalDateTime.of(2022, 1, 1, 0, 0));
+        Shop empty = new Shop();
+
+        assertEquals(shop, decode(codec, encode(codec, shop), Shop.class));
+        assertEquals(empty, decode(codec, encode(codec, empty), Shop.class));
+        // 全部为null时只有版本号和位图
+        assertTrue(encode(codec, empty).length <= 11);
+    }
+
+    @Test
+    void negativeAndExtremeNumbers() {
+        Shop shop = new Shop().setId(Long.MAX_VALUE).setTypeId(Long.MIN_VALUE).setSold(-1).setScore(Integer.MIN_VALUE)
+                .setX(-0.0).setY(Double.NaN).setCreateTime(LocalDateTime.of(1960, 1, 1, 0, 0, 0, 999_000_000));
+
+        Shop decoded = decode(codec, encode(codec, shop), Shop.class);
+
+        assertEquals(shop.getId(), decoded.getId());
+        assertEquals(shop.getTypeId(), decoded.getTypeId());
+        assertEquals(shop.getSold(), decoded.getSold());
+        assertEquals(shop.getScore(), decoded.getScore());
+        assertEquals(Double.doubleToRawLongBits(shop.getX()), Double.doubleToRawLongBits(decoded.getX()));
+        assertTrue(decoded.getY().isNaN());
+        assertEquals(shop.getCreateTime(), decoded.getCreateTime());
+    }
+
+    @Test
+    void listRoundTrip() {
+        List<Shop> shops = Arrays.asList(shop(1L), new Shop().setId(2L), shop(3L));
+
+        assertEquals(shops, decode(codec, encode(codec, shops), new TypeReference<List<Shop>>() {}.getType()));
+        assertEquals(Collections.emptyList(),
+                decode(codec, encode(codec, Collections.emptyList()), new TypeReference<List<Shop>>() {}.getType()));
+    }
+
+    @Test
+    void oldNodeReadsNewVersion() {
+        BinaryCacheCodec v1 = new BinaryCacheCodec(Collections.singletonList(v1Schema()));
+        BinaryCacheCodec v2 = new BinaryCacheCodec(Collections.singletonList(v2Schema()));
+        Item item = item(1L);
+
+        // 新版本多出来的字段在末尾，旧版本读取时忽略
+        Item decoded = decode(v1, encode(v2, item), Item.class);
+        assertEquals(item.getId(), decoded.getId());
+        assertEquals(item.getName(), decoded.getName());
+        assertNull(decoded.getScore());
+        assertNull(decoded.getTag());
+
+        // 列表中每个元素带长度，跳过不认识的字段后下一个元素仍然正确
+        List<Item> items = Arrays.asList(item(1L), item(2L), item(3L));
+        List<Item> decodedList = decode(v1, encode(v2, items), new TypeReference<List<Item>>() {}.getType());
+        assertEquals(3, decodedList.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(items.get(i).getId(), decodedList.get(i).getId());
+            assertEquals(items.get(i).getName(), decodedList.get(i).getName());
+            assertNull(decodedList.get(i).getScore());
+        }
+    }
+
+    @Test
+    void newNodeReadsOldVersion() {
+        BinaryCacheCodec v1 = new BinaryCacheCodec(Collections.singletonList(v1Schema()));
+        BinaryCacheCodec v2 = new BinaryCacheCodec(Collections.singletonList(v2Schema()));
+        Item item = item(1L);
+
+        // 旧版本数据中没有的字段保持为null
+        Item decoded = decode(v2, encode(v1, item), Item.class);
+        assertEquals(item.getId(), decoded.getId());
+        assertEquals(item.getName(), decoded.getName());
+        assertNull(decoded.getScore());
+        assertNull(decoded.getTag());
+
+        List<Item> items = Arrays.asList(item(1L), item(2L));
+        List<Item> decodedList = decode(v2, encode(v1, items), new TypeReference<List<Item>>() {}.getType());
+        assertEquals(items.get(1).getName(), decodedList.get(1).getName());
+        assertNull(decodedList.get(1).getScore());
+    }
+
+    @Test
+    void sameVersionKeepsAddedFields() {
+        BinaryCacheCodec v2 = new BinaryCacheCodec(Collections.singletonList(v2Schema()));
+        Item item = item(1L);
+
+        assertEquals(item, decode(v2, encode(v2, item), Item.class));
+    }
+
+    @Test
+    void removedFieldKeepsPosition() {
+        BinaryCacheCodec v2 = new BinaryCacheCodec(Collections.singletonList(v2Schema()));
+        BinaryCacheCodec removed = new BinaryCacheCodec(Collections.singletonList(BinarySchema.builder(Item.class, Item::new)
+                .field(LONG, Item::getId, Item::setId)
+                .removed(STRING)
+                .since(2)
+                .field(INT, Item::getScore, Item::setScore)
+                .field(STRING, Item::getTag, Item::setTag)
+                .build()));
+        Item item = item(1L);
+
+        // 1.不写入删除的字段，旧节点读到null，后面的字段不受影响
+        Item decoded = decode(v2, encode(removed, item), Item.class);
+        assertNull(decoded.getName());
+        assertEquals(item.getScore(), decoded.getScore());
+        assertEquals(item.getTag(), decoded.getTag());
+        assertTrue(encode(removed, item).length < encode(v2, item).length);
+        // 2.读取旧数据时丢弃删除的字段
+        decoded = decode(removed, encode(v2, item), Item.class);
+        assertNull(decoded.getName());
+        assertEquals(item.getId(), decoded.getId());
+        assertEquals(item.getScore(), decoded.getScore());
+        assertEquals(item.getTag(), decoded.getTag());
+    }
+
+    @Test
+    void unregisteredTypesAreNotEncodable() {
+        assertFalse(codec.canEncode(new Item()));
+        assertFalse(codec.canEncode(Arrays.asList(shop(1L), null)));
+        assertFalse(codec.canEncode(null));
+        assertTrue(codec.canEncode(Arrays.asList(shop(1L), shop(2L))));
+        assertThrows(IllegalStateException.class, () -> decode(codec, encode(codec, shop(1L)), Item.class));
+    }
+
+    @Test
+    void versionMustIncrease() {
+        assertThrows(IllegalArgumentException.class, () -> BinarySchema.builder(Item.class, Item::new).since(2).since(1));
+    }
+
+    private static BinarySchema<Item> v1Schema() {
+        return BinarySchema.builder(Item.class, Item::new)
+                .field(LONG, Item::getId, Item::setId)
+                .field(STRING, Item::getName, Item::setName)
+                .build();
+    }
+
+    private static BinarySchema<Item> v2Schema() {
+        return BinarySchema.builder(Item.class, Item::new)
+                .field(LONG, Item::getId, Item::setId)
+                .field(STRING, Item::getName, Item::setName)
+                .since(2)
+                .field(INT, Item::getScore, Item::setScore)
+                .field(STRING, Item::getTag, Item::setTag)
+                .build();
+    }
+
+    private static Item item(Long id) {
+        Item item = new Item();
+        item.setId(id);
+        item.setName("item" + id);
+        item.setScore(id.intValue() * 10);
+        item.setTag(id % 2 == 0 ? null : "tag" + id);
+        return item;
+    }
+
+    static Shop shop(Long id) {
+        return new Shop().setId(id).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/a.jpg,https://qcloud.dpfile.com/pc/b.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19, 123_000_000));
+    }
+
+    static byte[] encode(CacheCodec codec, Object value) {
+        BinaryWriter out = new BinaryWriter();
+        codec.encode(value, out);
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T decode(CacheCodec codec, byte[] bytes, java.lang.reflect.Type type) {
+        return (T) codec.decode(new BinaryReader(bytes), type);
+    }
+
+    @Data
+    public static class Item {
+        private Long id;
+        private String name;
+        private Integer score;
+        private String tag;
+    }
+}
@@ -0,0 +1,238 @@
+package com.hmdp.cache.codec;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.cache.CacheProperties;
+import com.hmdp.config.CacheCodecConfig;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import com.hmdp.utils.RedisData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.hmdp.cache.codec.BinaryCacheCodecTest.shop;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 缓存值的头部字节：编码格式、逻辑过期时间、LZ4压缩标记，以及读取旧版本直接写入的JSON
+ */
+class CacheValueSerializerTest {
+
+    private static final int FLAG_COMPRESSED = 0x10;
+
+    private final CacheValueSerializer serializer = serializer(new CacheProperties());
+
+    @Test
+    void registeredTypeUsesBinaryCodec() {
+        Shop shop = shop(1L);
+
+        byte[] bytes = serializer.serialize(shop);
+
+        assertEquals(BinaryCacheCodec.ID, bytes[0]);
+        CacheValueSerializer.CacheValue value = serializer.deserialize(bytes, Shop.class, false);
+        assertEquals(shop, value.getValue());
+        assertEquals(-1, value.getExpireAt());
+    }
+
+    @Test
+    void unregisteredTypeFallsBackToJson() {
+        Voucher voucher = new Voucher().setId(3L).setTitle("50元代金券").setPayValue(4750L).setActualValue(5000L);
+
+        byte[] bytes = serializer.serialize(voucher);
+
+        assertEquals(JsonCacheCodec.ID, bytes[0]);
+        Voucher decoded = serializer.deserialize(bytes, Voucher.class, false).getValue();
+        assertEquals(voucher.getId(), decoded.getId());
+        assertEquals(voucher.getTitle(), decoded.getTitle());
+        assertEquals(voucher.getPayValue(), decoded.getPayValue());
+    }
+
+    @Test
+    void logicalExpireIsInTheHeader() {
+        Shop shop = shop(1L);
+        long expireAt = System.currentTimeMillis() + 60_000;
+
+        byte[] bytes = serializer.serializeWithExpire(shop, expireAt);
+
+        CacheValueSerializer.CacheValue value = serializer.deserialize(bytes, Shop.class, true);
+        assertEquals(shop, value.getValue());
+        assertEquals(expireAt, value.getExpireAt());
+    }
+
+    @Test
+    void jsonCodecIsSelectable() {
+        CacheProperties properties = new CacheProperties();
+        properties.setCodec("json");
+        CacheValueSerializer json = serializer(properties);
+        Shop shop = shop(1L);
+
+        byte[] bytes = json.serialize(shop);
+
+        assertEquals(JsonCacheCodec.ID, bytes[0]);
+        assertEquals(shop, json.deserialize(bytes, Shop.class, false).getValue());
+        // 另一种编码写入的数据也能读取
+        assertEquals(shop, serializer.deserialize(bytes, Shop.class, false).getValue());
+        assertEquals(shop, json.deserialize(serializer.serialize(shop), Shop.class, false).getValue());
+    }
+
+    @Test
+    void readsLegacyJson() {
+        Shop shop = shop(1L);
+        byte[] legacy = JSONUtil.toJsonStr(shop).getBytes(StandardCharsets.UTF_8);
+
+        Shop decoded = serializer.deserialize(legacy, Shop.class, false).getValue();
+
+        assertEquals(shop.getId(), decoded.getId());
+        assertEquals(shop.getName(), decoded.getName());
+        assertEquals(shop.getX(), decoded.getX());
+        assertEquals(shop.getSold(), decoded.getSold());
+    }
+
+    @Test
+    void readsLegacyLogicalExpireJson() {
+        Shop shop = shop(1L);
+        LocalDateTime expireTime = LocalDateTime.of(2030, 1, 1, 12, 0, 0);
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(expireTime);
+        byte[] legacy = JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+
+        CacheValueSerializer.CacheValue value = serializer.deserialize(legacy, Shop.class, true);
+
+        Shop decoded = value.getValue();
+        assertEquals(shop.getId(), decoded.getId());
+        assertEquals(shop.getName(), decoded.getName());
+        assertEquals(expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), value.getExpireAt());
+    }
+
+    @Test
+    void unknownCodecIdIsRejected() {
+        byte[] bytes = serializer.serialize(shop(1L));
+        bytes[0] = 7;
+
+        assertThrows(IllegalStateException.class, () -> serializer.deserialize(bytes, Shop.class, false));
+    }
+
+    @Test
+    void duplicateCodecIdIsRejected() {
+        assertThrows(IllegalStateException.class, () -> new CacheValueSerializer(
+                Arrays.asList(new JsonCacheCodec(), new JsonCacheCodec()), new CacheProperties(), new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void largeValueIsCompressed() {
+        Blog blog = blog(repeat("今天去了一家很好吃的茶餐厅，菠萝油和丝袜奶茶都很正宗。", 100));
+
+        byte[] bytes = serializer.serialize(blog);
+
+        assertTrue((bytes[0] & FLAG_COMPRESSED) != 0);
+        assertEquals(BinaryCacheCodec.ID, bytes[0] & 0x07);
+        assertTrue(bytes.length < blog.getContent().getBytes(StandardCharsets.UTF_8).length / 2);
+        assertEquals(blog, serializer.deserialize(bytes, Blog.class, false).getValue());
+    }
+
+    @Test
+    void smallValueIsNotCompressed() {
+        Blog blog = blog("好吃");
+
+        byte[] bytes = serializer.serialize(blog);
+
+        assertEquals(BinaryCacheCodec.ID, bytes[0]);
+        assertEquals(blog, serializer.deserialize(bytes, Blog.class, false).getValue());
+    }
+
+    @Test
+    void blogCacheKeepsOnlyOwnColumns() {
+        Blog blog = blog("好吃");
+        // 作者的头像、昵称和当前用户是否点赞不写入所有用户共用的缓存
+        blog.setIcon("/imgs/icons/a.jpg").setName("小鱼同学").setIsLike(true);
+
+        Blog decoded = (Blog) serializer.deserialize(serializer.serialize(blog), Blog.class, false).getValue();
+
+        assertEquals(blog("好吃"), decoded);
+    }
+
+    @Test
+    void incompressibleValueIsStoredAsIs() {
+        // 随机内容压缩后不会变小，保持原样
+        Random random = new Random(42);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            content.append((char) (0x4E00 + random.nextInt(0x5000)));
+        }
+        Blog blog = blog(content.toString());
+
+        byte[] bytes = serializer.serialize(blog);
+
+        assertFalse((bytes[0] & FLAG_COMPRESSED) != 0);
+        assertEquals(blog, serializer.deserialize(bytes, Blog.class, false).getValue());
+    }
+
+    @Test
+    void compressedValueWithLogicalExpire() {
+        Blog blog = blog(repeat("abc", 2000));
+        long expireAt = System.currentTimeMillis() + 60_000;
+
+        byte[] bytes = serializer.serializeWithExpire(blog, expireAt);
+
+        assertTrue((bytes[0] & FLAG_COMPRESSED) != 0);
+        CacheValueSerializer.CacheValue value = serializer.deserialize(bytes, Blog.class, true);
+        assertEquals(blog, value.getValue());
+        assertEquals(expireAt, value.getExpireAt());
+    }
+
+    @Test
+    void compressedJsonFallback() {
+        Voucher voucher = new Voucher().setId(3L).setRules(repeat("全场通用；", 500));
+
+        byte[] bytes = serializer.serialize(voucher);
+
+        assertEquals(JsonCacheCodec.ID | FLAG_COMPRESSED, bytes[0]);
+        Voucher decoded = serializer.deserialize(bytes, Voucher.class, false).getValue();
+        assertEquals(voucher.getRules(), decoded.getRules());
+    }
+
+    @Test
+    void compressionCanBeDisabledAndStillReadsCompressedValues() {
+        CacheProperties properties = new CacheProperties();
+        properties.setCompressThreshold(0);
+        CacheValueSerializer uncompressed = serializer(properties);
+        Blog blog = blog(repeat("abc", 2000));
+
+        byte[] bytes = uncompressed.serialize(blog);
+
+        assertEquals(BinaryCacheCodec.ID, bytes[0]);
+        // 关闭压缩的节点仍然能读取其他节点压缩的数据，反之亦然
+        assertEquals(blog, uncompressed.deserialize(serializer.serialize(blog), Blog.class, false).getValue());
+        assertEquals(blog, serializer.deserialize(bytes, Blog.class, false).getValue());
+    }
+
+    private static Blog blog(String content) {
+        return new Blog().setId(1L).setShopId(2L).setUserId(3L).setTitle("探店").setContent(content)
+                .setLiked(10).setComments(0).setCreateTime(LocalDateTime.of(2022, 1, 1, 12, 0));
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder(s.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    static CacheValueSerializer serializer(CacheProperties properties) {
+        CacheCodecConfig config = new CacheCodecConfig();
+        BinaryCacheCodec binary = new BinaryCacheCodec(Arrays.asList(
+                config.shopSchema(), config.shopTypeSchema(), config.blogSchema(), config.userDTOSchema()));
+        return new CacheValueSerializer(Arrays.asList(new JsonCacheCodec(), binary), properties, new SimpleMeterRegistry());
+    }
+}
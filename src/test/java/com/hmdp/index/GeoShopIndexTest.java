@@ -0,0 +1,190 @@
+package com.hmdp.index;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 附近查询与暴力计算所有店铺的球面距离再排序的结果一致：格子和圈的边界、0度和±180度经线、删除和类型变化、翻页
+ */
+class GeoShopIndexTest {
+
+    private final GeoShopIndex index = new GeoShopIndex();
+
+    /**
+     * 索引中应有的店铺：id -> 店铺
+     */
+    private final Map<Long, Shop> shops = new HashMap<>();
+
+    private final Random random = new Random(42);
+
+    @Test
+    void matchesBruteForceInCity() {
+        for (long id = 1; id <= 3000; id++) {
+            put(shop(id, random.nextInt(3) + 1, 120.0 + random.nextDouble() * 0.3, 30.2 + random.nextDouble() * 0.2));
+        }
+        for (int i = 0; i < 300; i++) {
+            assertNearby(random.nextInt(3) + 1, 120.0 + random.nextDouble() * 0.3, 30.2 + random.nextDouble() * 0.2,
+                    50 + random.nextDouble() * 5000, random.nextInt(50) + 1);
+        }
+    }
+
+    @Test
+    void pointsOnCellBoundaries() {
+        // 1.店铺和用户都在格子的边线和角上，同一坐标上有多个店铺，距离相同时按id排序
+        long id = 1;
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 20; j++) {
+                double x = 120.0 + i * 0.01;
+                double y = 30.0 + j * 0.01;
+                put(shop(id++, 1, x, y));
+                put(shop(id++, 1, x, y));
+                put(shop(id++, 1, x + 0.005, y));
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            double x = 120.0 + random.nextInt(20) * 0.01;
+            double y = 30.0 + random.nextInt(20) * 0.01;
+            // 2.半径正好落在圈的边界附近
+            double radius = (random.nextInt(10) + 1) * 0.01 * 111_000 * (0.9 + random.nextDouble() * 0.2);
+            assertNearby(1, x, y, radius, random.nextInt(40) + 1);
+        }
+    }
+
+    @Test
+    void matchesBruteForceAroundZeroMeridianAndEquator() {
+        // 坐标为负数的格子向下取整
+        for (long id = 1; id <= 2000; id++) {
+            put(shop(id, 1, -0.1 + random.nextDouble() * 0.2, -0.1 + random.nextDouble() * 0.2));
+        }
+        for (int i = 0; i < 200; i++) {
+            assertNearby(1, -0.1 + random.nextDouble() * 0.2, -0.1 + random.nextDouble() * 0.2,
+                    100 + random.nextDouble() * 8000, random.nextInt(50) + 1);
+        }
+    }
+
+    @Test
+    void matchesBruteForceAcrossAntimeridian() {
+        // 180度和-180度经线两侧的店铺相距很近
+        for (long id = 1; id <= 2000; id++) {
+            double x = 179.9 + random.nextDouble() * 0.2;
+            put(shop(id, 1, x > 180 ? x - 360 : x, 10.0 + random.nextDouble() * 0.1));
+        }
+        put(shop(5000L, 1, 180.0, 10.05));
+        put(shop(5001L, 1, -180.0, 10.05));
+        for (int i = 0; i < 200; i++) {
+            double x = 179.9 + random.nextDouble() * 0.2;
+            assertNearby(1, x > 180 ? x - 360 : x, 10.0 + random.nextDouble() * 0.1,
+                    100 + random.nextDouble() * 8000, random.nextInt(50) + 1);
+        }
+        assertNearby(1, 180.0, 10.05, 3000, 20);
+        assertNearby(1, -180.0, 10.05, 3000, 20);
+    }
+
+    @Test
+    void removalsAndTypeMovesMatchBruteForce() {
+        for (long id = 1; id <= 2000; id++) {
+            put(shop(id, random.nextInt(3) + 1, 120.0 + random.nextDouble() * 0.2, 30.2 + random.nextDouble() * 0.2));
+        }
+        for (int round = 0; round < 2000; round++) {
+            long id = random.nextInt(2200) + 1;
+            Shop before = shops.get(id);
+            int op = random.nextInt(4);
+            if (op == 0) {
+                // 1.删除，或删除不存在的店铺
+                index.update(before, null);
+                shops.remove(id);
+            } else if (op == 1 && before != null) {
+                // 2.坐标被清空，不再参与附近查询
+                index.update(before, shop(id, before.getTypeId(), null, null));
+                shops.remove(id);
+            } else {
+                // 3.新增、移动坐标或者换类型
+                Shop after = shop(id, random.nextInt(3) + 1, 120.0 + random.nextDouble() * 0.2, 30.2 + random.nextDouble() * 0.2);
+                index.update(before, after);
+                shops.put(id, after);
+            }
+            if (round % 20 == 0) {
+                assertNearby(random.nextInt(3) + 1, 120.0 + random.nextDouble() * 0.2, 30.2 + random.nextDouble() * 0.2,
+                        100 + random.nextDouble() * 5000, random.nextInt(30) + 1);
+            }
+        }
+    }
+
+    @Test
+    void pagesConcatenateToBruteForceOrder() {
+        for (long id = 1; id <= 2000; id++) {
+            // 坐标精度较低，制造大量距离相同的店铺
+            double x = 120.0 + random.nextInt(200) * 0.001;
+            double y = 30.2 + random.nextInt(200) * 0.001;
+            put(shop(id, 1, x, y));
+        }
+        for (int i = 0; i < 30; i++) {
+            double x = 120.0 + random.nextDouble() * 0.2;
+            double y = 30.2 + random.nextDouble() * 0.2;
+            double radius = 500 + random.nextDouble() * 5000;
+            int pageSize = random.nextInt(20) + 1;
+            List<GeoHit> expected = bruteForce(1, x, y, radius, Integer.MAX_VALUE, -1, Long.MIN_VALUE);
+
+            List<GeoHit> actual = new ArrayList<>();
+            List<GeoHit> page = index.nearby(1, x, y, radius, pageSize);
+            while (!page.isEmpty()) {
+                assertTrue(page.size() <= pageSize);
+                actual.addAll(page);
+                GeoHit last = page.get(page.size() - 1);
+                page = index.nearby(1, x, y, radius, pageSize, last.getDistance(), last.getId());
+            }
+            assertHits(expected, actual);
+        }
+    }
+
+    private void assertNearby(long typeId, double x, double y, double radius, int limit) {
+        assertHits(bruteForce(typeId, x, y, radius, limit, -1, Long.MIN_VALUE), index.nearby(typeId, x, y, radius, limit));
+    }
+
+    private static void assertHits(List<GeoHit> expected, List<GeoHit> actual) {
+        assertEquals(ids(expected), ids(actual));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDistance(), actual.get(i).getDistance());
+        }
+    }
+
+    private static List<Long> ids(List<GeoHit> hits) {
+        return hits.stream().map(GeoHit::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * 计算类型下所有店铺的距离，过滤后按距离、id排序
+     */
+    private List<GeoHit> bruteForce(long typeId, double x, double y, double radius, int limit,
+                                    double afterDistance, long afterId) {
+        return shops.values().stream()
+                .filter(shop -> shop.getTypeId() == typeId)
+                .map(shop -> new GeoHit(shop.getId(), GeoShopIndex.distance(x, y, shop.getX(), shop.getY())))
+                .filter(hit -> hit.getDistance() <= radius)
+                .filter(hit -> hit.getDistance() > afterDistance
+                        || (hit.getDistance() == afterDistance && hit.getId() > afterId))
+                .sorted(Comparator.comparingDouble(GeoHit::getDistance).thenComparingLong(GeoHit::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private void put(Shop shop) {
+        index.update(shops.get(shop.getId()), shop);
+        shops.put(shop.getId(), shop);
+    }
+
+    private static Shop shop(long id, long typeId, Double x, Double y) {
+        return new Shop().setId(id).setTypeId(typeId).setX(x).setY(y);
+    }
+}
@@ -0,0 +1,276 @@
+package com.hmdp.index;
+
+import com.hmdp.dto.ShopFilter;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 多条件筛选与逐个店铺判断条件再排序的结果一致：BitSet求交集后的逐列检查、营业时间（包括跨过零点和不是15分钟整数倍的），
+ * 以及候选少时的顺序扫描和候选多时的分块并行扫描
+ */
+class ShopFilterIndexTest {
+
+    /**
+     * 规则的、不规则的、跨过零点的、多段的、全天的和无法解析的营业时间
+     */
+    private static final String[] OPEN_HOURS = {
+            "10:00-22:00", "09:30-21:45", "10:10-21:50", "22:00-02:00", "18:30-01:15", "20:07-03:53",
+            "10:00-14:00,17:00-22:00", "11:20-14:10,17:40-23:55", "00:00-00:00", "00:00-24:00", "全天营业", null
+    };
+
+    private ShopFilterIndex index = new ShopFilterIndex(1);
+
+    /**
+     * 索引中应有的店铺：id -> 店铺
+     */
+    private final Map<Long, Shop> shops = new HashMap<>();
+
+    private final Random random = new Random(42);
+
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+    }
+
+    @Test
+    void sequentialScanMatchesBruteForce() {
+        for (long id = 1; id <= 5000; id++) {
+            put(randomShop(id));
+        }
+        for (int i = 0; i < 500; i++) {
+            assertSearch(randomFilter(), randomSort(), random.nextInt(24 * 60), random.nextInt(50) + 1);
+        }
+    }
+
+    @Test
+    void openHoursAtBoundaries() {
+        for (long id = 1; id <= 2000; id++) {
+            put(randomShop(id));
+        }
+        // 营业区间的起止、零点前后、以及每个15分钟段的起点
+        int[] minutes = {0, 1, 14, 15, 60 + 14, 60 + 15, 2 * 60 - 1, 2 * 60, 3 * 60 + 52, 3 * 60 + 53,
+                9 * 60 + 29, 9 * 60 + 30, 10 * 60 + 9, 10 * 60 + 10, 14 * 60 + 9, 14 * 60 + 10,
+                20 * 60 + 6, 20 * 60 + 7, 21 * 60 + 44, 21 * 60 + 45, 21 * 60 + 49, 21 * 60 + 50,
+                22 * 60 - 1, 22 * 60, 23 * 60 + 54, 23 * 60 + 55, 24 * 60 - 1};
+        for (int minute : minutes) {
+            ShopFilter filter = new ShopFilter();
+            filter.setOpenNow(true);
+            assertSearch(filter, ShopFilterIndex.Sort.SCORE, minute, shops.size());
+        }
+    }
+
+    @Test
+    void updatesAndDeletesMatchBruteForce() {
+        for (long id = 1; id <= 2000; id++) {
+            put(randomShop(id));
+        }
+        for (int round = 0; round < 3000; round++) {
+            long id = random.nextInt(2200) + 1;
+            if (random.nextInt(3) == 0) {
+                Shop before = shops.remove(id);
+                if (before != null) {
+                    index.update(before, null);
+                }
+            } else {
+                // 换类型、换坐标、换营业时间，复用删除后空出的槽位
+                put(randomShop(id));
+            }
+            if (round % 20 == 0) {
+                assertSearch(randomFilter(), randomSort(), random.nextInt(24 * 60), random.nextInt(30) + 1);
+            }
+        }
+    }
+
+    @Test
+    void parallelScanMatchesBruteForce() {
+        index.shutdown();
+        index = new ShopFilterIndex(4);
+        // 候选超过50000个时分块并行扫描，每块65536个槽位
+        for (long id = 1; id <= 150_000; id++) {
+            put(randomShop(id));
+        }
+        for (int i = 0; i < 20; i++) {
+            ShopFilter filter = new ShopFilter();
+            if (random.nextBoolean()) {
+                filter.setMinScore(random.nextInt(20));
+            }
+            if (random.nextBoolean()) {
+                filter.setMaxPrice(400L + random.nextInt(100));
+            }
+            assertSearch(filter, randomSort(), random.nextInt(24 * 60), random.nextInt(100) + 1);
+        }
+        // 按距离筛选，候选也很多
+        ShopFilter filter = new ShopFilter();
+        filter.setX(120.15);
+        filter.setY(30.3);
+        filter.setRadius(100_000.0);
+        assertSearch(filter, ShopFilterIndex.Sort.DISTANCE, 0, 100);
+    }
+
+    private void assertSearch(ShopFilter filter, ShopFilterIndex.Sort sort, int minuteOfDay, int limit) {
+        List<GeoHit> expected = bruteForce(filter, sort, minuteOfDay, limit);
+        List<GeoHit> actual = index.search(filter, sort, minuteOfDay, limit);
+        assertEquals(ids(expected), ids(actual), () -> filter + " " + sort + " " + minuteOfDay);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDistance(), actual.get(i).getDistance());
+        }
+        assertTrue(actual.size() <= limit);
+    }
+
+    /**
+     * 逐个店铺判断所有条件，按排序值、id排序
+     */
+    private List<GeoHit> bruteForce(ShopFilter filter, ShopFilterIndex.Sort sort, int minuteOfDay, int limit) {
+        boolean hasLocation = filter.getX() != null && filter.getY() != null;
+        Map<Long, Double> keys = new HashMap<>();
+        Map<Long, Double> distances = new HashMap<>();
+        for (Shop shop : shops.values()) {
+            if (filter.getTypeId() != null && !filter.getTypeId().equals(shop.getTypeId())) {
+                continue;
+            }
+            Long price = shop.getAvgPrice();
+            if (filter.getMinPrice() != null && (price == null || price < filter.getMinPrice())) {
+                continue;
+            }
+            if (filter.getMaxPrice() != null && (price == null || price > filter.getMaxPrice())) {
+                continue;
+            }
+            int score = shop.getScore() == null ? 0 : shop.getScore();
+            if (filter.getMinScore() != null && score < filter.getMinScore()) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(filter.getOpenNow()) && !isOpen(shop.getOpenHours(), minuteOfDay)) {
+                continue;
+            }
+            double distance = -1;
+            if (hasLocation) {
+                if (shop.getX() == null || shop.getY() == null) {
+                    continue;
+                }
+                distance = GeoShopIndex.distance(filter.getX(), filter.getY(), shop.getX(), shop.getY());
+                if (filter.getRadius() != null && distance > filter.getRadius()) {
+                    continue;
+                }
+            }
+            double key;
+            switch (sort) {
+                case DISTANCE:
+                    key = distance;
+                    break;
+                case PRICE:
+                    // 没有均价的排在最后
+                    key = price == null ? Double.MAX_VALUE : price;
+                    break;
+                case PRICE_DESC:
+                    key = price == null ? 1 : -price;
+                    break;
+                case SOLD:
+                    key = shop.getSold() == null ? 0 : -shop.getSold();
+                    break;
+                default:
+                    key = -score;
+            }
+            keys.put(shop.getId(), key);
+            distances.put(shop.getId(), distance);
+        }
+        return keys.keySet().stream()
+                .sorted(Comparator.comparingDouble((Long id) -> keys.get(id)).thenComparingLong(id -> id))
+                .limit(limit)
+                .map(id -> new GeoHit(id, distances.get(id)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 按营业时间的原文判断是否营业：结束不晚于开始时跨过零点，起止相同表示全天
+     */
+    private static boolean isOpen(String openHours, int minute) {
+        if (openHours == null || !openHours.contains(":")) {
+            return false;
+        }
+        for (String interval : openHours.split(",")) {
+            String[] range = interval.split("-");
+            int start = minutes(range[0]);
+            int end = minutes(range[1]);
+            boolean open = start < end ? minute >= start && minute < end : minute >= start || minute < end;
+            if (open) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int minutes(String time) {
+        String[] parts = time.split(":");
+        return Integer.parseInt(parts[0]) * 60 + Integer.parseInt(parts[1]);
+    }
+
+    private ShopFilter randomFilter() {
+        ShopFilter filter = new ShopFilter();
+        if (random.nextInt(3) == 0) {
+            filter.setTypeId((long) random.nextInt(6) + 1);
+        }
+        if (random.nextInt(3) == 0) {
+            filter.setMinPrice((long) random.nextInt(300));
+        }
+        if (random.nextInt(3) == 0) {
+            filter.setMaxPrice((long) random.nextInt(700));
+        }
+        if (random.nextInt(3) == 0) {
+            filter.setMinScore(random.nextInt(55));
+        }
+        if (random.nextInt(3) == 0) {
+            filter.setOpenNow(true);
+        }
+        if (random.nextInt(2) == 0) {
+            filter.setX(120.0 + random.nextDouble() * 0.3);
+            filter.setY(30.2 + random.nextDouble() * 0.2);
+            filter.setRadius(random.nextInt(4) == 0 ? null : 100 + random.nextDouble() * 10_000);
+        }
+        return filter;
+    }
+
+    private ShopFilterIndex.Sort randomSort() {
+        ShopFilterIndex.Sort[] sorts = ShopFilterIndex.Sort.values();
+        return sorts[random.nextInt(sorts.length)];
+    }
+
+    /**
+     * 少数店铺没有类型、坐标、均价或评分，均价和评分跨过段的边界
+     */
+    private Shop randomShop(long id) {
+        Shop shop = new Shop().setId(id).setSold(random.nextInt(1000));
+        if (random.nextInt(20) != 0) {
+            shop.setTypeId((long) random.nextInt(6) + 1);
+        }
+        if (random.nextInt(20) != 0) {
+            shop.setX(120.0 + random.nextDouble() * 0.3).setY(30.2 + random.nextDouble() * 0.2);
+        }
+        if (random.nextInt(10) != 0) {
+            shop.setAvgPrice((long) random.nextInt(700));
+        }
+        if (random.nextInt(10) != 0) {
+            shop.setScore(random.nextInt(51));
+        }
+        return shop.setOpenHours(OPEN_HOURS[random.nextInt(OPEN_HOURS.length)]);
+    }
+
+    private void put(Shop shop) {
+        index.update(shops.get(shop.getId()), shop);
+        shops.put(shop.getId(), shop);
+    }
+
+    private static List<Long> ids(List<GeoHit> hits) {
+        return hits.stream().map(GeoHit::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,159 @@
+package com.hmdp.index;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.event.ShopChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 全量加载期间到达的店铺事件：不能被之后读取的旧数据覆盖，也不能在索引已经是新数据时重复更新
+ */
+class ShopIndexManagerTest {
+
+    private final StateIndex index = new StateIndex();
+
+    private final ShopIndexManager manager = new ShopIndexManager();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(manager, "indexes", Collections.singletonList(index));
+    }
+
+    @Test
+    void eventBeforeChunkIsReadIsCoveredByTheRead() {
+        // 店铺3在读取之前修改，读取到的已经是新数据
+        manager.onShopChanged(new ShopChangedEvent(shop(3L, "旧"), shop(3L, "新")));
+        manager.load(() -> Arrays.asList(shop(1L, "a"), shop(3L, "新")));
+        manager.loaded();
+
+        assertEquals("新", index.state.get(3L).getName());
+        assertEquals(0, index.violations);
+    }
+
+    @Test
+    void eventDuringReadThatTheReadAlreadySawIsSkipped() {
+        manager.load(() -> {
+            // 读取期间提交的修改，读取到的是新数据
+            manager.onShopChanged(new ShopChangedEvent(shop(1L, "旧"), shop(1L, "新")));
+            return Collections.singletonList(shop(1L, "新"));
+        });
+        manager.loaded();
+
+        assertEquals("新", index.state.get(1L).getName());
+        assertEquals(0, index.violations);
+    }
+
+    @Test
+    void eventDuringReadThatTheReadMissedIsApplied() {
+        manager.load(() -> {
+            // 读取期间提交的修改，读取到的是旧数据
+            manager.onShopChanged(new ShopChangedEvent(shop(1L, "旧"), shop(1L, "新")));
+            return Collections.singletonList(shop(1L, "旧"));
+        });
+        manager.loaded();
+
+        assertEquals("新", index.state.get(1L).getName());
+        assertEquals(0, index.violations);
+    }
+
+    @Test
+    void eventForLoadedShopIsNotOverwritten() {
+        manager.load(() -> Arrays.asList(shop(1L, "旧"), shop(2L, "b")));
+        manager.onShopChanged(new ShopChangedEvent(shop(1L, "旧"), shop(1L, "新")));
+        manager.onShopChanged(new ShopChangedEvent(shop(2L, "b"), null));
+        manager.load(() -> Collections.singletonList(shop(5L, "c")));
+        manager.loaded();
+
+        assertEquals("新", index.state.get(1L).getName());
+        assertFalse(index.state.containsKey(2L));
+        assertEquals(0, index.violations);
+    }
+
+    @Test
+    void shopInsertedAfterTheLastReadIsAddedWhenLoaded() {
+        manager.load(() -> Collections.singletonList(shop(1L, "a")));
+        manager.load(Collections::emptyList);
+        manager.onShopChanged(new ShopChangedEvent(null, shop(9L, "新店")));
+        manager.onShopChanged(new ShopChangedEvent(shop(9L, "新店"), shop(9L, "新店2")));
+        manager.onShopChanged(new ShopChangedEvent(null, shop(10L, "删除的店")));
+        manager.onShopChanged(new ShopChangedEvent(shop(10L, "删除的店"), null));
+        assertFalse(index.isReady());
+
+        manager.loaded();
+
+        assertTrue(index.isReady());
+        assertEquals("新店2", index.state.get(9L).getName());
+        assertFalse(index.state.containsKey(10L));
+        assertEquals(0, index.violations);
+    }
+
+    @Test
+    void eventsAfterLoadedAreAppliedDirectly() {
+        manager.load(() -> Collections.singletonList(shop(1L, "a")));
+        manager.loaded();
+
+        manager.onShopChanged(new ShopChangedEvent(shop(1L, "a"), shop(1L, "b")));
+        manager.onShopChanged(new ShopChangedEvent(null, shop(2L, "c")));
+
+        assertEquals("b", index.state.get(1L).getName());
+        assertEquals("c", index.state.get(2L).getName());
+        assertEquals(0, index.violations);
+    }
+
+    @Test
+    void failedLoadLeavesIndexesNotReady() {
+        manager.load(() -> Collections.singletonList(shop(1L, "a")));
+        manager.loadFailed();
+
+        assertFalse(index.isReady());
+        manager.onShopChanged(new ShopChangedEvent(null, shop(2L, "b")));
+        assertEquals("b", index.state.get(2L).getName());
+    }
+
+    private static Shop shop(Long id, String name) {
+        return new Shop().setId(id).setName(name).setTypeId(1L).setSold(10);
+    }
+
+    /**
+     * 按id保存店铺的索引，更新时传入的变化前数据与索引中的不一致就记为一次错误
+     */
+    private static class StateIndex implements ShopIndex {
+        private final Map<Long, Shop> state = new HashMap<>();
+        private int violations;
+        private boolean ready;
+
+        @Override
+        public void update(Shop before, Shop after) {
+            long id = after != null ? after.getId() : before.getId();
+            if (!Objects.equals(state.get(id), before)) {
+                violations++;
+            }
+            if (after == null) {
+                state.remove(id);
+            } else {
+                state.put(id, after);
+            }
+        }
+
+        @Override
+        public void ready() {
+            ready = true;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+    }
+}
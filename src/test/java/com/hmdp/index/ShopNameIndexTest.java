@@ -0,0 +1,224 @@
+package com.hmdp.index;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 名称查询与逐个店铺String.contains再排序的结果一致：一个字、两个字和更长的查询，完全相同、前缀、包含三个档次，
+ * 改名和删除（包括重建），以及销量相同时的翻页
+ */
+class ShopNameIndexTest {
+
+    /**
+     * 字很少，名称之间有大量相同的字和bigram
+     */
+    private static final String ALPHABET = "茶餐厅火锅店面馆aB";
+
+    private final ShopNameIndex index = new ShopNameIndex();
+
+    /**
+     * 索引中应有的店铺：id -> 店铺
+     */
+    private final Map<Long, Shop> shops = new HashMap<>();
+
+    private final Random random = new Random(42);
+
+    @Test
+    void matchesContainsScan() {
+        for (long id = 1; id <= 3000; id++) {
+            put(shop(id, randomName(), randomSold()));
+        }
+        for (int i = 0; i < 500; i++) {
+            assertSearch(randomQuery(), random.nextInt(50) + 1);
+        }
+    }
+
+    @Test
+    void ranksExactThenPrefixThenContains() {
+        put(shop(1L, "火锅", 10));
+        put(shop(2L, "火锅店", 100));
+        put(shop(3L, "老火锅", 1000));
+        put(shop(4L, " 火锅 ", 5));
+        put(shop(5L, "火锅面馆", 100));
+
+        List<NameHit> hits = index.search("火锅", 10);
+
+        // 完全相同（首尾空格不算）、以关键字开头、包含，档次相同按销量降序，销量相同按id升序
+        assertEquals(Arrays.asList(1L, 4L, 2L, 5L, 3L), ids(hits));
+        assertEquals(0L, hits.get(0).getRank() >>> 32);
+        assertEquals(1L, hits.get(2).getRank() >>> 32);
+        assertEquals(2L, hits.get(4).getRank() >>> 32);
+        // 一个字和大小写
+        put(shop(6L, "b", 0));
+        put(shop(7L, "Ba", 0));
+        assertEquals(Arrays.asList(6L, 7L), ids(index.search("B", 10)));
+    }
+
+    @Test
+    void renamesAndDeletesMatchContainsScan() {
+        for (long id = 1; id <= 500; id++) {
+            put(shop(id, randomName(), randomSold()));
+        }
+        for (int round = 0; round < 3000; round++) {
+            long id = random.nextInt(600) + 1;
+            int op = random.nextInt(4);
+            if (op == 0) {
+                remove(id);
+            } else if (op == 1 && shops.containsKey(id)) {
+                // 只有销量变化
+                put(shop(id, shops.get(id).getName(), randomSold()));
+            } else {
+                put(shop(id, randomName(), randomSold()));
+            }
+            if (round % 10 == 0) {
+                assertSearch(randomQuery(), random.nextInt(30) + 1);
+            }
+        }
+    }
+
+    @Test
+    void compactionKeepsResults() {
+        for (long id = 1; id <= 2000; id++) {
+            put(shop(id, randomName(), randomSold()));
+        }
+        // 删除的槽位超过10000个并且多于有效槽位，触发重建
+        for (int i = 0; i < 12000; i++) {
+            long id = random.nextInt(2000) + 1;
+            if (random.nextInt(10) == 0) {
+                remove(id);
+            } else {
+                put(shop(id, randomName(), randomSold()));
+            }
+        }
+        // 重建后槽位数少于写入过的次数
+        assertTrue((int) ReflectionTestUtils.getField(index, "slotCount") < 2000 + 12000 - 10000);
+        // 空名称的店铺不在索引中
+        put(shop(1L, " ", 5));
+        for (int i = 0; i < 300; i++) {
+            assertSearch(randomQuery(), random.nextInt(50) + 1);
+        }
+    }
+
+    @Test
+    void pagesConcatenateAcrossSoldTies() {
+        for (long id = 1; id <= 3000; id++) {
+            // 销量只有三种，大量排序值相同的店铺
+            put(shop(id, randomName(), random.nextInt(3) * 10));
+        }
+        for (int i = 0; i < 100; i++) {
+            String query = randomQuery();
+            int pageSize = random.nextInt(20) + 1;
+            List<NameHit> expected = scan(query, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE);
+
+            List<NameHit> actual = new ArrayList<>();
+            List<NameHit> page = index.search(query, pageSize);
+            while (!page.isEmpty()) {
+                assertTrue(page.size() <= pageSize);
+                actual.addAll(page);
+                NameHit last = page.get(page.size() - 1);
+                page = index.search(query, pageSize, last.getRank(), last.getId());
+            }
+            assertHits(expected, actual);
+        }
+    }
+
+    private void assertSearch(String query, int limit) {
+        assertHits(scan(query, limit, Long.MIN_VALUE, Long.MIN_VALUE), index.search(query, limit));
+    }
+
+    private static void assertHits(List<NameHit> expected, List<NameHit> actual) {
+        assertEquals(ids(expected), ids(actual));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getRank(), actual.get(i).getRank());
+        }
+    }
+
+    /**
+     * 逐个店铺判断名称是否包含查询词，按(排序值, id)排序
+     */
+    private List<NameHit> scan(String keyword, int limit, long afterRank, long afterId) {
+        String query = keyword.trim().toLowerCase();
+        List<NameHit> hits = new ArrayList<>();
+        for (Shop shop : shops.values()) {
+            String name = shop.getName().trim().toLowerCase();
+            if (name.isEmpty() || !name.contains(query)) {
+                continue;
+            }
+            long tier = name.equals(query) ? 0 : name.startsWith(query) ? 1 : 2;
+            long rank = (tier << 32) | (Integer.MAX_VALUE - shop.getSold());
+            if (rank > afterRank || (rank == afterRank && shop.getId() > afterId)) {
+                hits.add(new NameHit(shop.getId(), rank));
+            }
+        }
+        return hits.stream()
+                .sorted(Comparator.comparingLong(NameHit::getRank).thenComparingLong(NameHit::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private void put(Shop shop) {
+        index.update(shops.get(shop.getId()), shop);
+        shops.put(shop.getId(), shop);
+    }
+
+    private void remove(long id) {
+        Shop before = shops.remove(id);
+        if (before != null) {
+            index.update(before, null);
+        }
+    }
+
+    private String randomName() {
+        return randomString(random.nextInt(6) + 1);
+    }
+
+    /**
+     * 一个字、两个字、更长的查询，大部分取自已有的名称
+     */
+    private String randomQuery() {
+        int length = random.nextInt(4) + 1;
+        if (random.nextInt(4) == 0 || shops.isEmpty()) {
+            return randomString(length);
+        }
+        List<Shop> all = new ArrayList<>(shops.values());
+        String name = all.get(random.nextInt(all.size())).getName().trim();
+        if (name.length() <= length) {
+            return name.isEmpty() ? randomString(length) : name;
+        }
+        int start = random.nextInt(name.length() - length + 1);
+        return name.substring(start, start + length);
+    }
+
+    private String randomString(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private int randomSold() {
+        return random.nextInt(5) * 100;
+    }
+
+    private static List<Long> ids(List<NameHit> hits) {
+        return hits.stream().map(NameHit::getId).collect(Collectors.toList());
+    }
+
+    private static Shop shop(long id, String name, int sold) {
+        return new Shop().setId(id).setName(name).setSold(sold);
+    }
+}
@@ -0,0 +1,222 @@
+package com.hmdp.index;
+
+import com.hmdp.dto.SuggestionDTO;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 前缀提示与逐个提示词过滤再按权重排序的结果一致：权重 = 销量 + 评分 * 10，同一提示词（忽略大小写）的所有店铺累加，
+ * 覆盖提示词从delta合并进数组、店铺数量减到0、大小写混合的前缀
+ */
+class ShopSuggestIndexTest {
+
+    private static final String ALPHABET = "茶餐厅火锅aAbB";
+
+    private final ShopSuggestIndex index = new ShopSuggestIndex();
+
+    /**
+     * 索引中应有的店铺：id -> 店铺
+     */
+    private final Map<Long, Shop> shops = new HashMap<>();
+
+    private final Random random = new Random(42);
+
+    @Test
+    void matchesBruteForceAfterLoad() {
+        for (long id = 1; id <= 3000; id++) {
+            put(shop(id));
+        }
+        index.ready();
+        for (int i = 0; i < 500; i++) {
+            assertSuggest(randomPrefix(), random.nextInt(20) + 1);
+        }
+    }
+
+    @Test
+    void mixedCasePrefixes() {
+        put(shop(1L, "Abc", "杭州", 10, 0));
+        put(shop(2L, "aBd", "杭州", 20, 0));
+        put(shop(3L, "ABC", "Abc", 5, 1));
+        index.ready();
+
+        // 同一提示词忽略大小写累加：名称abc = 10 + (5 + 1 * 10)，商圈Abc是另一个提示词
+        List<SuggestionDTO> result = index.suggest("aB", 10);
+        assertEquals(3, result.size());
+        assertEquals("abc", result.get(0).getText().toLowerCase());
+        assertEquals(25L, result.get(0).getWeight());
+        assertEquals(20L, result.get(1).getWeight());
+        assertEquals(15L, result.get(2).getWeight());
+        assertSuggest("ab", 10);
+        assertSuggest("AB", 10);
+        assertSuggest("Abc", 1);
+    }
+
+    @Test
+    void weightsMoveFromDeltaToArray() {
+        for (long id = 1; id <= 500; id++) {
+            put(shop(id));
+        }
+        index.ready();
+        // 1.加载完成后新的提示词先在delta中，查询合并数组和delta
+        for (long id = 501; id <= 1000; id++) {
+            put(shop(id));
+            if (id % 10 == 0) {
+                assertSuggest(randomPrefix(), random.nextInt(20) + 1);
+            }
+        }
+        // 2.新提示词超过4096个时合并进数组，之后的变化原地修改数组中的权重
+        for (long id = 1001; id <= 6000; id++) {
+            put(shop(id, randomName(6) + id, randomName(2), random.nextInt(100), random.nextInt(50)));
+            if (id % 100 == 0) {
+                assertSuggest(randomPrefix(), random.nextInt(20) + 1);
+            }
+        }
+        for (int round = 0; round < 3000; round++) {
+            long id = random.nextInt(6000) + 1;
+            Shop before = shops.get(id);
+            put(shop(id, before.getName(), before.getArea(), random.nextInt(100), random.nextInt(50)));
+            if (round % 30 == 0) {
+                assertSuggest(randomPrefix(), random.nextInt(20) + 1);
+            }
+        }
+    }
+
+    @Test
+    void countDroppingToZeroHidesSuggestion() {
+        put(shop(1L, "火锅", "西湖", 10, 0));
+        put(shop(2L, "火锅", "西湖", 20, 0));
+        put(shop(3L, "火锅店", "滨江", 1, 0));
+        index.ready();
+
+        remove(1L);
+        remove(2L);
+
+        // 1.店铺数量为0的提示词不再返回，即使查询范围只有它
+        assertEquals(1, index.suggest("火锅", 10).size());
+        assertTrue(index.suggest("西", 10).isEmpty());
+        assertSuggest("火", 10);
+        // 2.再次出现时权重从0开始累加
+        put(shop(4L, "火锅", "西湖", 7, 0));
+        assertEquals(7L, index.suggest("西", 10).get(0).getWeight());
+        assertSuggest("火", 10);
+    }
+
+    @Test
+    void randomUpdatesAndDeletesMatchBruteForce() {
+        for (long id = 1; id <= 1000; id++) {
+            put(shop(id));
+        }
+        index.ready();
+        for (int round = 0; round < 5000; round++) {
+            long id = random.nextInt(1200) + 1;
+            if (random.nextInt(3) == 0) {
+                remove(id);
+            } else {
+                put(shop(id));
+            }
+            if (round % 20 == 0) {
+                assertSuggest(randomPrefix(), random.nextInt(20) + 1);
+            }
+        }
+    }
+
+    /**
+     * 权重序列必须与暴力计算的前k个相同，权重相同的提示词之间顺序不限，
+     * 所以只要求每个结果都是暴力计算中权重相同的提示词，并且不重复
+     */
+    private void assertSuggest(String prefix, int k) {
+        List<SuggestionDTO> expected = bruteForce(prefix);
+        List<SuggestionDTO> actual = index.suggest(prefix, k);
+        List<Long> expectedWeights = expected.stream().limit(k).map(SuggestionDTO::getWeight).collect(Collectors.toList());
+        assertEquals(expectedWeights, actual.stream().map(SuggestionDTO::getWeight).collect(Collectors.toList()), prefix);
+        Set<String> expectedKeys = expected.stream().map(ShopSuggestIndexTest::key).collect(Collectors.toSet());
+        Set<String> seen = new HashSet<>();
+        for (SuggestionDTO suggestion : actual) {
+            String key = key(suggestion);
+            assertTrue(expectedKeys.contains(key), key);
+            assertTrue(seen.add(key), key);
+        }
+    }
+
+    /**
+     * 按提示词（忽略大小写）和类型累加所有店铺的权重，过滤前缀后按权重降序
+     */
+    private List<SuggestionDTO> bruteForce(String prefix) {
+        Map<String, SuggestionDTO> suggestions = new HashMap<>();
+        for (Shop shop : shops.values()) {
+            accumulate(suggestions, shop.getName(), SuggestionDTO.TYPE_NAME, shop);
+            accumulate(suggestions, shop.getArea(), SuggestionDTO.TYPE_AREA, shop);
+        }
+        return suggestions.values().stream()
+                .filter(s -> s.getText().regionMatches(true, 0, prefix, 0, prefix.length()))
+                .sorted((a, b) -> Long.compare(b.getWeight(), a.getWeight()))
+                .collect(Collectors.toList());
+    }
+
+    private static void accumulate(Map<String, SuggestionDTO> suggestions, String text, String type, Shop shop) {
+        if (text == null || text.trim().isEmpty()) {
+            return;
+        }
+        SuggestionDTO suggestion = new SuggestionDTO(text.trim(), type, ShopSuggestIndex.weight(shop));
+        suggestions.merge(key(suggestion), suggestion, (a, b) -> {
+            a.setWeight(a.getWeight() + b.getWeight());
+            return a;
+        });
+    }
+
+    private static String key(SuggestionDTO suggestion) {
+        return suggestion.getText().toLowerCase() + '\0' + suggestion.getType();
+    }
+
+    private void put(Shop shop) {
+        index.update(shops.get(shop.getId()), shop);
+        shops.put(shop.getId(), shop);
+    }
+
+    private void remove(long id) {
+        Shop before = shops.remove(id);
+        if (before != null) {
+            index.update(before, null);
+        }
+    }
+
+    private String randomPrefix() {
+        List<Shop> all = new ArrayList<>(shops.values());
+        if (all.isEmpty() || random.nextInt(4) == 0) {
+            return randomName(random.nextInt(3) + 1);
+        }
+        Shop shop = all.get(random.nextInt(all.size()));
+        String text = random.nextBoolean() ? shop.getName() : shop.getArea();
+        String prefix = text.substring(0, Math.min(text.length(), random.nextInt(4) + 1));
+        // 换成随机的大小写
+        return random.nextBoolean() ? prefix.toUpperCase() : prefix;
+    }
+
+    private String randomName(int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private Shop shop(long id) {
+        return shop(id, randomName(random.nextInt(5) + 1), randomName(2), random.nextInt(100), random.nextInt(50));
+    }
+
+    private static Shop shop(long id, String name, String area, int sold, int score) {
+        return new Shop().setId(id).setName(name).setArea(area).setSold(sold).setScore(score);
+    }
+}
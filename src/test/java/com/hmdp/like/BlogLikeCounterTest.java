@@ -0,0 +1,138 @@
+package com.hmdp.like;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.expression.common.TemplateParserContext;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_ACTIVE_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_COUNT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_DIRTY_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 点赞数写回：写回间隔读取配置，每次写回都执行脚本删除很久没有变化的点赞数，点赞时记录最后变化的时间
+ */
+class BlogLikeCounterTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private ZSetOperations<String, String> zSetOperations;
+
+    private HashOperations<String, Object, Object> hashOperations;
+
+    private BlogMapper blogMapper;
+
+    private BlogLikeProperties properties;
+
+    private BlogLikeCounter counter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        zSetOperations = mock(ZSetOperations.class);
+        hashOperations = mock(HashOperations.class);
+        blogMapper = mock(BlogMapper.class);
+        when(stringRedisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(stringRedisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        properties = new BlogLikeProperties();
+        properties.setBatchSize(10);
+        properties.setEvictAfter(Duration.ofMinutes(30));
+        counter = new BlogLikeCounter(stringRedisTemplate, blogMapper, properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void flushIntervalReadsProperties() throws Exception {
+        properties.setFlushInterval(Duration.ofSeconds(3));
+        String expression = BlogLikeCounter.class.getMethod("flush").getAnnotation(Scheduled.class).fixedDelayString();
+
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        context.setBeanResolver((ctx, beanName) -> properties);
+        Object value = new SpelExpressionParser().parseExpression(expression, new TemplateParserContext())
+                .getValue(context);
+
+        assertEquals(3000L, value);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushWritesBackThenEvictsColdCounts() {
+        when(zSetOperations.range(BLOG_LIKE_DIRTY_KEY, 0, 9)).thenReturn(new LinkedHashSet<>(Arrays.asList("1", "2")));
+        // 笔记2的点赞数已经不在redis中
+        when(hashOperations.multiGet(eq(BLOG_LIKE_COUNT_KEY), anyList())).thenReturn(Arrays.asList("5", null));
+        long before = System.currentTimeMillis();
+
+        counter.flush();
+
+        // 1.一条UPDATE写回笔记1，笔记2直接从待写回集合中删除
+        ArgumentCaptor<List<Blog>> blogs = ArgumentCaptor.forClass(List.class);
+        verify(blogMapper).updateLikedBatch(blogs.capture());
+        assertEquals(1, blogs.getValue().size());
+        assertEquals(5, blogs.getValue().get(0).getLiked());
+        verify(zSetOperations).remove(BLOG_LIKE_DIRTY_KEY, "2");
+        // 2.脚本参数：删除的截止时间、最多删除的数量、写回的笔记和点赞数
+        Object[] args = flushArgs();
+        long deadline = Long.parseLong((String) args[0]);
+        assertTrue(deadline >= before - Duration.ofMinutes(30).toMillis());
+        assertTrue(deadline <= System.currentTimeMillis() - Duration.ofMinutes(30).toMillis());
+        assertEquals(Arrays.asList("10", "1", "5"), Arrays.asList(args).subList(1, args.length));
+    }
+
+    @Test
+    void flushEvictsEvenWithoutDirtyBlogs() {
+        when(zSetOperations.range(BLOG_LIKE_DIRTY_KEY, 0, 9)).thenReturn(Collections.emptySet());
+
+        counter.flush();
+
+        // 没有待写回的笔记也要删除很久没有变化的点赞数
+        verify(blogMapper, never()).updateLikedBatch(anyList());
+        assertEquals(2, flushArgs().length);
+    }
+
+    @Test
+    void toggleRecordsLastChange() {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any()))
+                .thenReturn(Arrays.asList(1L, 8L));
+
+        BlogLikeCounter.Toggle toggle = counter.toggle(1L, 2L);
+
+        assertTrue(toggle.isLiked());
+        assertEquals(8L, toggle.getCount());
+        verify(stringRedisTemplate).execute(any(RedisScript.class),
+                eq(Arrays.asList(BLOG_LIKED_KEY + 1, BLOG_LIKE_COUNT_KEY, BLOG_LIKE_DIRTY_KEY, BLOG_LIKE_ACTIVE_KEY)),
+                eq("1"), eq("2"), any());
+    }
+
+    private Object[] flushArgs() {
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(stringRedisTemplate).execute(any(RedisScript.class),
+                eq(Arrays.asList(BLOG_LIKE_COUNT_KEY, BLOG_LIKE_DIRTY_KEY, BLOG_LIKE_ACTIVE_KEY)), args.capture());
+        return args.getAllValues().toArray();
+    }
+}
@@ -0,0 +1,199 @@
+package com.hmdp.ranking;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.like.BlogLikeCounter;
+import com.hmdp.mapper.BlogMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.expression.common.TemplateParserContext;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOG_HOT_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 热门排行的全量计算：每批延长锁的有效期，锁失效时放弃；RENAME之后重新写入计算期间增量更新过的笔记
+ */
+@ExtendWith(MockitoExtension.class)
+class BlogHotRankingTest {
+
+    private static final byte[] HOT_KEY = BLOG_HOT_KEY.getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    @Mock
+    private BlogMapper blogMapper;
+
+    @Mock
+    private BlogLikeCounter blogLikeCounter;
+
+    @Spy
+    private BlogRankingProperties properties = new BlogRankingProperties();
+
+    @InjectMocks
+    private BlogHotRanking ranking;
+
+    /**
+     * 所有pipeline中的命令都发到这个连接
+     */
+    private final RedisConnection connection = mock(RedisConnection.class);
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        properties.setBatchSize(2);
+        lenient().when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(valueOperations.setIfAbsent(eq(LOCK_BLOG_HOT_KEY), anyString(), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .thenReturn(true);
+        lenient().when(stringRedisTemplate.opsForSet()).thenReturn(setOperations);
+        lenient().when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+            return Collections.emptyList();
+        });
+        lenient().when(blogLikeCounter.getLikes(anyList())).thenReturn(Collections.emptyMap());
+    }
+
+    @Test
+    void renewsLockAfterEachBatch() {
+        when(blogMapper.selectList(any())).thenReturn(
+                Arrays.asList(blog(1L, 10), blog(2L, 20)),
+                Collections.singletonList(blog(3L, 30)));
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any())).thenReturn(1L);
+
+        ranking.rebuild();
+
+        // 每一批之后用获取锁时的标示延长一次有效期
+        ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+        verify(valueOperations).setIfAbsent(eq(LOCK_BLOG_HOT_KEY), token.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+        verify(stringRedisTemplate, times(2)).execute(any(RedisScript.class),
+                eq(Collections.singletonList(LOCK_BLOG_HOT_KEY)), eq(token.getValue()), anyString());
+        verify(stringRedisTemplate).rename(BLOG_HOT_KEY + ":tmp", BLOG_HOT_KEY);
+    }
+
+    @Test
+    void abandonsRebuildWhenLockIsLost() {
+        when(blogMapper.selectList(any())).thenReturn(Arrays.asList(blog(1L, 10), blog(2L, 20)));
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any())).thenReturn(0L);
+
+        ranking.rebuild();
+
+        // 锁已经被其他节点获取，不替换排行，不再读取下一批
+        verify(blogMapper, times(1)).selectList(any());
+        verify(stringRedisTemplate, never()).rename(anyString(), anyString());
+        verify(stringRedisTemplate).delete(BLOG_HOT_KEY + ":tmp");
+    }
+
+    @Test
+    void reappliesBlogsUpdatedDuringRebuild() {
+        when(blogMapper.selectList(any())).thenReturn(
+                Collections.singletonList(blog(1L, 10)),
+                // 计算期间变化的笔记：2有新的点赞，3超出时间范围，9已经被删除
+                Arrays.asList(blog(2L, 0), blog(3L, 5).setCreateTime(now.minusDays(30))));
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), (Object[]) any())).thenReturn(1L);
+        when(setOperations.members(BLOG_HOT_DIRTY_KEY)).thenReturn(new HashSet<>(Arrays.asList("2", "3", "9")));
+        Map<Long, Integer> likes = new HashMap<>();
+        likes.put(2L, 50);
+        when(blogLikeCounter.getLikes(anyList())).thenReturn(Collections.emptyMap(), likes);
+
+        ranking.rebuild();
+
+        // 1.开始时清掉上一次的变化记录
+        verify(stringRedisTemplate).delete(Arrays.asList(BLOG_HOT_KEY + ":tmp", BLOG_HOT_DIRTY_KEY));
+        // 2.RENAME之后按最新的点赞数写入排行，超出时间范围和已删除的从排行中删除
+        InOrder order = inOrder(stringRedisTemplate, connection);
+        order.verify(stringRedisTemplate).rename(BLOG_HOT_KEY + ":tmp", BLOG_HOT_KEY);
+        order.verify(stringRedisTemplate).delete(BLOG_HOT_DIRTY_KEY);
+        ArgumentCaptor<Double> score = ArgumentCaptor.forClass(Double.class);
+        order.verify(connection).zAdd(eq(HOT_KEY), score.capture(), eq(bytes("2")));
+        assertEquals(ranking.score(50, now.minusHours(1), LocalDateTime.now()), score.getValue(), 1e-3);
+        verify(connection).zRem(HOT_KEY, bytes("3"));
+        verify(connection).zRem(HOT_KEY, bytes("9"));
+    }
+
+    @Test
+    void scheduleReadsDurationProperties() throws Exception {
+        properties.setRefreshInterval(Duration.ofMinutes(10));
+        properties.setTrendingInterval(Duration.ofMinutes(1));
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        context.setBeanResolver((ctx, beanName) -> properties);
+
+        assertEquals(600_000L, evaluate(BlogHotRanking.class.getMethod("rebuild"), context));
+        assertEquals(60_000L, evaluate(BlogTrending.class.getMethod("rollUp"), context));
+    }
+
+    @Test
+    void updateOutsideWindowRemovesFromRanking() {
+        Blog blog = blog(1L, 10).setCreateTime(now.minusDays(30));
+
+        ranking.update(blog);
+
+        // 热度为空时脚本从排行中删除，正在重新计算时同时记录这篇笔记
+        verify(stringRedisTemplate).execute(any(RedisScript.class),
+                eq(Arrays.asList(BLOG_HOT_KEY, LOCK_BLOG_HOT_KEY, BLOG_HOT_DIRTY_KEY)), eq("1"), eq(""), anyString());
+    }
+
+    private static Object evaluate(Method method, StandardEvaluationContext context) {
+        String expression = method.getAnnotation(Scheduled.class).fixedDelayString();
+        return new SpelExpressionParser().parseExpression(expression, new TemplateParserContext()).getValue(context);
+    }
+
+    private Blog blog(Long id, int liked) {
+        Blog blog = new Blog();
+        blog.setId(id);
+        blog.setLiked(liked);
+        blog.setCreateTime(now.minusHours(1));
+        return blog;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
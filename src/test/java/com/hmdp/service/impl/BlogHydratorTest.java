@@ -0,0 +1,171 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.cache.CacheProperties;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 笔记列表批量填充：不管一页有多少篇笔记，作者只查询一次缓存，点赞数和点赞状态只发送一个pipeline
+ */
+@ExtendWith(MockitoExtension.class)
+class BlogHydratorTest {
+
+    @Mock
+    private CacheClient cacheClient;
+
+    @Spy
+    private CacheProperties cacheProperties = new CacheProperties();
+
+    @Mock
+    private IUserService userService;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @InjectMocks
+    private BlogHydrator blogHydrator;
+
+    @AfterEach
+    void tearDown() {
+        UserHolder.removeUser();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 100})
+    @SuppressWarnings("unchecked")
+    void constantRoundTripsPerPage(int pageSize) {
+        UserDTO loginUser = new UserDTO();
+        loginUser.setId(1L);
+        UserHolder.saveUser(loginUser);
+        // 作者id在1~5之间，偶数id的笔记已点赞，id能被3整除的笔记在redis中有点赞数
+        List<Blog> blogs = blogs(pageSize);
+        when(cacheClient.multiQuery(any(CacheProperties.Spec.class), any(Collection.class), any(Type.class), any()))
+                .thenAnswer(invocation -> users(invocation.getArgument(1)));
+        RedisConnection connection = mock(RedisConnection.class);
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+            List<Object> results = new ArrayList<>();
+            results.add(likes(blogs));
+            for (Blog blog : blogs) {
+                results.add(blog.getId() % 2 == 0 ? 1.0 : null);
+            }
+            return results;
+        });
+
+        blogHydrator.hydrate(blogs);
+
+        // 1.往返次数与笔记数量无关：一次批量查询缓存、一个pipeline
+        verify(cacheClient, times(1)).multiQuery(any(CacheProperties.Spec.class), any(Collection.class), any(Type.class), any());
+        verify(stringRedisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        verify(stringRedisTemplate, never()).opsForZSet();
+        verifyNoInteractions(userService);
+        // 2.pipeline中一个HMGET查询所有点赞数，每篇笔记一个ZSCORE
+        verify(connection, times(1)).hMGet(any(byte[].class), (byte[][]) any());
+        verify(connection, times(pageSize)).zScore(any(byte[].class), any(byte[].class));
+        // 3.结果正确地拼回每篇笔记，点赞数以redis为准
+        for (Blog blog : blogs) {
+            assertEquals("user_" + blog.getUserId(), blog.getName());
+            assertEquals(blog.getId() % 2 == 0, blog.getIsLike());
+            assertEquals(blog.getId() % 3 == 0 ? blog.getId() * 10 : 1, blog.getLiked().longValue());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void anonymousUserSkipsLikeFlags() {
+        List<Blog> blogs = blogs(10);
+        when(cacheClient.multiQuery(any(CacheProperties.Spec.class), any(Collection.class), any(Type.class), any()))
+                .thenAnswer(invocation -> users(invocation.getArgument(1)));
+        RedisConnection connection = mock(RedisConnection.class);
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+            return Collections.singletonList(likes(blogs));
+        });
+
+        blogHydrator.hydrate(blogs);
+
+        // 只查询点赞数，不查询点赞状态
+        verify(stringRedisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        verify(connection, never()).zScore(any(byte[].class), any(byte[].class));
+        for (Blog blog : blogs) {
+            assertTrue(blog.getName().startsWith("user_"));
+            assertNull(blog.getIsLike());
+            assertEquals(blog.getId() % 3 == 0 ? blog.getId() * 10 : 1, blog.getLiked().longValue());
+        }
+    }
+
+    @Test
+    void emptyPageDoesNothing() {
+        blogHydrator.hydrate(new ArrayList<>());
+
+        verifyNoInteractions(cacheClient, stringRedisTemplate, userService);
+    }
+
+    private static List<Blog> blogs(int size) {
+        List<Blog> blogs = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            Blog blog = new Blog();
+            blog.setId(id);
+            blog.setUserId(id % 5 + 1);
+            blog.setLiked(1);
+            blogs.add(blog);
+        }
+        return blogs;
+    }
+
+    /**
+     * HMGET blog:like:count的结果：id能被3整除的笔记点赞数为id * 10，其他的不在redis中
+     */
+    private static List<String> likes(List<Blog> blogs) {
+        List<String> likes = new ArrayList<>(blogs.size());
+        for (Blog blog : blogs) {
+            likes.add(blog.getId() % 3 == 0 ? String.valueOf(blog.getId() * 10) : null);
+        }
+        return likes;
+    }
+
+    private static Map<Long, UserDTO> users(Collection<Long> ids) {
+        Map<Long, UserDTO> users = new HashMap<>();
+        for (Long id : ids) {
+            UserDTO user = new UserDTO();
+            user.setId(id);
+            user.setNickName("user_" + id);
+            users.put(id, user);
+        }
+        return users;
+    }
+}
@@ -0,0 +1,28 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 支持keyset分页的Service直接继承ServiceImpl，MyBatis-Plus能从泛型参数解析出实体和Mapper的类型，
+ * 中间再隔一层泛型类时构造就会抛出ClassCastException，Spring容器无法启动
+ */
+class SeekServiceTest {
+
+    @Test
+    void resolvesEntityAndMapperTypes() {
+        ShopServiceImpl shopService = new ShopServiceImpl();
+        assertEquals(Shop.class, shopService.getEntityClass());
+        assertEquals(ShopMapper.class, ReflectionTestUtils.getField(shopService, "mapperClass"));
+
+        BlogServiceImpl blogService = new BlogServiceImpl();
+        assertEquals(Blog.class, blogService.getEntityClass());
+        assertEquals(BlogMapper.class, ReflectionTestUtils.getField(blogService, "mapperClass"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.CursorResult;
+import com.hmdp.entity.Shop;
+import com.hmdp.index.NameHit;
+import com.hmdp.index.ShopNameIndex;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.utils.CursorUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 名称查询的游标记录第一页的查询方式，名称索引加载完成前后翻页不会报错，也不会跳过或重复
+ */
+class ShopNameQueryTest {
+
+    private final ShopServiceImpl shopService = new ShopServiceImpl();
+
+    private final ShopMapper shopMapper = mock(ShopMapper.class);
+
+    private final ShopNameIndex shopNameIndex = mock(ShopNameIndex.class);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(shopService, "baseMapper", shopMapper);
+        ReflectionTestUtils.setField(shopService, "shopNameIndex", shopNameIndex);
+    }
+
+    @Test
+    void databaseCursorContinuesInDatabaseAfterIndexIsReady() {
+        // 1.索引还没加载完成，第一页查询数据库
+        when(shopMapper.selectList(any())).thenReturn(shops(1, 11));
+        CursorResult first = queryByName("");
+        assertEquals("db", CursorUtils.decode(first.getCursor(), 3)[0]);
+
+        // 2.索引加载完成后，数据库的游标继续按id查询数据库
+        when(shopNameIndex.isReady()).thenReturn(true);
+        when(shopMapper.selectList(any())).thenReturn(shops(11, 15));
+        CursorResult second = queryByName(first.getCursor());
+
+        verify(shopNameIndex, never()).search(anyString(), anyInt(), anyLong(), anyLong());
+        QueryWrapper<Shop> wrapper = lastWrapper(2);
+        assertTrue(wrapper.getSqlSegment().contains("id >"));
+        assertTrue(wrapper.getParamNameValuePairs().containsValue(10L));
+        assertEquals(5, second.getList().size());
+        assertNull(second.getCursor());
+    }
+
+    @Test
+    void indexCursorRestartsFromDatabaseWhenIndexIsNotReady() {
+        when(shopMapper.selectList(any())).thenReturn(shops(1, 3));
+
+        // 索引的游标到了索引还没加载完成的节点上，从数据库的第一页重新开始，不会因为格式不同报错
+        CursorResult result = queryByName(CursorUtils.encode("index", 4294967290L, 42L));
+
+        assertFalse(lastWrapper(1).getSqlSegment().contains("id >"));
+        assertEquals(3, result.getList().size());
+    }
+
+    @Test
+    void indexCursorContinuesInIndex() {
+        when(shopNameIndex.isReady()).thenReturn(true);
+        List<NameHit> hits = new ArrayList<>();
+        for (long id = 1; id <= 11; id++) {
+            hits.add(new NameHit(id, 100 + id));
+        }
+        when(shopNameIndex.search("茶", 11, Long.MIN_VALUE, Long.MIN_VALUE)).thenReturn(hits);
+        when(shopMapper.selectList(any())).thenReturn(shops(1, 10));
+
+        CursorResult first = queryByName("");
+        assertEquals(Arrays.asList("index", "110", "10"), Arrays.asList(CursorUtils.decode(first.getCursor(), 3)));
+
+        queryByName(first.getCursor());
+        verify(shopNameIndex).search("茶", 11, 110L, 10L);
+    }
+
+    private CursorResult queryByName(String cursor) {
+        return (CursorResult) shopService.queryShopByName("茶", 1, cursor).getData();
+    }
+
+    @SuppressWarnings("unchecked")
+    private QueryWrapper<Shop> lastWrapper(int calls) {
+        ArgumentCaptor<Wrapper<Shop>> wrapper = ArgumentCaptor.forClass(Wrapper.class);
+        verify(shopMapper, times(calls)).selectList(wrapper.capture());
+        return (QueryWrapper<Shop>) wrapper.getValue();
+    }
+
+    private static List<Shop> shops(long from, long to) {
+        List<Shop> shops = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            shops.add(new Shop().setId(id).setName("茶餐厅" + id));
+        }
+        return shops;
+    }
+}
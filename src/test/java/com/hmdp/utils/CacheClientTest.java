@@ -0,0 +1,233 @@
+package com.hmdp.utils;
+
+import com.hmdp.cache.CacheProperties;
+import com.hmdp.cache.HotKeyDetector;
+import com.hmdp.cache.codec.CacheValueSerializer;
+import com.hmdp.cache.codec.JsonCacheCodec;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.hmdp.utils.RedisConstants.CACHE_STALE_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 缓存未命中时查询数据库的降级：舱壁已满、查询超时、查询失败时返回宽限副本中的旧数据，
+ * 以及查询所在的线程（事务中在当前线程，否则带上登录用户）
+ */
+@ExtendWith(MockitoExtension.class)
+class CacheClientTest {
+
+    private static final String KEY = "cache:shop:1";
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private RedisTemplate<String, byte[]> bytesRedisTemplate;
+
+    @Mock
+    private ValueOperations<String, byte[]> valueOperations;
+
+    @Mock
+    private HotKeyDetector hotKeyDetector;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CacheValueSerializer serializer;
+
+    private CacheClient cacheClient;
+
+    /**
+     * 阻塞查询数据库的线程，测试结束时放行
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        CacheProperties properties = new CacheProperties();
+        properties.setCodec("json");
+        serializer = new CacheValueSerializer(Collections.singletonList(new JsonCacheCodec()), properties, meterRegistry);
+        cacheClient = new CacheClient(stringRedisTemplate, bytesRedisTemplate, serializer, hotKeyDetector, meterRegistry);
+        when(bytesRedisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        UserHolder.removeUser();
+    }
+
+    @Test
+    void timeoutServesStaleCopy() {
+        CacheProperties.Spec spec = spec(Duration.ofMinutes(30));
+        Shop stale = shop("旧名称");
+        staleCopy(stale);
+
+        Shop shop = cacheClient.query(spec, 1L, Shop.class, id -> blockingLoad());
+
+        assertEquals(stale, shop);
+        assertEquals(1, meterRegistry.counter("cache.bulkhead.timeout", "cache", "shop").count());
+        assertEquals(1, meterRegistry.counter("cache.stale.served", "cache", "shop").count());
+        // 旧数据不写回缓存
+        verify(valueOperations, never()).set(eq(KEY), any(), anyLong(), any());
+        verify(bytesRedisTemplate, never()).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    void fullBulkheadServesStaleCopy() throws Exception {
+        CacheProperties.Spec spec = spec(Duration.ofMinutes(30));
+        spec.setDbMaxConcurrency(1);
+        spec.setDbTimeout(Duration.ofSeconds(5));
+        Shop stale = shop("旧名称");
+        staleCopy(stale);
+        // 1.第一个请求占用唯一的许可，一直不返回
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture.runAsync(() -> cacheClient.query(spec, 1L, Shop.class, id -> {
+            started.countDown();
+            return blockingLoad();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        spec.setDbTimeout(Duration.ofMillis(50));
+
+        // 2.第二个请求等待许可超时，返回旧数据，不查询数据库
+        Shop shop = cacheClient.query(spec, 1L, Shop.class, id -> {
+            throw new AssertionError("舱壁已满时不应查询数据库");
+        });
+
+        assertEquals(stale, shop);
+        assertEquals(1, meterRegistry.counter("cache.bulkhead.rejected", "cache", "shop").count());
+        assertEquals(1, meterRegistry.counter("cache.stale.served", "cache", "shop").count());
+    }
+
+    @Test
+    void failedLoadServesStaleCopy() {
+        CacheProperties.Spec spec = spec(Duration.ofMinutes(30));
+        Shop stale = shop("旧名称");
+        staleCopy(stale);
+
+        Shop shop = cacheClient.query(spec, 1L, Shop.class, id -> {
+            throw new IllegalStateException("数据库不可用");
+        });
+
+        assertEquals(stale, shop);
+        assertEquals(0, meterRegistry.counter("cache.bulkhead.timeout", "cache", "shop").count());
+        assertEquals(1, meterRegistry.counter("cache.stale.served", "cache", "shop").count());
+    }
+
+    @Test
+    void timeoutWithoutStaleCopyThrows() {
+        // 默认不保留宽限副本
+        CacheProperties.Spec spec = spec(new CacheProperties.Spec().getStaleGrace());
+
+        assertThrows(RuntimeException.class, () -> cacheClient.query(spec, 1L, Shop.class, id -> blockingLoad()));
+        assertEquals(1, meterRegistry.counter("cache.bulkhead.timeout", "cache", "shop").count());
+        verify(valueOperations, never()).get(CACHE_STALE_KEY + KEY);
+    }
+
+    @Test
+    void failedLoadWithoutStaleCopyRethrows() {
+        CacheProperties.Spec spec = spec(Duration.ofMinutes(30));
+        IllegalStateException failure = new IllegalStateException("数据库不可用");
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> cacheClient.query(spec, 1L, Shop.class, id -> {
+                    throw failure;
+                }));
+        assertSame(failure, thrown);
+    }
+
+    @Test
+    void loaderSeesTheLoginUser() {
+        CacheProperties.Spec spec = spec(Duration.ZERO);
+        UserDTO user = new UserDTO();
+        user.setId(7L);
+        UserHolder.saveUser(user);
+        AtomicReference<UserDTO> seen = new AtomicReference<>();
+        AtomicReference<Thread> thread = new AtomicReference<>();
+
+        cacheClient.query(spec, 1L, Shop.class, id -> {
+            seen.set(UserHolder.getUser());
+            thread.set(Thread.currentThread());
+            return shop("名称");
+        });
+
+        assertSame(user, seen.get());
+        assertTrue(thread.get() != Thread.currentThread());
+    }
+
+    @Test
+    void loaderRunsOnCallerThreadInTransaction() {
+        CacheProperties.Spec spec = spec(Duration.ZERO);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            Shop shop = cacheClient.query(spec, 1L, Shop.class, id -> {
+                thread.set(Thread.currentThread());
+                return shop("名称");
+            });
+
+            assertEquals("名称", shop.getName());
+            assertSame(Thread.currentThread(), thread.get());
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    /**
+     * 缓存未命中，宽限副本中有旧数据
+     */
+    private void staleCopy(Shop stale) {
+        when(valueOperations.get(KEY)).thenReturn(null);
+        when(valueOperations.get(CACHE_STALE_KEY + KEY)).thenReturn(serializer.serialize(stale));
+    }
+
+    private Shop blockingLoad() {
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return shop("新名称");
+    }
+
+    private static CacheProperties.Spec spec(Duration staleGrace) {
+        CacheProperties.Spec spec = new CacheProperties.Spec();
+        spec.setName("shop");
+        spec.setKeyPrefix("cache:shop:");
+        spec.setDbTimeout(Duration.ofMillis(100));
+        spec.setStaleGrace(staleGrace);
+        return spec;
+    }
+
+    private static Shop shop(String name) {
+        return new Shop().setId(1L).setName(name).setTypeId(1L).setSold(10);
+    }
+}